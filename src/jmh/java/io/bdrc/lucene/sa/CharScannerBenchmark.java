@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scalar {@link CharScanner} and the one using the Vector API, on a text of 64k chars: 
+ * Tibetan for {@link CharScanner#indexOfAscii}, SLP without danda for {@link CharScanner#indexOfAny}.
+ * <p>
+ * The "vector" scanner needs Java 17 or later, where the java17 profile compiles it and adds the 
+ * {@code jdk.incubator.vector} module. Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CharScannerBenchmark"
+ * </pre>
+ *
+ * @author Hélios Hildt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class CharScannerBenchmark {
+
+    static final int LENGTH = 1 << 16;
+
+    @Param({"scalar", "vector"})
+    public String scanner;
+
+    private CharScanner charScanner;
+    private char[] tibetan;
+    private char[] slp;
+
+    @Setup
+    public void setup() {
+        charScanner = scanner.equals("scalar") ? new CharScanner() : CharScanner.vectorized();
+        if (charScanner == null)
+            throw new IllegalStateException("the Vector API is not available");
+        tibetan = repeat(SkrtWordTokenizerBenchmark.NON_SLP_SENTENCE.replace(" ", "་"));
+        slp = repeat(SkrtWordTokenizerBenchmark.SENTENCE);
+    }
+
+    static char[] repeat(String sentence) {
+        final char[] text = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++)
+            text[i] = sentence.charAt(i % sentence.length());
+        return text;
+    }
+
+    @Benchmark
+    public int indexOfAscii() {
+        return charScanner.indexOfAscii(tibetan, 0, LENGTH);
+    }
+
+    @Benchmark
+    public int indexOfDanda() {
+        return charScanner.indexOfAny(slp, 0, LENGTH, '.', '\n', '\r');
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses all the cmds of a test Trie with {@link CmdParser} and with {@link CmdCursorParser}.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CmdParserBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Hélios Hildt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class CmdParserBenchmark {
+
+    private String[] forms;
+    private String[] cmds;
+
+    private final CmdCursorParser cursorParser = new CmdCursorParser();
+    private final CmdCursorParser.Diffs diffs = new CmdCursorParser.Diffs();
+
+    @Setup
+    public void setup() throws IOException {
+        final List<String> lines = Files.readAllLines(Paths.get("src/test/resources/tries/demo_test.txt"), StandardCharsets.UTF_8);
+        forms = new String[lines.size()];
+        cmds = new String[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            final int sepIndex = line.indexOf(',');
+            forms[i] = line.substring(0, sepIndex);
+            cmds[i] = line.substring(sepIndex + 1);
+        }
+    }
+
+    @Benchmark
+    public void cmdParser(Blackhole bh) {
+        for (int i = 0; i < cmds.length; i++) {
+            bh.consume(new CmdParser().parse(forms[i], cmds[i]));
+        }
+    }
+
+    @Benchmark
+    public void cursorParser(Blackhole bh) {
+        for (int i = 0; i < cmds.length; i++) {
+            diffs.clear();
+            cursorParser.parse(forms[i], cmds[i], diffs);
+            diffs.sort();
+            bh.consume(diffs.size());
+        }
+    }
+}
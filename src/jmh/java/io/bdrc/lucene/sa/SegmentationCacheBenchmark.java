@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Throughput of {@link SkrtWordTokenizer} and of {@link SkrtParallelWordTokenizer} on a single 
+ * thread, with and without a {@link SegmentationCache}, on a list of titles where most lines are repeated.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SegmentationCacheBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Hélios Hildt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class SegmentationCacheBenchmark {
+
+    static final String[] TITLES = SkrtWordTokenizerBenchmark.SENTENCE.split(" - ");
+
+    @Param({"0", "4096"})
+    public int cacheSize;
+
+    @Param({"word", "parallel"})
+    public String tokenizerType;
+
+    private ForkJoinPool pool;
+    private Tokenizer tokenizer;
+    private CharTermAttribute termAtt;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        final Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/demo_test.txt");
+        pool = new ForkJoinPool(1);
+        if (tokenizerType.equals("word")) {
+            final SkrtWordTokenizer word = new SkrtWordTokenizer(trie);
+            if (cacheSize > 0)
+                word.setSegmentationCache(new SegmentationCache(trie, cacheSize));
+            tokenizer = word;
+        } else {
+            final SkrtParallelWordTokenizer parallel = new SkrtParallelWordTokenizer(trie, pool);
+            parallel.setSegmentationCache(new SegmentationCache(trie, cacheSize));
+            tokenizer = parallel;
+        }
+        termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final Random random = new Random(0);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            sb.append(TITLES[random.nextInt(TITLES.length)].trim()).append('\n');
+        input = sb.toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) throws IOException {
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            bh.consume(termAtt.length());
+        }
+        tokenizer.end();
+        tokenizer.close();
+    }
+}
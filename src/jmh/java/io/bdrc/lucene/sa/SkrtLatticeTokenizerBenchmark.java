@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Compares {@link SkrtLatticeTokenizer} with {@link SkrtWordTokenizer} on the input
+ * of {@link SkrtWordTokenizerBenchmark} and on the test corpora of src/test/resources, 
+ * both tokenizers being reused across documents.
+ * <p>
+ * The corpora are converted to SLP beforehand, with the CharFilters of {@link TestFullTextParsing}.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SkrtLatticeTokenizerBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Hélios Hildt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class SkrtLatticeTokenizerBenchmark {
+
+    @Param({"demo_test"})
+    public String trieName;
+
+    @Param({"sentence", "20 sentences", "tripitaka-titles", "Siddham-Edition Export tester"})
+    public String corpus;
+
+    private SkrtWordTokenizer wordTokenizer;
+    private SkrtLatticeTokenizer latticeTokenizer;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        final Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/" + trieName + ".txt");
+        wordTokenizer = new SkrtWordTokenizer(trie);
+        latticeTokenizer = new SkrtLatticeTokenizer(trie);
+        if (corpus.equals("sentence") || corpus.equals("20 sentences")) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = corpus.equals("sentence") ? 1 : 20; i > 0; i--)
+                sb.append(SkrtWordTokenizerBenchmark.SENTENCE);
+            input = sb.toString();
+        } else {
+            input = toSlp(new String(Files.readAllBytes(Paths.get("src/test/resources/" + corpus + ".txt")), 
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    static String toSlp(String roman) throws IOException {
+        final Reader reader = new GeminateNormalizingFilter(new SiddhamFilter(new Roman2SlpFilter(new StringReader(roman))));
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1)
+            sb.append(buffer, 0, read);
+        reader.close();
+        return sb.toString();
+    }
+
+    @Benchmark
+    public void wordTokenizer(Blackhole bh) throws IOException {
+        tokenize(wordTokenizer, bh);
+    }
+
+    @Benchmark
+    public void latticeTokenizer(Blackhole bh) throws IOException {
+        tokenize(latticeTokenizer, bh);
+    }
+
+    private void tokenize(Tokenizer tokenizer, Blackhole bh) throws IOException {
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            bh.consume(termAtt.length());
+        }
+        tokenizer.end();
+        tokenizer.close();
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Throughput and allocation rate of {@link SkrtWordTokenizer} on a steady stream of
+ * SLP input, with a single tokenizer reused across documents the way Lucene does.
+ * The "mixed" content alternates each sentence with a Tibetan one of about the same length,
+ * as in the catalog records of multilingual collections, and "non-slp" only has the Tibetan ones.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SkrtWordTokenizerBenchmark -prof gc"
+ * </pre>
+ * and look at {@code gc.alloc.rate.norm}, which is the number of bytes allocated per document.
+ *
+ * @author Hélios Hildt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class SkrtWordTokenizerBenchmark {
+
+    static final String SENTENCE = "sattvasya paramArTa nAma boDicaryAvatAra boDisattvacaryAvatAra - "
+            + "SAntideva - maYjuSrI nAma saMgIti - maYjuSrIjYAnasattvasya paramArTa nAma saMgIti - "
+            + "nAmasaMgIti - boDicaryAvatAra ";
+
+    /* the Tibetan title of the boDicaryAvatAra, repeated */
+    static final String NON_SLP_SENTENCE = "བྱང་ཆུབ་སེམས་དཔའི་སྤྱོད་པ་ལ་འཇུག་པ། བྱང་ཆུབ་སེམས་དཔའི་སྤྱོད་པ་ལ་འཇུག་པ། "
+            + "བྱང་ཆུབ་སེམས་དཔའི་སྤྱོད་པ་ལ་འཇུག་པ། བྱང་ཆུབ་སེམས་དཔའི་སྤྱོད་པ་ལ་འཇུག་པ། "
+            + "བྱང་ཆུབ་སེམས་དཔའི་སྤྱོད་པ་ལ་འཇུག་པ། ";
+
+    @Param({"demo_test"})
+    public String trieName;
+
+    @Param({"1", "20"})
+    public int sentences;
+
+    @Param({"slp", "mixed", "non-slp"})
+    public String content;
+
+    private SkrtWordTokenizer tokenizer;
+    private CharTermAttribute termAtt;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        final Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/" + trieName + ".txt");
+        tokenizer = new SkrtWordTokenizer(trie);
+        termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            if (!content.equals("non-slp"))
+                sb.append(SENTENCE);
+            if (!content.equals("slp"))
+                sb.append(NON_SLP_SENTENCE);
+        }
+        input = sb.toString();
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) throws IOException {
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            bh.consume(termAtt.length());
+        }
+        tokenizer.end();
+        tokenizer.close();
+    }
+}
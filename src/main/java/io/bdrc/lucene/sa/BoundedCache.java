@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache holding about {@code maxSize} entries, shared by all the tokenizers.
+ * <p>
+ * The entries are spread over a fixed number of stripes, each being a small LRU map
+ * guarded by its own lock, so that concurrent tokenizers rarely wait on each other.
+ * {@code maxSize} is divided evenly between the stripes, so the least recently used
+ * entry is evicted per stripe and not for the whole cache.
+ * Values must be immutable: the same instance is handed to every caller.
+ * <p>
+ * A {@code maxSize} of 0 disables the cache: every lookup is a miss and nothing is kept.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class BoundedCache<K, V> {
+
+    private static final int STRIPES = 16;
+
+    private final int maxSize;
+    private final Stripe<K, V>[] stripes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(final int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[STRIPES];
+        final int perStripe = (maxSize + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<K, V>(perStripe);
+        }
+    }
+
+    /**
+     * Returns the value cached for key, computing and caching it with loader if needed.
+     * <p>
+     * The loader is called outside of any lock. Two threads missing on the same key may
+     * both compute it, in which case the first value stored wins.
+     */
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+        if (maxSize == 0) {
+            misses.increment();
+            return loader.apply(key);
+        }
+        final Stripe<K, V> stripe = stripeFor(key);
+        V value;
+        synchronized (stripe) {
+            value = stripe.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.apply(key);
+        synchronized (stripe) {
+            final V previous = stripe.putIfAbsent(key, value);
+            return previous != null ? previous : value;
+        }
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /** the current number of entries */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe: stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** empties the cache and resets the counters */
+    public void clear() {
+        for (Stripe<K, V> stripe: stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    private Stripe<K, V> stripeFor(final K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        Stripe(final int maxSize) {
+            super(16, 0.75f, true);   // access order, so the eldest entry is the least recently used
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the next char of a class in a char array, for the loops that skip long runs of chars:
+ * the non-ASCII runs between two SLP segments and the text up to the next danda.
+ * <p>
+ * This is the scalar implementation, used on Java 8. The jar is multi-release: on Java 17 and later, 
+ * {@link #INSTANCE} is a subclass from META-INF/versions/17 that compares whole vectors of chars
+ * with the incubating Vector API, when the JVM is started with {@code --add-modules jdk.incubator.vector}.
+ * Otherwise, or with {@code -Dio.bdrc.lucene.sa.vectorScanner=false}, it stays this one.
+ *
+ * @author Hélios Hildt
+ *
+ */
+class CharScanner {
+
+    static final Logger logger = LoggerFactory.getLogger(CharScanner.class);
+
+    static final String VECTOR_SCANNER_CLASS = "io.bdrc.lucene.sa.VectorCharScanner";
+    
+    /** the scanner used by the tokenizers */
+    static final CharScanner INSTANCE = load();
+
+    CharScanner() {}
+
+    private static CharScanner load() {
+        if (!Boolean.parseBoolean(System.getProperty("io.bdrc.lucene.sa.vectorScanner", "true")))
+            return new CharScanner();
+        final CharScanner vectorized = vectorized();
+        if (vectorized == null) {
+            logger.debug("Vector API not available, scanning chars one at a time");
+            return new CharScanner();
+        }
+        return vectorized;
+    }
+
+    /**
+     * @return the scanner using the Vector API, null if this JVM can't load it
+     */
+    static CharScanner vectorized() {
+        try {
+            final CharScanner scanner = (CharScanner) Class.forName(VECTOR_SCANNER_CLASS).getDeclaredConstructor().newInstance();
+            scanner.indexOfAscii(new char[0], 0, 0);    // links the Vector API classes
+            return scanner;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the index of the first char lower than 0x80 in text[from, to), to if there is none
+     */
+    int indexOfAscii(final char[] text, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] < 0x80)
+                return i;
+        }
+        return to;
+    }
+
+    /**
+     * @return the index of the first c1, c2 or c3 in text[from, to), to if there is none
+     */
+    int indexOfAny(final char[] text, final int from, final int to, final char c1, final char c2, final char c3) {
+        for (int i = from; i < to; i++) {
+            final char c = text[i];
+            if (c == c1 || c == c2 || c == c3)
+                return i;
+        }
+        return to;
+    }
+}
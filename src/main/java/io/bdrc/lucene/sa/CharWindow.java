@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A window over the chars of a {@link Reader}, addressed with absolute positions,
+ * used by {@link SkrtWordTokenizer} in place of Lucene's RollingCharBuffer.
+ * <p>
+ * Chars are read from the Reader in bulk, as many as the window can hold, and
+ * {@link #get(int)} is a plain array access when the char is in the window, so the
+ * tokenizer does not pay a method call on the Reader nor a modulo per char.
+ * <p>
+ * Lookahead: any position after the last {@link #freeBefore(int)} can be read;
+ * the window grows if needed. Lookback: all the chars from the position given to
+ * the last {@link #freeBefore(int)} on are kept until the next {@link #reset(Reader)}.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class CharWindow {
+
+    private static final int INITIAL_SIZE = 4096;
+
+    private Reader reader;
+    private char[] buffer = new char[INITIAL_SIZE];
+    private int start = 0;        // absolute position of buffer[0]
+    private int end = 0;          // absolute position after the last char read
+    private int freed = 0;        // chars before this position may be discarded
+    private boolean eof = false;
+
+    void reset(Reader reader) {
+        this.reader = reader;
+        start = 0;
+        end = 0;
+        freed = 0;
+        eof = false;
+    }
+
+    /**
+     * @return the char at pos, or -1 if the end of input is reached
+     * @throws IllegalArgumentException if pos is before the chars kept by {@link #freeBefore(int)}
+     */
+    int get(int pos) throws IOException {
+        if (pos < end) {
+            if (pos < start)
+                throw freed(pos);
+            return buffer[pos - start];
+        }
+        return fill(pos) ? buffer[pos - start] : -1;
+    }
+
+    /**
+     * @return a copy of the length chars starting at pos, that must all be before the end of input
+     * @throws IllegalArgumentException if pos is freed or pos + length is after the end of input
+     */
+    char[] get(int pos, int length) throws IOException {
+        if (length > 0 && !fill(pos + length - 1))
+            throw new IllegalArgumentException("pos=" + pos + " length=" + length + " is after the end of input");
+        if (pos < start)
+            throw freed(pos);
+        return Arrays.copyOfRange(buffer, pos - start, pos - start + length);
+    }
+
+    private IllegalArgumentException freed(int pos) {
+        return new IllegalArgumentException("pos=" + pos + " was freed, the window starts at " + start);
+    }
+
+    /**
+     * Allows the chars before pos to be discarded. Positions before the previous
+     * call are ignored.
+     */
+    void freeBefore(int pos) {
+        if (pos > freed)
+            freed = Math.min(pos, end);
+    }
+
+    /**
+     * reads from the Reader until pos is in the window
+     * @return false if the end of input is reached before pos
+     */
+    private boolean fill(int pos) throws IOException {
+        while (pos >= end) {
+            if (eof)
+                return false;
+            if (end - start == buffer.length)
+                makeRoom();
+            final int read = reader.read(buffer, end - start, buffer.length - (end - start));
+            if (read == -1) {
+                eof = true;
+                return false;
+            }
+            end += read;
+        }
+        return true;
+    }
+
+    /* discards the freed chars, then grows the window if it is still more than half full */
+    private void makeRoom() {
+        final int kept = end - freed;
+        if (freed > start) {
+            System.arraycopy(buffer, freed - start, buffer, 0, kept);
+            start = freed;
+        }
+        if (kept > buffer.length / 2)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Reads an input in chunks ending right after a danda or a newline, for
+ * {@link SkrtParallelWordTokenizer} and the {@link SegmentationCache} of {@link SkrtWordTokenizer}.
+ * <p>
+ * Only the chunk being read is buffered: each chunk is taken as a copy of its own.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class ChunkReader {
+
+    /* the input read and not taken yet, starting at textOffset */
+    private char[] text = new char[4096];
+    private int textLength;
+    private int textOffset;
+    private boolean inputEnded;
+
+    void reset() {
+        textLength = 0;
+        textOffset = 0;
+        inputEnded = false;
+    }
+
+    /**
+     * @return the offset in the input of the next chunk
+     */
+    int offset() {
+        return textOffset;
+    }
+
+    /**
+     * Reads the input until the end of the next chunk is known.
+     * 
+     * @return the length of the chunk: up to the end of the first run of dandas and newlines 
+     *         that ends at least minChunkSize characters after its start, or up to the end of the input.
+     *         0 at the end of the input
+     */
+    int read(Reader input, int minChunkSize) throws IOException {
+        int from = minChunkSize - 1;
+        while (true) {
+            if (textLength > from) {
+                final int end = SkrtParallelWordTokenizer.sentenceEnd(text, from, textLength);
+                if (end < textLength)
+                    return end;
+                // the chunk, or its last run of dandas, goes on after what was read
+                from = textLength - 1;
+            }
+            if (inputEnded)
+                return textLength;
+            fill(input);
+        }
+    }
+
+    /**
+     * @param length  the length given by {@link #read(Reader, int)}
+     * @return a copy of the chunk, the next chunk starts after it
+     */
+    char[] take(int length) {
+        final char[] chunk = Arrays.copyOf(text, length);
+        System.arraycopy(text, length, text, 0, textLength - length);
+        textLength -= length;
+        textOffset += length;
+        return chunk;
+    }
+
+    /**
+     * Skips the rest of the input.
+     * 
+     * @return the length of the whole input
+     */
+    int end(Reader input) throws IOException {
+        while (!inputEnded) {
+            textOffset += textLength;
+            textLength = 0;
+            fill(input);
+        }
+        return textOffset + textLength;
+    }
+
+    /* reads more of the input after text[textLength] */
+    private void fill(Reader input) throws IOException {
+        if (textLength == text.length)
+            text = Arrays.copyOf(text, ArrayUtil.oversize(textLength + 1, Character.BYTES));
+        final int read = input.read(text, textLength, text.length - textLength);
+        if (read == -1)
+            inputEnded = true;
+        else
+            textLength += read;
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+
+/**
+ * What a cmd can do to the word it was found for, worked out once from its parse so that
+ * {@link SkrtWordTokenizer} only looks at the text following the word when it has to:
+ * <ul>
+ * <li>{@link #IDENTITY}: the word is its own lemma, with one or more parts of speech 
+ * (for instance {@code $/=0#1}), whatever follows it</li>
+ * <li>{@link #FINALS_ONLY}: the lemmatizations without sandhi (for instance {@code $-1+a/=0£9#1}),
+ * that only depend on the final of the word being in the text, and on the initial following it
+ * for the idempotent sandhis</li>
+ * <li>{@link #NEEDS_CONTEXT}: all the other cmds, which go through 
+ * {@link SkrtWordTokenizer#reconstructLemmas}</li>
+ * </ul>
+ * The class does not depend on the inflected form the cmd was parsed with.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class CmdClass {
+
+    static final int IDENTITY = 0;
+    static final int FINALS_ONLY = 1;
+    static final int NEEDS_CONTEXT = 2;
+
+    final int kind;
+
+    /** the parts of speech of the identity diffs, in the order of the lemmas {@code <inflected>_<pos>} */
+    final int[] identityPos;
+
+    /** FINALS_ONLY: the diffs that change the final */
+    final DiffStruct[] finalDiffs;
+
+    private CmdClass(int kind, int[] identityPos, DiffStruct[] finalDiffs) {
+        this.kind = kind;
+        this.identityPos = identityPos;
+        this.finalDiffs = finalDiffs;
+    }
+
+    static CmdClass of(ParsedCmd parsed) {
+        final SortedSet<String> identityPos = new TreeSet<String>();     // sorted the way the lemmas are
+        final List<DiffStruct> finalDiffs = new ArrayList<DiffStruct>();
+        boolean needsContext = false;
+        for (Entry<String, SortedSet<DiffStruct>> entry: parsed.sandhis.entrySet()) {
+            for (DiffStruct diff: entry.getValue()) {
+                if (isIdentity(diff)) {
+                    identityPos.add(String.valueOf(diff.pos));
+                } else if (diff.sandhiType == 0 && diff.initial.isEmpty()) {
+                    finalDiffs.add(diff);
+                } else {
+                    needsContext = true;
+                }
+            }
+        }
+        final int[] pos = new int[identityPos.size()];
+        int i = 0;
+        for (String p: identityPos) {
+            pos[i++] = Integer.parseInt(p);
+        }
+        final int kind;
+        if (needsContext || parsed.sandhis.isEmpty()) {
+            kind = NEEDS_CONTEXT;
+        } else if (finalDiffs.isEmpty()) {
+            kind = IDENTITY;
+        } else if (parsed.sandhis.size() == 1 && parsed.sandhis.firstKey().length() == 1) {
+            // the sandhied string is the final of the inflected form
+            kind = FINALS_ONLY;
+        } else {
+            kind = NEEDS_CONTEXT;
+        }
+        return new CmdClass(kind, pos, finalDiffs.toArray(new DiffStruct[finalDiffs.size()]));
+    }
+
+    /**
+     * @return true if the diff leaves the inflected form as it is, without sandhi
+     */
+    static boolean isIdentity(DiffStruct diff) {
+        return diff.sandhiType == 0 && diff.toAdd.isEmpty() && diff.nbToDelete == 0 && diff.initial.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return kind == IDENTITY ? "identity" : kind == FINALS_ONLY ? "finals-only" : "needs context";
+    }
+}
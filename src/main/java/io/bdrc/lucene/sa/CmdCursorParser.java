@@ -0,0 +1,696 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.Arrays;
+
+/**
+ * A cursor-based equivalent of {@link CmdParser#parse(String, String)}.
+ * <p>
+ * The cmd is walked once, without regexes nor intermediate Strings, and the diffs are
+ * written in a {@link Diffs} owned by the caller. Once {@link Diffs#sort()} has been
+ * called, the diffs are in the order in which the TreeMap and TreeSets returned by
+ * CmdParser iterate them, with the same duplicates removed.
+ * <p>
+ * The grammar and the corner cases are those of CmdParser, including the way
+ * {@code String.split()} drops trailing empty strings, the way trimDiff() removes the
+ * first "-" wherever it is, and the idempotent group being kept from one entry to the
+ * next when an entry has none.
+ * <p>
+ * An instance is not thread-safe, but can be reused for any number of cmds.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class CmdCursorParser {
+
+    // the pieces found by the last call to split(), reused for all the splits
+    private int[] pieceStarts = new int[8];
+    private int[] pieceEnds = new int[8];
+    private int nbPieces = 0;
+
+    // initials and finals of the current entry
+    private int[] initialStarts = new int[8];
+    private int[] initialEnds = new int[8];
+    private int nbInitials = 0;
+    private int[] finalStarts = new int[8];
+    private int[] finalEnds = new int[8];
+    private int nbFinals = 0;
+    private int nbTrimsOfFinals = 0;
+
+    // diffs rewritten by trimDiff()
+    private char[] diffFinal = new char[16];
+    private int diffFinalLength = 0;
+    private char[] diffInitial = new char[16];
+    private int diffInitialLength = 0;
+
+    private final CharArrayView view = new CharArrayView();
+
+    private int sandhiType = -1;
+    private int pos = -1;
+    private int idempotentGroup = -1;
+
+    /**
+     * Parses cmd and appends all its diffs to out.
+     *
+     * @param inflected  the inflected form
+     * @param cmd  the cmd found in the Trie for inflected
+     * @param out  where the diffs are written. it is not cleared beforehand
+     * @throws IllegalArgumentException  if cmd is malformed
+     */
+    public void parse(final CharSequence inflected, final CharSequence cmd, final Diffs out) {
+        idempotentGroup = -1;
+        final int len = cmd.length();
+        // <fullEntry>|<fullEntry>|<...>, the trailing empty entries being ignored
+        int end = len;
+        while (end > 0 && cmd.charAt(end - 1) == '|')
+            end--;
+        if (end == 0 && len > 0)
+            return;     // only separators
+        int start = 0;
+        while (true) {
+            int sep = indexOf(cmd, '|', start, end);
+            if (sep == -1)
+                sep = end;
+            parseFullEntry(inflected, cmd, start, sep, out);
+            if (sep == end)
+                break;
+            start = sep + 1;
+        }
+    }
+
+    private void parseFullEntry(final CharSequence inflected, final CharSequence cmd, final int start, final int end, final Diffs out) {
+        // <entry>=<sandhiType>£<idempotentGroup>#<pos>
+        split(cmd, start, end, '=');
+        if (nbPieces < 2)
+            throw malformed(cmd);
+        final int entryStart = pieceStarts[0];
+        final int entryEnd = pieceEnds[0];
+        split(cmd, pieceStarts[1], pieceEnds[1], '#');
+        if (nbPieces < 2)
+            throw malformed(cmd);
+        pos = parseInt(cmd, pieceStarts[1], pieceEnds[1]);
+        split(cmd, pieceStarts[0], pieceEnds[0], '£');
+        if (nbPieces < 1)
+            throw malformed(cmd);
+        sandhiType = parseInt(cmd, pieceStarts[0], pieceEnds[0]);
+        if (nbPieces == 2)
+            idempotentGroup = parseInt(cmd, pieceStarts[1], pieceEnds[1]);
+
+        if (thereAreModifications(cmd, entryStart, entryEnd)) {
+            final int afterDollar = splitEntryAndInitials(cmd, entryStart, entryEnd);
+            splitDiffs(cmd, afterDollar, entryEnd);
+
+            final int finalsStart = sandhiedFinalsStart(inflected, sandhiType);
+            if (nbFinals == 0 && diffInitialLength != 0) {
+                final int plus = splitDiffInitial(cmd);
+                final int i = out.add(inflected, finalsStart, diffInitial, 0, plus);
+                out.setDiff(i, 0, null, 0, 0, diffInitial, plus + 1, pieceEnds[1], sandhiType, pos, idempotentGroup);
+            } else if (nbFinals > 0 && diffInitialLength == 0) {
+                for (int f = 0; f < nbFinals; f++) {
+                    trimFinal(cmd, f);
+                    final int toDelete = splitDiffFinal();
+                    final int toAddStart = (nbPieces == 2) ? pieceStarts[1] : 0;
+                    final int toAddEnd = (nbPieces == 2) ? pieceEnds[1] : 0;
+                    if (nbInitials > 0) {
+                        for (int k = 0; k < nbInitials; k++) {
+                            final int i = out.add(inflected, finalsStart, cmd, initialStarts[k], initialEnds[k]);
+                            out.setDiff(i, toDelete, diffFinal, toAddStart, toAddEnd, cmd, initialStarts[k], initialEnds[k],
+                                    sandhiType, pos, idempotentGroup);
+                        }
+                    } else {
+                        final int i = out.add(inflected, finalsStart, cmd, 0, 0);
+                        out.setDiff(i, toDelete, diffFinal, toAddStart, toAddEnd, cmd, 0, 0, sandhiType, pos, idempotentGroup);
+                    }
+                }
+            } else {    // both initials and finals change
+                for (int f = 0; f < nbFinals; f++) {
+                    trimFinal(cmd, f);
+                    final int toDelete = splitDiffFinal();
+                    final int toAddStart = (nbPieces == 2) ? pieceStarts[1] : 0;
+                    final int toAddEnd = (nbPieces == 2) ? pieceEnds[1] : 0;
+                    final int plus = splitDiffInitial(cmd);
+                    final int i = out.add(inflected, finalsStart, diffInitial, 0, plus);
+                    out.setDiff(i, toDelete, diffFinal, toAddStart, toAddEnd, diffInitial, plus + 1, pieceEnds[1],
+                            sandhiType, pos, idempotentGroup);
+                }
+            }
+        } else if (indexOf(cmd, "$/", start, end) != -1) {
+            if (inflected.length() == 0)
+                throw malformed(cmd);
+            final int i = out.add(inflected, inflected.length() - 1, cmd, 0, 0);
+            out.setDiff(i, 0, null, 0, 0, cmd, 0, 0, sandhiType, pos, 0);
+        } else {
+            throw malformed(cmd);
+        }
+    }
+
+    /** @return the start of what follows the "$" */
+    private int splitEntryAndInitials(final CharSequence cmd, final int start, final int end) {
+        // <initial>:<initial>:<...>$<diffs>
+        split(cmd, start, end, '$');
+        if (nbPieces < 2)
+            throw malformed(cmd);
+        final int initialsStart = pieceStarts[0];
+        final int initialsEnd = pieceEnds[0];
+        final int diffsStart = pieceStarts[1];
+        nbInitials = 0;
+        if (indexOf(cmd, ':', initialsStart, initialsEnd) != -1) {
+            split(cmd, initialsStart, initialsEnd, ':');
+            for (int k = 0; k < nbPieces; k++) {
+                addInitial(pieceStarts[k], pieceEnds[k]);
+            }
+        } else if (initialsEnd > initialsStart) {
+            addInitial(initialsStart, initialsEnd);
+        }
+        return diffsStart;
+    }
+
+    private void splitDiffs(final CharSequence cmd, final int start, final int entryEnd) {
+        // <diffFinal>;<diffFinal>;<...>/<diffInitial>, as CmdParser only looks at what lies before the next "$"
+        int end = indexOf(cmd, '$', start, entryEnd);
+        if (end == -1)
+            end = entryEnd;
+        split(cmd, start, end, '/');
+        if (nbPieces < 1)
+            throw malformed(cmd);
+        final int finalsStart = pieceStarts[0];
+        final int finalsEnd = pieceEnds[0];
+        final boolean hasDiffInitial = nbPieces > 1;
+        final int initialStart = hasDiffInitial ? pieceStarts[1] : 0;
+        final int initialEnd = hasDiffInitial ? pieceEnds[1] : 0;
+
+        nbFinals = 0;
+        if (indexOf(cmd, ';', finalsStart, finalsEnd) != -1) {
+            split(cmd, finalsStart, finalsEnd, ';');
+            for (int k = 0; k < nbPieces; k++) {
+                addFinal(pieceStarts[k], pieceEnds[k]);
+            }
+            nbTrimsOfFinals = 1;
+        } else if (finalsEnd > finalsStart) {
+            addFinal(finalsStart, finalsEnd);
+            nbTrimsOfFinals = 2;    // CmdParser trims a lone diff in splitDiffs() and again before using it
+        }
+
+        diffInitialLength = 0;
+        if (hasDiffInitial && !regionEquals(cmd, initialStart, initialEnd, "- +")
+                && !regionEquals(cmd, initialStart, initialEnd, "-+")) {
+            diffInitial = ensureCapacity(diffInitial, initialEnd - initialStart);
+            diffInitialLength = trimDiff(cmd, initialStart, initialEnd, diffInitial);
+        }
+    }
+
+    /** @return the index of the "+" in diffInitial. the original initial ends at pieceEnds[1] */
+    private int splitDiffInitial(final CharSequence cmd) {
+        // <initialCharsSandhied>+<initialCharsOriginal>
+        split(diffInitial, 0, diffInitialLength, '+');
+        if (nbPieces < 2)
+            throw malformed(cmd);
+        return pieceEnds[0];
+    }
+
+    private void trimFinal(final CharSequence cmd, final int f) {
+        final int start = finalStarts[f];
+        final int end = finalEnds[f];
+        diffFinal = ensureCapacity(diffFinal, end - start);
+        diffFinalLength = trimDiff(cmd, start, end, diffFinal);
+        for (int k = 1; k < nbTrimsOfFinals; k++) {
+            diffFinalLength = trimDiff(view.of(diffFinal), 0, diffFinalLength, diffFinal);
+        }
+    }
+
+    /** @return the number of chars to delete. toAdd is in the second piece, if any */
+    private int splitDiffFinal() {
+        // <toDelete>+<toAdd>
+        split(diffFinal, 0, diffFinalLength, '+');
+        if (nbPieces < 1)
+            throw new NumberFormatException("For input string: \"\"");
+        return parseInt(diffFinal, pieceStarts[0], pieceEnds[0]);
+    }
+
+    private static int sandhiedFinalsStart(final CharSequence inflected, final int sandhiType) {
+        final int len = inflected.length();
+        final int start;
+        if (sandhiType == 3 || sandhiType == 5 || sandhiType == 6) {
+            start = len - 2;
+        } else if (sandhiType == 9) {
+            start = 0;
+        } else {
+            start = len - 1;
+        }
+        if (start < 0)
+            throw new IllegalArgumentException("\"" + inflected + "\" is too short for sandhi type " + sandhiType);
+        return start;
+    }
+
+    private static boolean thereAreModifications(final CharSequence cmd, final int start, final int end) {
+        // there is no change || no change and a space is added
+        return !regionEquals(cmd, start, end, "$/") && indexOf(cmd, "$/- +", start, end) == -1;
+    }
+
+    /**
+     * Same as CmdParser's trimDiff(): removes the first "-" of the region, wherever it is,
+     * then leading and trailing whitespace.
+     *
+     * @return the length of the result, written at the beginning of dest. dest may be the source
+     */
+    private static int trimDiff(final CharSequence src, final int start, final int end, final char[] dest) {
+        final int dash = indexOf(src, '-', start, end);
+        int length = 0;
+        for (int k = start; k < end; k++) {
+            if (k != dash)
+                dest[length++] = src.charAt(k);
+        }
+        int from = 0;
+        while (from < length && dest[from] <= ' ')
+            from++;
+        while (length > from && dest[length - 1] <= ' ')
+            length--;
+        if (from > 0)
+            System.arraycopy(dest, from, dest, 0, length - from);
+        return length - from;
+    }
+
+    /**
+     * Splits the region around c, with the semantics of {@code String.split()}: if c is not
+     * found, the region is the only piece, even if empty. Otherwise trailing empty pieces are dropped.
+     */
+    private void split(final CharSequence s, final int start, final int end, final char c) {
+        nbPieces = 0;
+        int from = start;
+        for (int k = start; k < end; k++) {
+            if (s.charAt(k) == c) {
+                addPiece(from, k);
+                from = k + 1;
+            }
+        }
+        if (nbPieces == 0) {
+            addPiece(start, end);
+            return;
+        }
+        addPiece(from, end);
+        while (nbPieces > 0 && pieceStarts[nbPieces - 1] == pieceEnds[nbPieces - 1])
+            nbPieces--;
+    }
+
+    private void split(final char[] s, final int start, final int end, final char c) {
+        split(view.of(s), start, end, c);
+    }
+
+    private void addPiece(final int start, final int end) {
+        if (nbPieces == pieceStarts.length) {
+            pieceStarts = Arrays.copyOf(pieceStarts, nbPieces * 2);
+            pieceEnds = Arrays.copyOf(pieceEnds, nbPieces * 2);
+        }
+        pieceStarts[nbPieces] = start;
+        pieceEnds[nbPieces] = end;
+        nbPieces++;
+    }
+
+    private void addInitial(final int start, final int end) {
+        if (nbInitials == initialStarts.length) {
+            initialStarts = Arrays.copyOf(initialStarts, nbInitials * 2);
+            initialEnds = Arrays.copyOf(initialEnds, nbInitials * 2);
+        }
+        initialStarts[nbInitials] = start;
+        initialEnds[nbInitials] = end;
+        nbInitials++;
+    }
+
+    private void addFinal(final int start, final int end) {
+        if (nbFinals == finalStarts.length) {
+            finalStarts = Arrays.copyOf(finalStarts, nbFinals * 2);
+            finalEnds = Arrays.copyOf(finalEnds, nbFinals * 2);
+        }
+        finalStarts[nbFinals] = start;
+        finalEnds[nbFinals] = end;
+        nbFinals++;
+    }
+
+    /** same as Integer.parseInt() on the region */
+    private static int parseInt(final CharSequence s, final int start, final int end) {
+        int k = start;
+        boolean negative = false;
+        if (k < end && (s.charAt(k) == '-' || s.charAt(k) == '+')) {
+            negative = s.charAt(k) == '-';
+            k++;
+        }
+        if (k == end)
+            throw new NumberFormatException("For input string: \"" + s.subSequence(start, end) + "\"");
+        int result = 0;
+        for (; k < end; k++) {
+            final int digit = s.charAt(k) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("For input string: \"" + s.subSequence(start, end) + "\"");
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private int parseInt(final char[] s, final int start, final int end) {
+        return parseInt(view.of(s), start, end);
+    }
+
+    private static int indexOf(final CharSequence s, final char c, final int start, final int end) {
+        for (int k = start; k < end; k++) {
+            if (s.charAt(k) == c)
+                return k;
+        }
+        return -1;
+    }
+
+    private static int indexOf(final CharSequence s, final String str, final int start, final int end) {
+        final int last = end - str.length();
+        for (int k = start; k <= last; k++) {
+            if (regionEquals(s, k, k + str.length(), str))
+                return k;
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(final CharSequence s, final int start, final int end, final String str) {
+        if (end - start != str.length())
+            return false;
+        for (int k = 0; k < str.length(); k++) {
+            if (s.charAt(start + k) != str.charAt(k))
+                return false;
+        }
+        return true;
+    }
+
+    private static char[] ensureCapacity(final char[] array, final int capacity) {
+        return (capacity <= array.length) ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private static IllegalArgumentException malformed(final CharSequence cmd) {
+        return new IllegalArgumentException("There is a problem with cmd: " + cmd);
+    }
+
+    /**
+     * A reusable read-only view of a char array, so the same code walks the cmd and the
+     * rewritten diffs. Each call to {@link #of} repoints it.
+     */
+    private static final class CharArrayView implements CharSequence {
+        private char[] array;
+
+        CharArrayView of(final char[] array) {
+            this.array = array;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return array.length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return array[index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return new String(array, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(array);
+        }
+    }
+
+    /**
+     * The diffs produced by {@link CmdCursorParser}, in parallel columns. The strings are
+     * copied in a shared char arena and described by their start and length in it.
+     * <p>
+     * Each diff is the equivalent of a {@link CmdParser.DiffStruct} together with the
+     * sandhied string it is stored under in the map returned by {@link CmdParser#parse}.
+     */
+    public static final class Diffs {
+        private int[] sandhiedStarts = new int[16];
+        private int[] sandhiedLengths = new int[16];
+        private int[] nbToDeletes = new int[16];
+        private int[] toAddStarts = new int[16];
+        private int[] toAddLengths = new int[16];
+        private int[] initialStarts = new int[16];
+        private int[] initialLengths = new int[16];
+        private int[] sandhiTypes = new int[16];
+        private int[] poss = new int[16];
+        private int[] idempotentGroups = new int[16];
+        private int size = 0;
+
+        private char[] arena = new char[256];
+        private int arenaLength = 0;
+
+        private final CharArrayView view = new CharArrayView();
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+            arenaLength = 0;
+        }
+
+        public int nbToDelete(final int i) {
+            return nbToDeletes[i];
+        }
+
+        public int sandhiType(final int i) {
+            return sandhiTypes[i];
+        }
+
+        public int pos(final int i) {
+            return poss[i];
+        }
+
+        public int idempotentGroup(final int i) {
+            return idempotentGroups[i];
+        }
+
+        public int sandhiedStart(final int i) {
+            return sandhiedStarts[i];
+        }
+
+        public int sandhiedLength(final int i) {
+            return sandhiedLengths[i];
+        }
+
+        public int toAddStart(final int i) {
+            return toAddStarts[i];
+        }
+
+        public int toAddLength(final int i) {
+            return toAddLengths[i];
+        }
+
+        public int initialStart(final int i) {
+            return initialStarts[i];
+        }
+
+        public int initialLength(final int i) {
+            return initialLengths[i];
+        }
+
+        /** the arena the starts refer to. only valid until the next parse */
+        public char[] arena() {
+            return arena;
+        }
+
+        public String sandhied(final int i) {
+            return new String(arena, sandhiedStarts[i], sandhiedLengths[i]);
+        }
+
+        public String toAdd(final int i) {
+            return new String(arena, toAddStarts[i], toAddLengths[i]);
+        }
+
+        public String initial(final int i) {
+            return new String(arena, initialStarts[i], initialLengths[i]);
+        }
+
+        /**
+         * Sorts the diffs in the order of iteration of the TreeMap returned by CmdParser
+         * (sandhied strings by {@link CommonHelpers.LengthComp}, then diffs by
+         * {@link CmdParser.DiffStruct#compareTo}) and removes the duplicates like its TreeSets do.
+         */
+        public void sort() {
+            for (int i = 1; i < size; i++) {
+                for (int j = i; j > 0 && compare(j - 1, j) > 0; j--) {
+                    swap(j - 1, j);
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (kept > 0 && compare(kept - 1, i) == 0)
+                    continue;
+                if (kept != i)
+                    move(i, kept);
+                kept++;
+            }
+            size = kept;
+        }
+
+        /** @return the index of the new diff, with its sandhied string made of the end of a and the slice of b */
+        int add(final CharSequence a, final int aStart, final CharSequence b, final int bStart, final int bEnd) {
+            if (size == sandhiedStarts.length)
+                grow();
+            final int i = size++;
+            sandhiedStarts[i] = arenaLength;
+            append(a, aStart, a.length());
+            append(b, bStart, bEnd);
+            sandhiedLengths[i] = arenaLength - sandhiedStarts[i];
+            return i;
+        }
+
+        int add(final CharSequence a, final int aStart, final char[] b, final int bStart, final int bEnd) {
+            return add(a, aStart, view.of(b), bStart, bEnd);
+        }
+
+        void setDiff(final int i, final int nbToDelete, final char[] toAdd, final int toAddStart, final int toAddEnd,
+                final CharSequence initial, final int initialStart, final int initialEnd,
+                final int sandhiType, final int pos, final int idempotentGroup) {
+            nbToDeletes[i] = nbToDelete;
+            toAddStarts[i] = arenaLength;
+            if (toAdd != null)
+                append(view.of(toAdd), toAddStart, toAddEnd);
+            toAddLengths[i] = arenaLength - toAddStarts[i];
+            initialStarts[i] = arenaLength;
+            if (initial != null)
+                append(initial, initialStart, initialEnd);
+            initialLengths[i] = arenaLength - initialStarts[i];
+            sandhiTypes[i] = sandhiType;
+            poss[i] = pos;
+            idempotentGroups[i] = idempotentGroup;
+        }
+
+        void setDiff(final int i, final int nbToDelete, final char[] toAdd, final int toAddStart, final int toAddEnd,
+                final char[] initial, final int initialStart, final int initialEnd,
+                final int sandhiType, final int pos, final int idempotentGroup) {
+            // both arrays go through the same view, one after the other
+            nbToDeletes[i] = nbToDelete;
+            initialStarts[i] = arenaLength;
+            append(view.of(initial), initialStart, initialEnd);
+            initialLengths[i] = arenaLength - initialStarts[i];
+            toAddStarts[i] = arenaLength;
+            if (toAdd != null)
+                append(view.of(toAdd), toAddStart, toAddEnd);
+            toAddLengths[i] = arenaLength - toAddStarts[i];
+            sandhiTypes[i] = sandhiType;
+            poss[i] = pos;
+            idempotentGroups[i] = idempotentGroup;
+        }
+
+        private void append(final CharSequence s, final int start, final int end) {
+            final int len = end - start;
+            if (arenaLength + len > arena.length)
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + len));
+            for (int k = start; k < end; k++) {
+                arena[arenaLength++] = s.charAt(k);
+            }
+        }
+
+        private int compare(final int i, final int j) {
+            // CommonHelpers.LengthComp on the sandhied strings
+            int c = sandhiedLengths[j] - sandhiedLengths[i];
+            if (c != 0)
+                return c;
+            c = compareStrings(sandhiedStarts[i], sandhiedLengths[i], sandhiedStarts[j], sandhiedLengths[j]);
+            if (c != 0)
+                return c;
+            // DiffStruct.compareTo()
+            c = Integer.compare(nbToDeletes[i], nbToDeletes[j]);
+            if (c != 0)
+                return c;
+            c = compareStrings(toAddStarts[i], toAddLengths[i], toAddStarts[j], toAddLengths[j]);
+            if (c != 0)
+                return c;
+            c = compareStrings(initialStarts[i], initialLengths[i], initialStarts[j], initialLengths[j]);
+            if (c != 0)
+                return c;
+            c = Integer.compare(sandhiTypes[i], sandhiTypes[j]);
+            if (c != 0)
+                return c;
+            c = Integer.compare(idempotentGroups[i], idempotentGroups[j]);
+            if (c != 0)
+                return c;
+            return Integer.compare(poss[i], poss[j]);
+        }
+
+        /** same as String.compareTo() */
+        private int compareStrings(final int start1, final int len1, final int start2, final int len2) {
+            final int lim = Math.min(len1, len2);
+            for (int k = 0; k < lim; k++) {
+                final char c1 = arena[start1 + k];
+                final char c2 = arena[start2 + k];
+                if (c1 != c2)
+                    return c1 - c2;
+            }
+            return len1 - len2;
+        }
+
+        private void swap(final int i, final int j) {
+            swap(sandhiedStarts, i, j);
+            swap(sandhiedLengths, i, j);
+            swap(nbToDeletes, i, j);
+            swap(toAddStarts, i, j);
+            swap(toAddLengths, i, j);
+            swap(initialStarts, i, j);
+            swap(initialLengths, i, j);
+            swap(sandhiTypes, i, j);
+            swap(poss, i, j);
+            swap(idempotentGroups, i, j);
+        }
+
+        private static void swap(final int[] a, final int i, final int j) {
+            final int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+
+        private void move(final int from, final int to) {
+            sandhiedStarts[to] = sandhiedStarts[from];
+            sandhiedLengths[to] = sandhiedLengths[from];
+            nbToDeletes[to] = nbToDeletes[from];
+            toAddStarts[to] = toAddStarts[from];
+            toAddLengths[to] = toAddLengths[from];
+            initialStarts[to] = initialStarts[from];
+            initialLengths[to] = initialLengths[from];
+            sandhiTypes[to] = sandhiTypes[from];
+            poss[to] = poss[from];
+            idempotentGroups[to] = idempotentGroups[from];
+        }
+
+        private void grow() {
+            final int newCapacity = size * 2;
+            sandhiedStarts = Arrays.copyOf(sandhiedStarts, newCapacity);
+            sandhiedLengths = Arrays.copyOf(sandhiedLengths, newCapacity);
+            nbToDeletes = Arrays.copyOf(nbToDeletes, newCapacity);
+            toAddStarts = Arrays.copyOf(toAddStarts, newCapacity);
+            toAddLengths = Arrays.copyOf(toAddLengths, newCapacity);
+            initialStarts = Arrays.copyOf(initialStarts, newCapacity);
+            initialLengths = Arrays.copyOf(initialLengths, newCapacity);
+            sandhiTypes = Arrays.copyOf(sandhiTypes, newCapacity);
+            poss = Arrays.copyOf(poss, newCapacity);
+            idempotentGroups = Arrays.copyOf(idempotentGroups, newCapacity);
+        }
+    }
+}
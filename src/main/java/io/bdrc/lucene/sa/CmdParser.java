@@ -57,8 +57,14 @@ public class CmdParser {
 	private TreeMap<String, TreeSet<DiffStruct>> sandhis = null;
 
     private int idempotentGroup = -1;
+    
+    /** default number of parsed cmds kept in {@link #getCache()} */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+    
+    private static volatile BoundedCache<CacheKey, ParsedCmd> cache = new BoundedCache<CacheKey, ParsedCmd>(DEFAULT_CACHE_SIZE);
 	
-	private static final HashMap<Integer, List<String>> idempotentInitials = new HashMap<Integer, List<String>>() 
+	/** the initials of each idempotent group, also in {@link SlpCharClass} */
+	static final HashMap<Integer, List<String>> idempotentInitials = new HashMap<Integer, List<String>>() 
 	{
         private static final long serialVersionUID = 1L;
 
@@ -98,9 +104,27 @@ public class CmdParser {
 	            "t", "T", "d", "D", "n", "p", "P", "b", "B", "m", "y", "r", "l", "v", "S", "z", "s", 
 	            "h", "H", "Z", "V", "M"));
 	}};
+	
+	/**
+	 * @return the bit of an idempotent group, 0 for a group that doesn't exist
+	 */
+	static int idempotentGroupBit(final int group) {
+	    return idempotentInitials.containsKey(group) ? 1 << group : 0;
+	}
+	
+	/**
+	 * The same as looking for c in the initials given by {@link #getIdemSandhied(String, Integer)}, 
+	 * for several groups at once.
+	 * 
+	 * @param groups  the bits of the groups, or-ed together
+	 */
+	static boolean isIdempotentInitial(final int c, final int groups) {
+	    return SlpCharClass.isIdempotentInitial(c, groups);
+	}
 
 	/**
 	 * note: currently, parsing cmd is not done using indexes. this method might be slow.
+	 * {@link CmdCursorParser} gives the same result without regexes and is the one used by the tokenizer.
 	 * 
 	 * This is how cmd is structured, with the names used in this method: (correct formatting in the code file)
 	 * 
@@ -195,6 +219,105 @@ public class CmdParser {
 		return sandhis;
 	} 
 	
+    /**
+     * Same as {@link #parse(String, String)}, but the result is shared through a cache that
+     * is common to all the tokenizers.
+     * <p>
+     * The parse only depends on the cmd and on the sandhied finals of the inflected form 
+     * (see {@link #findSandhiedFinals}), so the key is the cmd and the one or two last 
+     * characters of inflected, or inflected as a whole if one of the sandhis is of type 9.
+     * 
+     * @param inflected  the inflected form
+     * @param cmd  the cmd found in the Trie for inflected
+     * @return the immutable parsed cmd
+     */
+    static ParsedCmd parseCached(final String inflected, final String cmd) {
+        return cache.get(new CacheKey(cmd, inflected), key -> {
+            final CmdCursorParser.Diffs diffs = new CmdCursorParser.Diffs();
+            new CmdCursorParser().parse(inflected, cmd, diffs);
+            diffs.sort();
+            return new ParsedCmd(diffs);
+        });
+    }
+    
+    /**
+     * @return the cache used by {@link SkrtWordTokenizer} to store parsed cmds, with its hit and miss counters
+     */
+    public static BoundedCache<?, ?> getCache() {
+        return cache;
+    }
+    
+    /**
+     * Replaces the cache of parsed cmds by an empty one.
+     * 
+     * @param maxSize  the maximum number of parsed cmds to keep. 0 disables the cache.
+     */
+    public static void setCacheSize(final int maxSize) {
+        cache = new BoundedCache<CacheKey, ParsedCmd>(maxSize);
+    }
+    
+    /**
+     * @return the number of characters at the end of inflected the parse of cmd depends on, 
+     *          -1 if it depends on the whole inflected form
+     */
+    static int nbFinalsNeeded(final String cmd) {
+        int nbFinals = 1;
+        for (int i = cmd.indexOf('='); i != -1; i = cmd.indexOf('=', i + 1)) {
+            int sandhiType = 0;
+            int j = i + 1;
+            while (j < cmd.length() && Character.isDigit(cmd.charAt(j))) {
+                sandhiType = sandhiType * 10 + (cmd.charAt(j) - '0');
+                j++;
+            }
+            if (sandhiType == 9) {
+                return -1;
+            } else if (sandhiType == 3 || sandhiType == 5 || sandhiType == 6) {
+                nbFinals = 2;
+            }
+        }
+        return nbFinals;
+    }
+    
+    /**
+     * The key of the cache: the cmd and the relevant ending of the inflected form, 
+     * compared in place so that no substring is created.
+     */
+    static final class CacheKey {
+        final String cmd;
+        final String inflected;
+        final int finalsStart;
+        final int hash;
+        
+        CacheKey(final String cmd, final String inflected) {
+            this.cmd = cmd;
+            this.inflected = inflected;
+            final int nbFinals = nbFinalsNeeded(cmd);
+            this.finalsStart = (nbFinals == -1) ? 0 : Math.max(0, inflected.length() - nbFinals);
+            int h = cmd.hashCode();
+            for (int i = finalsStart; i < inflected.length(); i++) {
+                h = 31 * h + inflected.charAt(i);
+            }
+            this.hash = h;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof CacheKey))
+                return false;
+            final CacheKey other = (CacheKey) o;
+            final int len = inflected.length() - finalsStart;
+            return hash == other.hash && len == other.inflected.length() - other.finalsStart 
+                    && cmd.equals(other.cmd) && inflected.regionMatches(finalsStart, other.inflected, other.finalsStart, len);
+        }
+    }
+	
     public HashMap<String, String> getIdemSandhied(String inflected, Integer group) {
         HashMap<String, String> sandhied = new HashMap<String, String>();
         String sandhiedFinal = findSandhiedFinals(inflected, 10);
@@ -313,12 +436,14 @@ public class CmdParser {
 	}
 	
 	public static class DiffStruct implements Comparable<DiffStruct> {
-	    Integer nbToDelete;
-	    String toAdd;
-	    String initial;
-	    Integer sandhiType;
-	    Integer pos;
-	    Integer idempotentGroup;
+	    final Integer nbToDelete;
+	    final String toAdd;
+	    final String initial;
+	    final Integer sandhiType;
+	    final Integer pos;
+	    final Integer idempotentGroup;
+	    /** the tokens of toAdd if it is a multi-token lemma, null otherwise */
+	    final MultiTokenLemma multiToken;
 	    
 	    public DiffStruct(int nbToDelete, String toAdd, String initial, int sandhiType, int pos, int idempotentGroup) {
 	        this.nbToDelete = nbToDelete;
@@ -327,6 +452,7 @@ public class CmdParser {
 	        this.sandhiType = sandhiType;
 	        this.pos = pos;
 	        this.idempotentGroup = idempotentGroup;
+	        this.multiToken = MultiTokenLemma.compile(this.toAdd);
 	    }
 	    
 	    public String toString() {
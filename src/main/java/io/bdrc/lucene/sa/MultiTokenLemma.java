@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+/**
+ * A multi-token lemma, compiled once from the toAdd of a diff when its cmd is parsed
+ * (see {@link CmdParser.DiffStruct#multiToken}), so that the tokenizers can splice its
+ * tokens without parsing strings.
+ * <p>
+ * In the Trie, the tokens are joined with {@code ⟾}, each of them being
+ * {@code <string><pos>_<start>><end>}, with a 1-based start relative to the beginning
+ * of the inflected form (see {@link SkrtWordTokenizer}). The beginning of the
+ * inflected form that is kept by the diff is part of the first token, so the text of
+ * the first token is only known from the full lemma: see {@link #firstTextLength(int)}.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class MultiTokenLemma {
+
+    static final char SEPARATOR = '⟾';
+
+    /** length of the toAdd this was compiled from */
+    final int toAddLength;
+    private final String[] texts;     // texts[0] only holds what toAdd adds to the stem
+    private final int[] poss;
+    private final int[] starts;       // 0-based, relative to the beginning of the inflected form
+    private final int[] ends;
+
+    private MultiTokenLemma(int toAddLength, String[] texts, int[] poss, int[] starts, int[] ends) {
+        this.toAddLength = toAddLength;
+        this.texts = texts;
+        this.poss = poss;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * @return the compiled tokens, or null if toAdd is not a multi-token lemma
+     * @throws IllegalArgumentException if toAdd is a malformed multi-token lemma, so the cmd
+     *         it comes from can't be parsed
+     */
+    static MultiTokenLemma compile(String toAdd) {
+        if (toAdd.indexOf(SEPARATOR) == -1)
+            return null;
+        final String[] rawTokens = toAdd.split(String.valueOf(SEPARATOR));
+        final String[] texts = new String[rawTokens.length];
+        final int[] poss = new int[rawTokens.length];
+        final int[] starts = new int[rawTokens.length];
+        final int[] ends = new int[rawTokens.length];
+        try {
+            for (int i = 0; i < rawTokens.length; i++) {
+                final String rawToken = rawTokens[i];
+                final int underscore = rawToken.indexOf('_');
+                final int arrow = rawToken.indexOf('>');
+                texts[i] = rawToken.substring(0, underscore - 1);
+                poss[i] = Integer.parseInt(rawToken.substring(underscore - 1, underscore));
+                starts[i] = Integer.parseInt(rawToken.substring(underscore + 1, arrow)) - 1;
+                ends[i] = Integer.parseInt(rawToken.substring(arrow + 1));
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("malformed multi-token lemma: " + toAdd, ex);
+        }
+        return new MultiTokenLemma(toAdd.length(), texts, poss, starts, ends);
+    }
+
+    int size() {
+        return texts.length;
+    }
+
+    /**
+     * @param lemmaLength  length of the full lemma: the stem kept from the inflected form, then toAdd
+     * @return the length of the text of the first token, that is the beginning of the full lemma
+     */
+    int firstTextLength(int lemmaLength) {
+        return lemmaLength - toAddLength + texts[0].length();
+    }
+
+    /**
+     * @return the text of the token i, for i > 0
+     */
+    String text(int i) {
+        return texts[i];
+    }
+
+    /**
+     * @param lemma  the full lemma
+     * @return the text of the token i
+     */
+    String text(int i, String lemma) {
+        return i == 0 ? lemma.substring(0, firstTextLength(lemma.length())) : texts[i];
+    }
+
+    int pos(int i) {
+        return poss[i];
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return ends[i];
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+
+/**
+ * The immutable result of {@link CmdParser#parse} for a given cmd and a given
+ * ending of the inflected form, as stored in the cache of parsed cmds.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class ParsedCmd {
+
+    /** sandhied string to the diffs that undo the sandhi, in the order of {@link CommonHelpers.LengthComp} */
+    final SortedMap<String, SortedSet<DiffStruct>> sandhis;
+
+    /** finds the keys of sandhis in the text */
+    final SandhiMatcher matcher;
+
+    ParsedCmd(final TreeMap<String, TreeSet<DiffStruct>> parsed) {
+        final TreeMap<String, SortedSet<DiffStruct>> copy = new TreeMap<String, SortedSet<DiffStruct>>(parsed.comparator());
+        for (Entry<String, TreeSet<DiffStruct>> entry: parsed.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableSortedSet(entry.getValue()));
+        }
+        this.sandhis = Collections.unmodifiableSortedMap(copy);
+        this.matcher = new SandhiMatcher(sandhis);
+    }
+
+    /**
+     * @param diffs  diffs sorted with {@link CmdCursorParser.Diffs#sort()}
+     */
+    ParsedCmd(final CmdCursorParser.Diffs diffs) {
+        final TreeMap<String, SortedSet<DiffStruct>> map = new TreeMap<String, SortedSet<DiffStruct>>(new CommonHelpers.LengthComp());
+        for (int i = 0; i < diffs.size(); i++) {
+            final String sandhied = diffs.sandhied(i);
+            SortedSet<DiffStruct> set = map.get(sandhied);
+            if (set == null) {
+                set = new TreeSet<DiffStruct>();
+                map.put(sandhied, set);
+            }
+            set.add(new DiffStruct(diffs.nbToDelete(i), diffs.toAdd(i), diffs.initial(i), diffs.sandhiType(i), 
+                    diffs.pos(i), diffs.idempotentGroup(i)));
+        }
+        for (Entry<String, SortedSet<DiffStruct>> entry: map.entrySet()) {
+            entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+        }
+        this.sandhis = Collections.unmodifiableSortedMap(map);
+        this.matcher = new SandhiMatcher(sandhis);
+    }
+
+    @Override
+    public String toString() {
+        return sandhis.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.Arrays;
+
+/**
+ * The candidate tokens found by {@link SkrtWordTokenizer} while exploring the sandhied
+ * initials of a token, in insertion order.
+ * <p>
+ * It behaves like the {@code LinkedHashMap<String, Integer[]>} it replaces: a candidate is
+ * identified by its text, adding a text that is already present overwrites its values
+ * but keeps its place. The text cannot be a mere (offset, length) slice of the input,
+ * since unsandhied initials make it differ from the input, so it is copied into a
+ * reusable {@code char[]} arena and compared on its length, its hash and then its chars.
+ * Nothing is allocated once the arrays have grown to the size needed by the input.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class PotentialTokens {
+
+    static final int NONWORD = 0;
+    static final int MATCH = 1;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] cmdIndexes = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] textLengths = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private char[] arena = new char[INITIAL_CAPACITY * 16];
+    private int arenaLength = 0;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+        arenaLength = 0;
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return ends[i];
+    }
+
+    /** either {@link #NONWORD} or {@link #MATCH} */
+    int kind(int i) {
+        return kinds[i];
+    }
+
+    /** the index of the cmd of a {@link #MATCH} in the Trie, -1 for a {@link #NONWORD} */
+    int cmdIndex(int i) {
+        return cmdIndexes[i];
+    }
+
+    int textStart(int i) {
+        return textStarts[i];
+    }
+
+    int textLength(int i) {
+        return textLengths[i];
+    }
+
+    /** the arena holding the text of all the candidates. only valid until the next {@link #put} */
+    char[] arena() {
+        return arena;
+    }
+
+    String text(int i) {
+        return new String(arena, textStarts[i], textLengths[i]);
+    }
+
+    /**
+     * Adds a candidate, or overwrites the values of the candidate that has the same text.
+     */
+    void put(CharSequence text, int start, int end, int kind, int cmdIndex) {
+        final int hash = hash(text);
+        int i = indexOf(text, hash);
+        if (i == -1) {
+            ensureCapacity(size + 1);
+            i = size++;
+            hashes[i] = hash;
+            textStarts[i] = appendToArena(text);
+            textLengths[i] = text.length();
+        }
+        starts[i] = start;
+        ends[i] = end;
+        kinds[i] = kind;
+        cmdIndexes[i] = cmdIndex;
+    }
+
+    /** removes the candidate that has this text, if there is one */
+    void remove(CharSequence text) {
+        final int i = indexOf(text, hash(text));
+        if (i == -1)
+            return;
+        final int toMove = size - i - 1;
+        if (toMove > 0) {
+            System.arraycopy(starts, i + 1, starts, i, toMove);
+            System.arraycopy(ends, i + 1, ends, i, toMove);
+            System.arraycopy(kinds, i + 1, kinds, i, toMove);
+            System.arraycopy(cmdIndexes, i + 1, cmdIndexes, i, toMove);
+            System.arraycopy(hashes, i + 1, hashes, i, toMove);
+            System.arraycopy(textStarts, i + 1, textStarts, i, toMove);
+            System.arraycopy(textLengths, i + 1, textLengths, i, toMove);
+        }
+        size--;
+        if (size == 0)
+            arenaLength = 0;
+    }
+
+    private int indexOf(CharSequence text, int hash) {
+        final int len = text.length();
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] != hash || textLengths[i] != len)
+                continue;
+            final int from = textStarts[i];
+            int k = 0;
+            while (k < len && arena[from + k] == text.charAt(k))
+                k++;
+            if (k == len)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int hash(CharSequence text) {
+        int h = 0;
+        for (int k = 0; k < text.length(); k++)
+            h = 31 * h + text.charAt(k);
+        return h;
+    }
+
+    private int appendToArena(CharSequence text) {
+        final int len = text.length();
+        if (arenaLength + len > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + len));
+        final int textStart = arenaLength;
+        for (int k = 0; k < len; k++) {
+            arena[textStart + k] = text.charAt(k);
+        }
+        arenaLength += len;
+        return textStart;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length)
+            return;
+        final int newCapacity = Math.max(starts.length * 2, capacity);
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        cmdIndexes = Arrays.copyOf(cmdIndexes, newCapacity);
+        hashes = Arrays.copyOf(hashes, newCapacity);
+        textStarts = Arrays.copyOf(textStarts, newCapacity);
+        textLengths = Arrays.copyOf(textLengths, newCapacity);
+    }
+}
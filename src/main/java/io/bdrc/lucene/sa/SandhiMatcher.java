@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+
+/**
+ * Finds which sandhied strings of a {@link ParsedCmd} are in the text following a word.
+ * <p>
+ * A sandhied string is compared to the text from a start that depends on the sandhi type
+ * (see {@link SkrtWordTokenizer#sandhiStart(int)}), ignoring spaces and hyphens. Instead of 
+ * reading the text again for each sandhied string, the strings are compiled in a trie for each 
+ * start, and the text is read once per start while walking down the trie: every string ending
+ * on the way is found.
+ * <p>
+ * The matcher is immutable and kept with the ParsedCmd in the cache of parsed cmds; 
+ * the result of a match is kept in a {@link Matches}, owned by the tokenizer.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class SandhiMatcher {
+
+    /** the distinct values of {@link SkrtWordTokenizer#sandhiStart(int)} */
+    private static final int[] STARTS = {0, -1, -4};
+    private static final int NB_STARTS = STARTS.length;
+
+    /** the index in STARTS of the start of each sandhi type, -1 for the unknown types */
+    private static final int[] START_INDEX = new int[11];
+    static {
+        for (int type = 0; type < START_INDEX.length; type++) {
+            START_INDEX[type] = -1;
+            for (int s = 0; s < NB_STARTS; s++) {
+                if (STARTS[s] == SkrtWordTokenizer.sandhiStart(type))
+                    START_INDEX[type] = s;
+            }
+        }
+    }
+
+    /* one trie per start, as nodes in parallel arrays. node 0 is the root */
+    private final char[][] labels = new char[NB_STARTS][];
+    private final int[][] firstChild = new int[NB_STARTS][];
+    private final int[][] nextSibling = new int[NB_STARTS][];
+    private final int[][] keyOf = new int[NB_STARTS][];     // index of the string ending on the node, or -1
+    private final int[] nbNodes = new int[NB_STARTS];
+
+    private final int size;
+
+    /**
+     * @param sandhis  the sandhied strings with their diffs, indexed in the order of the map
+     */
+    SandhiMatcher(final SortedMap<String, SortedSet<DiffStruct>> sandhis) {
+        size = sandhis.size();
+        int key = 0;
+        for (Entry<String, SortedSet<DiffStruct>> entry: sandhis.entrySet()) {
+            int added = 0;     // the tries this key is added to
+            for (DiffStruct diff: entry.getValue()) {
+                final int s = startIndex(diff.sandhiType);
+                if (s != -1 && (added & (1 << s)) == 0) {
+                    add(s, entry.getKey(), key);
+                    added |= 1 << s;
+                }
+            }
+            key++;
+        }
+    }
+
+    /** @return the number of sandhied strings */
+    int size() {
+        return size;
+    }
+
+    static int startIndex(final int sandhiType) {
+        return sandhiType >= 0 && sandhiType < START_INDEX.length ? START_INDEX[sandhiType] : -1;
+    }
+
+    private void add(final int s, final String sandhied, final int key) {
+        if (labels[s] == null) {
+            labels[s] = new char[8];
+            firstChild[s] = new int[8];
+            nextSibling[s] = new int[8];
+            keyOf[s] = new int[8];
+            newNode(s, '\0');
+        }
+        int node = 0;
+        for (int i = 0; i < sandhied.length(); i++) {
+            final char c = sandhied.charAt(i);
+            int child = firstChild[s][node];
+            while (child != -1 && labels[s][child] != c)
+                child = nextSibling[s][child];
+            if (child == -1) {
+                child = newNode(s, c);
+                nextSibling[s][child] = firstChild[s][node];
+                firstChild[s][node] = child;
+            }
+            node = child;
+        }
+        keyOf[s][node] = key;
+    }
+
+    private int newNode(final int s, final char label) {
+        final int node = nbNodes[s]++;
+        if (node == labels[s].length) {
+            final int capacity = ArrayUtil.oversize(node + 1, Integer.BYTES);
+            labels[s] = Arrays.copyOf(labels[s], capacity);
+            firstChild[s] = Arrays.copyOf(firstChild[s], capacity);
+            nextSibling[s] = Arrays.copyOf(nextSibling[s], capacity);
+            keyOf[s] = Arrays.copyOf(keyOf[s], capacity);
+        }
+        labels[s][node] = label;
+        firstChild[s][node] = -1;
+        nextSibling[s][node] = -1;
+        keyOf[s][node] = -1;
+        return node;
+    }
+
+    /**
+     * Reads the text from bufferIndex + STARTS[s] along the trie of start s,
+     * marking the strings found in found.
+     */
+    private void walk(final int s, final CharWindow ioBuffer, final int bufferIndex, final boolean[] found) throws IOException {
+        if (labels[s] == null)
+            return;
+        int node = 0;
+        if (keyOf[s][node] != -1)
+            found[keyOf[s][node] * NB_STARTS + s] = true;
+        int pos = bufferIndex + STARTS[s];
+        while (firstChild[s][node] != -1) {
+            int c = ioBuffer.get(pos++);
+            while (SlpCharClass.isValidWithinSandhi(c))
+                c = ioBuffer.get(pos++);
+            if (c == -1)
+                return;
+            int child = firstChild[s][node];
+            while (child != -1 && labels[s][child] != c)
+                child = nextSibling[s][child];
+            if (child == -1)
+                return;
+            node = child;
+            if (keyOf[s][node] != -1)
+                found[keyOf[s][node] * NB_STARTS + s] = true;
+        }
+    }
+
+    /**
+     * The sandhied strings found after a given word.
+     * <p>
+     * The text is only read for a start when a sandhi type with this start is first asked
+     * about: the first char read is also read when comparing the strings one by one, and the
+     * following ones are after it, so no char is read before what the tokenizer keeps.
+     */
+    static final class Matches {
+        private SandhiMatcher matcher;
+        private CharWindow ioBuffer;
+        private int bufferIndex;
+        private int walked;     // the starts already read, as bits
+        private boolean[] found = new boolean[64];
+
+        /**
+         * @param bufferIndex  the index of the last char of the word
+         */
+        void reset(final SandhiMatcher matcher, final CharWindow ioBuffer, final int bufferIndex) {
+            this.matcher = matcher;
+            this.ioBuffer = ioBuffer;
+            this.bufferIndex = bufferIndex;
+            walked = 0;
+            final int length = matcher.size * NB_STARTS;
+            if (length > found.length)
+                found = new boolean[ArrayUtil.oversize(length, 1)];
+            else
+                Arrays.fill(found, 0, length, false);
+        }
+
+        /**
+         * Same as {@link SkrtWordTokenizer#containsSandhiedCombination(CharWindow, int, String, int)}
+         * for the sandhied string of index key.
+         */
+        boolean contains(final int key, final int sandhiType) throws IOException {
+            final int s = startIndex(sandhiType);
+            if (s == -1)
+                return false;
+            if ((walked & (1 << s)) == 0) {
+                matcher.walk(s, ioBuffer, bufferIndex, found);
+                walked |= 1 << s;
+            }
+            return found[key * NB_STARTS + s];
+        }
+    }
+}
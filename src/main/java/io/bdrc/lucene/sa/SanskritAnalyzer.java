@@ -45,6 +45,7 @@ public class SanskritAnalyzer extends Analyzer {
 	String mode = null;
 	String inputEncoding = null;
 	String lenient = null;
+	String shingles = null;
 	public static final String defaultStopFile = "skrt-stopwords.txt";
 	String stopFilename = null;
 	boolean mergePrepositions = true;
@@ -55,7 +56,7 @@ public class SanskritAnalyzer extends Analyzer {
 	
 	/**
 	 * 
-	 * @param mode            `space`, `syl` or `word`
+	 * @param mode            `space`, `syl`, `word`, `lattice` or `lemma`
      * @param inputEncoding   `SLP`, `deva` or `roman`
      * @param stopFilename    path to the file, empty string (default list) or null (no stopwords)
 	 * 
@@ -77,7 +78,7 @@ public class SanskritAnalyzer extends Analyzer {
      * Uses the list of stopwords defined here:
      * <a href="https://gist.github.com/Akhilesh28/b012159a10a642ed5c34e551db76f236">gist.github.com/Akhilesh28</a>
      * 
-     * @param mode            `space`, `syl` or `word`
+     * @param mode            `space`, `syl`, `word`, `lattice` or `lemma`
      * @param inputEncoding   `SLP`, `deva` or `roman`
      * 
      * @throws IOException the file containing the stoplist can not be read 
@@ -102,7 +103,7 @@ public class SanskritAnalyzer extends Analyzer {
 	 * "(...) in the classical language the usage is mainly restricted to prati, anu, and ā.", 
 	 * (1125.b. of <a href="https://en.wikisource.org/wiki/Page%3ASanskrit_Grammar_by_Whitney_p1.djvu/442">Whitney</a>)
 	 * 
-     * @param mode              `space`, `syl` or `word`
+     * @param mode              `space`, `syl`, `word`, `lattice` or `lemma`
      * @param inputEncoding     `SLP`, `deva` or `roman`
      * @param mergePrepositions concatenates the token containing the preposition with the next one if true.
      * @param filterGeminates   simplify geminates if true, else keep them as-is (default behavior)
@@ -113,10 +114,10 @@ public class SanskritAnalyzer extends Analyzer {
 	public SanskritAnalyzer(String mode, String inputEncoding, boolean mergePrepositions, boolean filterGeminates) throws IOException {
 	    this(mode, inputEncoding);
 	    this.filterGeminates = filterGeminates;
-	    if ("word".equals(mode)) {
+	    if ("word".equals(mode) || "lattice".equals(mode) || "lemma".equals(mode)) {
 	        this.mergePrepositions = mergePrepositions;
 	    } else if (mergePrepositions){
-	        CommonHelpers.logger.error("Can only merge prepositions in 'word' mode");
+	        CommonHelpers.logger.error("Can only merge prepositions in 'word', 'lattice' or 'lemma' mode");
 	        return;
 	    }
 	}
@@ -128,8 +129,10 @@ public class SanskritAnalyzer extends Analyzer {
      *   class QueryLenientSyl extends SanskritAnalyzer
      *   class IndexLenientWord extends SanskritAnalyzer
      *   class QueryLenientWord extends SanskritAnalyzer
+     *   class IndexLenientSylShingles extends SanskritAnalyzer
+     *   class QueryLenientSylShingles extends SanskritAnalyzer
      *
-     * @param mode              `space`, `syl` or `word`
+     * @param mode              `space`, `syl`, `word`, `lattice` or `lemma`
      * @param inputEncoding     `SLP`, `deva` or `roman`
      * @param mergePrepositions concatenates the token containing the preposition with the next one if true.
      * @param filterGeminates   simplify geminates if true, else keep them as-is
@@ -146,6 +149,29 @@ public class SanskritAnalyzer extends Analyzer {
 
 	    this.lenient = lenient;
 	}
+	
+	/**
+	 * Adds shingles of syllables in `syl` mode, see {@link SyllableShingleFilter}
+	 * 
+     * @param mode              `syl`
+     * @param inputEncoding     `SLP`, `deva` or `roman`
+     * @param mergePrepositions must be false in `syl` mode
+     * @param filterGeminates   simplify geminates if true, else keep them as-is
+     * @param lenient           `index`, `query` or null
+     * @param shingles          `index` (syllables and shingles) or `query` (the longest shingles only)
+     *                              
+     * @throws IOException  the file containing the stoplist can not be found
+	 */
+	public SanskritAnalyzer(String mode, String inputEncoding, boolean mergePrepositions, boolean filterGeminates, String lenient, String shingles) throws IOException {
+	    this(mode, inputEncoding, mergePrepositions, filterGeminates, lenient);
+	    
+	    if (!"index".equals(shingles) && !"query".equals(shingles))
+	        throw new IllegalArgumentException(String.format("Illegal value for argument shingles: '%s'", shingles));
+	    if (!"syl".equals(mode))
+	        throw new IllegalArgumentException(String.format("Shingles are only available in 'syl' mode, not '%s'", mode));
+	    
+	    this.shingles = shingles;
+	}
 
 
    public SanskritAnalyzer(String mode, String inputEncoding, boolean mergePrepositions, boolean filterGeminates, boolean normalizeAnusvara) throws IOException {
@@ -226,18 +252,33 @@ public class SanskritAnalyzer extends Analyzer {
 			    CommonHelpers.logger.error("cannot initialize SkrtWordTokenizer", e);
                 return null;
             }
+		} else if ("lattice".equals(mode)) {
+		    try {
+		        source = new SkrtLatticeTokenizer();
+		    } catch (Exception e) {
+		        CommonHelpers.logger.error("cannot initialize SkrtLatticeTokenizer", e);
+		        return null;
+		    }
 		} else if ("syl".equals(mode)) {
 			source = new SkrtSyllableTokenizer();
-		} else if ("space".equals(mode)) {
+		} else if ("space".equals(mode) || "lemma".equals(mode)) {
 		    source = new WhitespaceTokenizer();
 		} else {
 		    throw new IllegalArgumentException(String.format("Illegal value for argument mode: '%s'", mode));
 		}
 		
+		filter = (TokenStream) source;
+		if ("lemma".equals(mode)) {
+		    try {
+		        filter = new SkrtLemmatizerFilter(filter);
+		    } catch (IOException e) {
+		        CommonHelpers.logger.error("cannot initialize SkrtLemmatizerFilter", e);
+		        return null;
+		    }
+		}
+		
 		if (skrtStopWords != null) {  // a stop list was parsed
-			filter = new StopFilter(source, skrtStopWords);
-		} else {
-			filter = (TokenStream) source;
+			filter = new StopFilter(filter, skrtStopWords);
 		}
 		
 		if (mergePrepositions) {
@@ -250,6 +291,10 @@ public class SanskritAnalyzer extends Analyzer {
 		    filter = new LenientTokenFilter(filter);
 		}
 		
+		if (shingles != null) {
+		    filter = new SyllableShingleFilter(filter, "query".equals(shingles));
+		}
+		
 		return new TokenStreamComponents(source, filter);
 	}
 
@@ -265,6 +310,18 @@ public class SanskritAnalyzer extends Analyzer {
         }
     }
 
+    public static class IndexLenientSylShingles extends SanskritAnalyzer {
+        public IndexLenientSylShingles() throws IOException {
+            super("syl", "roman", false, true, "index", "index");
+        }
+    }
+
+    public static class QueryLenientSylShingles extends SanskritAnalyzer {
+        public QueryLenientSylShingles() throws IOException {
+            super("syl", "roman", false, false, "query", "query");
+        }
+    }
+
     public static class IndexLenientWord extends SanskritAnalyzer {
         public IndexLenientWord() throws IOException {
             super("word", "roman", false, true, "index");
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The costs used by {@link SkrtLatticeTokenizer} to choose between the readings of a segment:
+ * unigram frequencies of the lemmas and priors of the sandhi rules.
+ * <p>
+ * The model is built from a text file with one entry per line, in the same {@code key,value} 
+ * format as the content of the Trie:
+ * <pre>
+ * Darma,1520        a lemma and its number of occurrences in a reference corpus
+ * =1,8321           a sandhi type (the number after "=" in the cmds) and the number of times it was seen
+ * </pre>
+ * and is then compiled with {@link #store(String)} to be shipped next to the compiled Trie.
+ * <p>
+ * The frequencies become costs: {@code -ln(p)} in tenths of a nat, bounded so that a word, even
+ * read through a sandhi, always stays cheaper than a single non-word character in the lattice.
+ * Models compiled with higher bounds are clamped when loaded. Lemmas absent from the 
+ * model are counted as having been seen half a time.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class ScoringModel {
+
+    public static final String DEFAULT_COMPILED_MODEL = "skrt-scoring-model.dump";
+
+    /* keeps WORD_COST + MAX_LEMMA_COST + MAX_SANDHI_COST + SANDHI_COST of SkrtLatticeTokenizer below NONWORD_COST */
+    static final int MAX_LEMMA_COST = 800;
+    static final int MAX_SANDHI_COST = 98;
+    /* far above the sandhi types of the cmds, bounds the table of their costs */
+    static final int MAX_SANDHI_TYPE = 255;
+    private static final double SCALE = 10;
+    private static final int VERSION = 1;
+
+    private final Map<String, Integer> lemmaCosts;
+    private final int unknownLemmaCost;
+    private final int[] sandhiCosts;
+
+    ScoringModel(Map<String, Integer> lemmaCosts, int unknownLemmaCost, int[] sandhiCosts) {
+        this.lemmaCosts = lemmaCosts;
+        this.unknownLemmaCost = unknownLemmaCost;
+        this.sandhiCosts = sandhiCosts;
+    }
+
+    /**
+     * @param filename  the frequencies, as described above
+     * @return the model
+     * @throws IOException the file can't be read
+     */
+    public static ScoringModel build(String filename) throws IOException {
+        final Map<String, Long> lemmaCounts = new HashMap<String, Long>();
+        final Map<Integer, Long> sandhiCounts = new HashMap<Integer, Long>();
+        long lemmaTotal = 0;
+        long sandhiTotal = 0;
+        int maxSandhiType = 0;
+        try (BufferedReader br = CommonHelpers.getFileContent(filename)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty())
+                    continue;
+                final int sepIndex = line.lastIndexOf(',');
+                if (sepIndex < 1)
+                    throw corrupted(lineNumber, line, null);
+                final long count;
+                try {
+                    count = Long.parseLong(line.substring(sepIndex + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw corrupted(lineNumber, line, e);
+                }
+                if (count < 0)
+                    throw corrupted(lineNumber, line, null);
+                if (line.charAt(0) == '=') {
+                    final int sandhiType;
+                    try {
+                        sandhiType = Integer.parseInt(line.substring(1, sepIndex));
+                    } catch (NumberFormatException e) {
+                        throw corrupted(lineNumber, line, e);
+                    }
+                    if (sandhiType < 0 || sandhiType > MAX_SANDHI_TYPE)
+                        throw corrupted(lineNumber, line, null);
+                    sandhiCounts.merge(sandhiType, count, Long::sum);
+                    sandhiTotal += count;
+                    maxSandhiType = Math.max(maxSandhiType, sandhiType);
+                } else {
+                    lemmaCounts.merge(line.substring(0, sepIndex), count, Long::sum);
+                    lemmaTotal += count;
+                }
+            }
+        }
+        final Map<String, Integer> lemmaCosts = new HashMap<String, Integer>();
+        for (Entry<String, Long> entry: lemmaCounts.entrySet()) {
+            lemmaCosts.put(entry.getKey(), cost(entry.getValue(), lemmaTotal, MAX_LEMMA_COST));
+        }
+        final int[] sandhiCosts = new int[sandhiCounts.isEmpty() ? 0 : maxSandhiType + 1];
+        Arrays.fill(sandhiCosts, MAX_SANDHI_COST);      // the types never seen
+        for (Entry<Integer, Long> entry: sandhiCounts.entrySet()) {
+            sandhiCosts[entry.getKey()] = cost(entry.getValue(), sandhiTotal, MAX_SANDHI_COST);
+        }
+        return new ScoringModel(lemmaCosts, cost(0, lemmaTotal, MAX_LEMMA_COST), sandhiCosts);
+    }
+
+    private static IllegalArgumentException corrupted(int lineNumber, String line, Exception cause) {
+        return new IllegalArgumentException("The scoring model is corrupted in line " + lineNumber + ".\n" + line, cause);
+    }
+
+    /* -ln(count / total), with half an occurrence for the unseen ones */
+    static int cost(double count, long total, int max) {
+        if (total <= 0)
+            return 0;
+        final double cost = SCALE * -Math.log(Math.max(count, 0.5) / (total + 0.5));
+        return (int) Math.min(max, Math.max(0, Math.round(cost)));
+    }
+
+    /**
+     * Opens a model compiled with {@link #store(String)}.
+     * 
+     * @param stream  the compiled model
+     * @return the model
+     * @throws IOException the stream can't be read or doesn't contain a compiled model
+     */
+    public static ScoringModel load(InputStream stream) throws IOException {
+        final DataInput in = new DataInputStream(stream);
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("unknown version of the scoring model: " + version);
+        final int unknownLemmaCost = Math.min(MAX_LEMMA_COST, in.readInt());
+        final int[] sandhiCosts = new int[in.readInt()];
+        for (int i = 0; i < sandhiCosts.length; i++) {
+            sandhiCosts[i] = Math.min(MAX_SANDHI_COST, in.readInt());
+        }
+        final int nbLemmas = in.readInt();
+        final Map<String, Integer> lemmaCosts = new HashMap<String, Integer>(nbLemmas * 4 / 3 + 1);
+        for (int i = 0; i < nbLemmas; i++) {
+            final String lemma = in.readUTF();
+            lemmaCosts.put(lemma, Math.min(MAX_LEMMA_COST, (int) in.readShort()));
+        }
+        return new ScoringModel(lemmaCosts, unknownLemmaCost, sandhiCosts);
+    }
+
+    /**
+     * Opens the model compiled next to the default Trie, {@value #DEFAULT_COMPILED_MODEL}.
+     * 
+     * @return the model, or null if there is none
+     * @throws IOException the model can't be read
+     */
+    public static ScoringModel loadDefault() throws IOException {
+        final InputStream stream = CommonHelpers.getResourceOrFile(DEFAULT_COMPILED_MODEL);
+        if (stream == null)
+            return null;
+        try (InputStream in = stream) {
+            return load(in);
+        }
+    }
+
+    public void store(String outFilename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(outFilename))) {
+            store((DataOutput) out);
+        }
+    }
+
+    void store(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeInt(unknownLemmaCost);
+        out.writeInt(sandhiCosts.length);
+        for (int cost: sandhiCosts) {
+            out.writeInt(cost);
+        }
+        out.writeInt(lemmaCosts.size());
+        for (Entry<String, Integer> entry: lemmaCosts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeShort(entry.getValue());
+        }
+    }
+
+    /**
+     * @return the cost of a lemma, from 0 (the most frequent) to {@value #MAX_LEMMA_COST}
+     */
+    public int lemmaCost(String lemma) {
+        final Integer cost = lemmaCosts.get(lemma);
+        return cost == null ? unknownLemmaCost : cost;
+    }
+
+    /**
+     * @return the cost of undoing a sandhi of this type, from 0 to {@value #MAX_SANDHI_COST}
+     */
+    public int sandhiCost(int sandhiType) {
+        if (sandhiType < 0 || sandhiType >= sandhiCosts.length)
+            return sandhiCosts.length == 0 ? 0 : MAX_SANDHI_COST;
+        return sandhiCosts[sandhiType];
+    }
+
+    /** @return the number of lemmas in the model */
+    public int size() {
+        return lemmaCosts.size();
+    }
+}
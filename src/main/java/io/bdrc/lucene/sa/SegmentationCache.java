@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * The tokens of the sentences already tokenized by {@link SkrtWordTokenizer} or 
+ * {@link SkrtParallelWordTokenizer}, shared by all the tokenizers using the same Trie.
+ * <p>
+ * Canonical texts repeat the same titles, formulae and compounds: with a cache, each sentence 
+ * (ending at a danda or a newline) is only segmented once, and its tokens are replayed with 
+ * their offsets shifted the next times it is found. The sentences are the keys, since the
+ * sandhis between the words of a sentence prevent caching anything shorter. 
+ * A sentence is cached once per combination of graph output and work budget in use.
+ * Sentences longer than {@link #MAX_SENTENCE_LENGTH} are not cached.
+ * <p>
+ * The hit and miss counters and the number of cached sentences are given by {@link #getCache()}.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SegmentationCache {
+
+    /** sentences with more characters are tokenized every time */
+    public static final int MAX_SENTENCE_LENGTH = 1024;
+
+    final Trie trie;
+    final BoundedCache<String, SkrtParallelWordTokenizer.Chunk> cache;
+
+    /**
+     * @param trie  the Trie of the tokenizers sharing the cache
+     * @param maxSize  the maximum number of sentences to keep. 0 disables the cache.
+     */
+    public SegmentationCache(final Trie trie, final int maxSize) {
+        this.trie = trie;
+        this.cache = new BoundedCache<String, SkrtParallelWordTokenizer.Chunk>(maxSize);
+    }
+
+    /**
+     * @return the cached sentences, with the hit and miss counters
+     */
+    public BoundedCache<?, ?> getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+/**
+ * Receives the steps taken by {@link SkrtWordTokenizer} while it segments the input.
+ * <p>
+ * All the methods do nothing by default. The tokenizer uses {@link #NONE} unless 
+ * {@link SkrtWordTokenizer#setSegmentationListener(SegmentationListener)} is called: 
+ * as long as it is the only listener in use, the JIT inlines its empty methods away.
+ * {@link SegmentationTrace} records or prints the steps.
+ * <p>
+ * The indices are those of the chars read by the tokenizer, before any CharFilter correction, 
+ * except the offsets of {@link #tokenEmitted(CharSequence, int, int, String)}: these are 
+ * the offsets of the token, corrected as those of its {@link org.apache.lucene.analysis.tokenattributes.OffsetAttribute}.
+ * 
+ * @author Hélios Hildt
+ *
+ */
+public interface SegmentationListener {
+
+    /** ignores everything */
+    static final SegmentationListener NONE = new SegmentationListener() {};
+
+    /** the states saved by the tokenizer to try another path */
+    public static enum State {
+        /** the last match when going further down the Trie */
+        NO_MATCH,
+        /** the last match before the longest one */
+        NON_MAX_MATCH,
+        /** the start of the token, before trying another unsandhied initial */
+        INITIALS
+    }
+
+    /**
+     * @param index  the index of the char in the input
+     * @param c  the char, or -1 at the end of the input
+     */
+    default void charConsumed(int index, int c) {}
+
+    /**
+     * An unsandhied initial char replaces the char of the input.
+     * 
+     * @param index  the index of the char it replaces
+     * @param initial  the unsandhied char
+     */
+    default void initialTried(int index, int initial) {}
+
+    /**
+     * The chars since {@code start} are a form of the Trie.
+     * 
+     * @param start  the start of the form
+     * @param end  the end of the form
+     * @param cmdIndex  the index of its cmd in the Trie
+     */
+    default void trieMatch(int start, int end, int cmdIndex) {}
+
+    /**
+     * @param state  the state that was restored
+     * @param index  the index the tokenizer resumes from
+     */
+    default void stateRestored(State state, int index) {}
+
+    /**
+     * @param term  the text of the token
+     * @param start  its start offset, corrected by the CharFilters
+     * @param end  its end offset, corrected by the CharFilters
+     * @param type  its type: word, lemma, non-word or syllable
+     */
+    default void tokenEmitted(CharSequence term, int start, int end, String type) {}
+}
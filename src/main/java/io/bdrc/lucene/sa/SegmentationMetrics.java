@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SegmentationStats} of all the {@link SkrtWordTokenizer}s of the process.
+ * <p>
+ * The counters are {@link LongAdder}s, so the tokenizers of concurrent indexing threads 
+ * don't contend on them. They are only updated once per input, by {@link SkrtWordTokenizer#end()}.
+ * <p>
+ * The instance returned by {@link #get()} is registered in the platform MBeanServer 
+ * as {@value #OBJECT_NAME} the first time it is used.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SegmentationMetrics implements SegmentationMetricsMBean {
+
+    public static final String OBJECT_NAME = "io.bdrc.lucene.sa:type=SegmentationMetrics";
+
+    static final Logger logger = LoggerFactory.getLogger(SegmentationMetrics.class);
+
+    private static final SegmentationMetrics INSTANCE = register(new SegmentationMetrics());
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder[] tokens = adders(SegmentationStats.NB_TOKEN_TYPES);
+    private final LongAdder[] sandhis = adders(SegmentationStats.MAX_SANDHI_TYPE + 1);
+    private final LongAdder visitedChars = new LongAdder();
+    private final LongAdder initialsTried = new LongAdder();
+    private final LongAdder stateRestorations = new LongAdder();
+    private final LongAdder wordLengthCutOffs = new LongAdder();
+    private final LongAdder syllableFallbacks = new LongAdder();
+
+    SegmentationMetrics() {}
+
+    public static SegmentationMetrics get() {
+        return INSTANCE;
+    }
+
+    private static SegmentationMetrics register(final SegmentationMetrics metrics) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))    // loaded by another class loader
+                server.registerMBean(metrics, name);
+        } catch (JMException | SecurityException e) {
+            logger.warn("can't register {} in the MBeanServer", OBJECT_NAME, e);
+        }
+        return metrics;
+    }
+
+    private static LongAdder[] adders(final int size) {
+        final LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /** adds the counts of one input */
+    void add(final SegmentationStats stats) {
+        documents.increment();
+        for (int i = 0; i < tokens.length; i++) {
+            if (stats.tokens[i] != 0)
+                tokens[i].add(stats.tokens[i]);
+        }
+        for (int i = 0; i < sandhis.length; i++) {
+            if (stats.sandhis[i] != 0)
+                sandhis[i].add(stats.sandhis[i]);
+        }
+        visitedChars.add(stats.visitedChars);
+        initialsTried.add(stats.initialsTried);
+        stateRestorations.add(stats.stateRestorations);
+        wordLengthCutOffs.add(stats.wordLengthCutOffs);
+        syllableFallbacks.add(stats.syllableFallbacks);
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getNonWords() {
+        return tokens[0].sum();
+    }
+
+    @Override
+    public long getWords() {
+        return tokens[1].sum();
+    }
+
+    @Override
+    public long getLemmas() {
+        return tokens[2].sum();
+    }
+
+    @Override
+    public long getSyllables() {
+        return tokens[SkrtWordTokenizer.SYLLABLE_FALLBACK].sum();
+    }
+
+    @Override
+    public long[] getSandhis() {
+        final long[] res = new long[sandhis.length];
+        for (int i = 0; i < res.length; i++)
+            res[i] = sandhis[i].sum();
+        return res;
+    }
+
+    @Override
+    public long getVisitedChars() {
+        return visitedChars.sum();
+    }
+
+    @Override
+    public long getInitialsTried() {
+        return initialsTried.sum();
+    }
+
+    @Override
+    public long getStateRestorations() {
+        return stateRestorations.sum();
+    }
+
+    @Override
+    public long getWordLengthCutOffs() {
+        return wordLengthCutOffs.sum();
+    }
+
+    @Override
+    public long getSyllableFallbacks() {
+        return syllableFallbacks.sum();
+    }
+
+    @Override
+    public long getCmdCacheHits() {
+        return CmdParser.getCache().hits();
+    }
+
+    @Override
+    public long getCmdCacheMisses() {
+        return CmdParser.getCache().misses();
+    }
+
+    @Override
+    public int getCmdCacheSize() {
+        return CmdParser.getCache().size();
+    }
+
+    @Override
+    public void reset() {
+        documents.reset();
+        for (LongAdder adder: tokens)
+            adder.reset();
+        for (LongAdder adder: sandhis)
+            adder.reset();
+        visitedChars.reset();
+        initialsTried.reset();
+        stateRestorations.reset();
+        wordLengthCutOffs.reset();
+        syllableFallbacks.reset();
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+/**
+ * The JMX interface of {@link SegmentationMetrics}, registered as 
+ * {@value SegmentationMetrics#OBJECT_NAME}.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public interface SegmentationMetricsMBean {
+
+    /** @return the inputs tokenized, each chunk of {@link SkrtParallelWordTokenizer} counting as one */
+    long getDocuments();
+
+    long getNonWords();
+
+    long getWords();
+
+    long getLemmas();
+
+    long getSyllables();
+
+    /** @return the sandhis undone, indexed by sandhi type */
+    long[] getSandhis();
+
+    long getVisitedChars();
+
+    long getInitialsTried();
+
+    long getStateRestorations();
+
+    long getWordLengthCutOffs();
+
+    long getSyllableFallbacks();
+
+    /** @return the hits of the cache of parsed cmds, see {@link CmdParser#getCache()} */
+    long getCmdCacheHits();
+
+    long getCmdCacheMisses();
+
+    int getCmdCacheSize();
+
+    /** sets all the counters back to 0, except the ones of the cache of parsed cmds */
+    void reset();
+}
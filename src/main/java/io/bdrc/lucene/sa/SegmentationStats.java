@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.Arrays;
+
+/**
+ * What {@link SkrtWordTokenizer} did on one input: the tokens emitted per type, the sandhis 
+ * undone per sandhi type and the work it took to find them.
+ * <p>
+ * Each tokenizer counts in its own instance with plain longs. At {@link SkrtWordTokenizer#end()}, 
+ * the counts are added to the process-wide {@link SegmentationMetrics} and handed to 
+ * the {@link SegmentationStatsAttribute}, if the consumer added it.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SegmentationStats {
+
+    /** the token types, as in {@link SkrtWordTokenizer}: non-word, word, lemma, syllable */
+    public static final int NB_TOKEN_TYPES = 4;
+    /** sandhi types above it are counted with it */
+    public static final int MAX_SANDHI_TYPE = 15;
+
+    final long[] tokens = new long[NB_TOKEN_TYPES];
+    final long[] sandhis = new long[MAX_SANDHI_TYPE + 1];
+    long visitedChars;
+    long initialsTried;
+    long stateRestorations;
+    long wordLengthCutOffs;
+    long syllableFallbacks;
+
+    public SegmentationStats() {}
+
+    SegmentationStats(final SegmentationStats other) {
+        copyFrom(other);
+    }
+
+    void countToken(final int type) {
+        if (type >= 0 && type < NB_TOKEN_TYPES)
+            tokens[type]++;
+    }
+
+    void countSandhi(final int sandhiType) {
+        if (sandhiType >= 0)
+            sandhis[Math.min(sandhiType, MAX_SANDHI_TYPE)]++;
+    }
+
+    void copyFrom(final SegmentationStats other) {
+        System.arraycopy(other.tokens, 0, tokens, 0, tokens.length);
+        System.arraycopy(other.sandhis, 0, sandhis, 0, sandhis.length);
+        visitedChars = other.visitedChars;
+        initialsTried = other.initialsTried;
+        stateRestorations = other.stateRestorations;
+        wordLengthCutOffs = other.wordLengthCutOffs;
+        syllableFallbacks = other.syllableFallbacks;
+    }
+
+    /* adds the work counted in other, but not its tokens */
+    void addWork(final SegmentationStats other) {
+        for (int i = 0; i < sandhis.length; i++)
+            sandhis[i] += other.sandhis[i];
+        visitedChars += other.visitedChars;
+        initialsTried += other.initialsTried;
+        stateRestorations += other.stateRestorations;
+        wordLengthCutOffs += other.wordLengthCutOffs;
+        syllableFallbacks += other.syllableFallbacks;
+    }
+
+    public void clear() {
+        Arrays.fill(tokens, 0);
+        Arrays.fill(sandhis, 0);
+        visitedChars = 0;
+        initialsTried = 0;
+        stateRestorations = 0;
+        wordLengthCutOffs = 0;
+        syllableFallbacks = 0;
+    }
+
+    /**
+     * @param type  0 for non-words, 1 for words, 2 for lemmas and 3 for syllables
+     * @return the number of tokens emitted with that type
+     */
+    public long getTokens(final int type) {
+        return tokens[type];
+    }
+
+    /** @return the number of tokens emitted, all types included */
+    public long getTokens() {
+        long total = 0;
+        for (long count: tokens)
+            total += count;
+        return total;
+    }
+
+    /**
+     * @param sandhiType  the sandhi type found in the cmds of the Trie
+     * @return the number of times a sandhi of that type was undone to find a lemma
+     */
+    public long getSandhis(final int sandhiType) {
+        return sandhis[Math.min(sandhiType, MAX_SANDHI_TYPE)];
+    }
+
+    /** @return the chars read from the input, counting those read again after restoring a state */
+    public long getVisitedChars() {
+        return visitedChars;
+    }
+
+    /** @return the unsandhied initial chars tried in place of the chars of the input */
+    public long getInitialsTried() {
+        return initialsTried;
+    }
+
+    /** @return the times the tokenizer went back to a saved state to try another path */
+    public long getStateRestorations() {
+        return stateRestorations;
+    }
+
+    /** @return the tokens cut because they reached the maximum length of a word (255 chars) */
+    public long getWordLengthCutOffs() {
+        return wordLengthCutOffs;
+    }
+
+    /** @return the spans tokenized in syllables, see {@link SkrtWordTokenizer#setMaxVisitedChars(int)} */
+    public long getSyllableFallbacks() {
+        return syllableFallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "tokens=" + Arrays.toString(tokens) + ", sandhis=" + Arrays.toString(sandhis) 
+                + ", visitedChars=" + visitedChars + ", initialsTried=" + initialsTried 
+                + ", stateRestorations=" + stateRestorations + ", wordLengthCutOffs=" + wordLengthCutOffs 
+                + ", syllableFallbacks=" + syllableFallbacks;
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * The {@link SegmentationStats} of the input, set by {@link SkrtWordTokenizer#end()}.
+ * <p>
+ * Only filled if the consumer adds it to the TokenStream before consuming it, 
+ * for instance to log the documents that are the slowest to segment:
+ * <pre>
+ * SegmentationStatsAttribute statsAtt = tokenStream.addAttribute(SegmentationStatsAttribute.class);
+ * // consume the tokens, then call end()
+ * if (statsAtt.getStats().getStateRestorations() &gt; threshold) ...
+ * </pre>
+ *
+ * @author Hélios Hildt
+ *
+ */
+public interface SegmentationStatsAttribute extends Attribute {
+
+    public void setStats(SegmentationStats stats);
+
+    /** @return the stats of the last input, only valid after end() */
+    public SegmentationStats getStats();
+}
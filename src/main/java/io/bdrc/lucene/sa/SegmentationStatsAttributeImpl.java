@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/** Default implementation of {@link SegmentationStatsAttribute}. */
+public class SegmentationStatsAttributeImpl extends AttributeImpl implements SegmentationStatsAttribute, Cloneable {
+
+    private final SegmentationStats stats = new SegmentationStats();
+
+    public SegmentationStatsAttributeImpl() {}
+
+    /** copies the counts of stats */
+    @Override
+    public void setStats(SegmentationStats stats) {
+        this.stats.copyFrom(stats);
+    }
+
+    @Override
+    public SegmentationStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void clear() {
+        // the stats are set once per input by end(): clearAttributes() on each token must not erase them
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+        ((SegmentationStatsAttribute) target).setStats(stats);
+    }
+
+    @Override
+    public SegmentationStatsAttributeImpl clone() {
+        final SegmentationStatsAttributeImpl clone = new SegmentationStatsAttributeImpl();
+        clone.setStats(stats);
+        return clone;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (other instanceof SegmentationStatsAttributeImpl) {
+            return stats.toString().equals(((SegmentationStatsAttributeImpl) other).stats.toString());
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return stats.toString().hashCode();
+    }
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+        reflector.reflect(SegmentationStatsAttribute.class, "stats", stats.toString());
+    }
+}
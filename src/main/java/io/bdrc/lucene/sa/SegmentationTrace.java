@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link SegmentationListener} that records the steps of the segmentation as a list 
+ * of {@link Event}s and/or prints them as they come, one per line.
+ * <p>
+ * Meant to capture what happens on a misbehaving document:
+ * <pre>
+ * SegmentationTrace trace = new SegmentationTrace();
+ * tokenizer.setSegmentationListener(trace);
+ * // tokenize the document
+ * System.out.println(trace);
+ * </pre>
+ * 
+ * @author Hélios Hildt
+ *
+ */
+public class SegmentationTrace implements SegmentationListener {
+
+    public static enum Kind {
+        CHAR, INITIAL, MATCH, RESTORE, TOKEN
+    }
+
+    /**
+     * One step of the segmentation.
+     * <p>
+     * start and end are the same for the chars and the restored states. Those of the tokens
+     * are corrected by the CharFilters, see {@link SegmentationListener}.
+     * text is the char, the initial, the cmd index, the restored {@link SegmentationListener.State} 
+     * or the token followed by its type.
+     */
+    public static final class Event {
+        public final Kind kind;
+        public final int start;
+        public final int end;
+        public final String text;
+
+        Event(Kind kind, int start, int end, String text) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            if (start == end)
+                return kind + " " + start + " " + text;
+            return kind + " " + start + "-" + end + " " + text;
+        }
+    }
+
+    private final List<Event> events = new ArrayList<Event>();
+    private final PrintStream out;
+    private final boolean record;
+
+    /**
+     * Records the events.
+     */
+    public SegmentationTrace() {
+        this(null, true);
+    }
+
+    /**
+     * @param out  prints the events there if not null
+     * @param record  keeps the events in {@link #getEvents()}
+     */
+    public SegmentationTrace(PrintStream out, boolean record) {
+        this.out = out;
+        this.record = record;
+    }
+
+    private void add(Kind kind, int start, int end, String text) {
+        final Event event = new Event(kind, start, end, text);
+        if (record)
+            events.add(event);
+        if (out != null)
+            out.println(event);
+    }
+
+    private static String charToString(int c) {
+        return c == -1 ? "EOF" : String.valueOf((char) c);
+    }
+
+    @Override
+    public void charConsumed(int index, int c) {
+        add(Kind.CHAR, index, index, charToString(c));
+    }
+
+    @Override
+    public void initialTried(int index, int initial) {
+        add(Kind.INITIAL, index, index, charToString(initial));
+    }
+
+    @Override
+    public void trieMatch(int start, int end, int cmdIndex) {
+        add(Kind.MATCH, start, end, String.valueOf(cmdIndex));
+    }
+
+    @Override
+    public void stateRestored(State state, int index) {
+        add(Kind.RESTORE, index, index, state.toString());
+    }
+
+    @Override
+    public void tokenEmitted(CharSequence term, int start, int end, String type) {
+        add(Kind.TOKEN, start, end, term + " " + type);
+    }
+
+    /**
+     * @return the recorded events, in order
+     */
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * @param kind  the kind of events to keep
+     * @return the recorded events of that kind, in order
+     */
+    public List<Event> getEvents(Kind kind) {
+        final List<Event> res = new ArrayList<Event>();
+        for (Event event: events) {
+            if (event.kind == kind)
+                res.add(event);
+        }
+        return res;
+    }
+
+    public void clear() {
+        events.clear();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Event event: events) {
+            sb.append(event).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,1054 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+import io.bdrc.lucene.stemmer.Row;
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * A Sanskrit word tokenizer that segments whole spans of text at once instead of
+ * matching greedily and backtracking like {@link SkrtWordTokenizer}.
+ * <p>
+ * The input is cut in segments: maximal runs of SLP characters, spaces and hyphens.
+ * For each segment, a lattice is built in a single left-to-right pass:
+ * <ul>
+ * <li>a node is a position in the text, together with the unsandhied initial that
+ * the next word starts with, if the previous word changed it through sandhi
+ * <li>a word edge goes from a node to the node following a form found in the Trie.
+ * Each way to undo the sandhi between this form and the text that follows it leads to its own node.
+ * The lemmas are attached to the edge
+ * <li>non-word edges (one character) and separator edges (spaces and hyphens) make sure
+ * that the end of the segment can always be reached
+ * </ul>
+ * The cheapest path through the lattice is then found with dynamic programming:
+ * it has the fewest words and the fewest non-word characters.
+ * Its tokens are emitted like the ones of {@link SkrtWordTokenizer}, with the same types
+ * and parts of speech.
+ * <p>
+ * Unless {@link #setEmitAlternatives(boolean)} is set to false, the words that are not
+ * on the best path but start and end at its word boundaries are also emitted,
+ * stacked with a position increment of 0 and a {@link PositionLengthAttribute}
+ * spanning the words of the best path they overlap.
+ * <p>
+ * The work per character is bounded: a word can't be longer than {@link #setMaxWordLength(int)}
+ * and a segment longer than {@link #setMaxSegmentLength(int)} is cut at a space or a hyphen.
+ * The input is read through a window that only needs to hold one segment, so the memory
+ * used doesn't depend on the length of the input.
+ * <p>
+ * Contrary to {@link SkrtWordTokenizer}, all the sandhis found in a cmd are tried instead
+ * of only the longest one that matches, and idempotent sandhis don't need to be generated
+ * since a word can always be followed by the unchanged text.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SkrtLatticeTokenizer extends Tokenizer {
+
+    static final Logger logger = LoggerFactory.getLogger(SkrtLatticeTokenizer.class);
+
+    public static final int DEFAULT_MAX_WORD_LENGTH = 64;
+    public static final int DEFAULT_MAX_SEGMENT_LENGTH = 2048;
+
+    /* costs of the edges: a word is always cheaper than the non-words it can replace */
+    static final int WORD_COST = 100;
+    static final int SANDHI_COST = 1;        // prefers the readings that don't change the next initial
+    static final int NONWORD_COST = 1000;
+    private static final int INFINITY = Integer.MAX_VALUE;
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /* edge kinds */
+    private static final int WORD = 0;
+    private static final int NONWORD = 1;
+    private static final int SEPARATOR = 2;  // spaces and hyphens: no token
+    private static final int SKIP = 3;       // SLP modifiers: no token, but don't end a non-word
+
+    /* token types, as in SkrtWordTokenizer */
+    private static final int TYPE_NONWORD = 0;
+    private static final int TYPE_WORD = 1;
+    private static final int TYPE_LEMMA = 2;
+
+    private final Trie scanner;
+    private int maxWordLength = DEFAULT_MAX_WORD_LENGTH;
+    private int maxSegmentLength = DEFAULT_MAX_SEGMENT_LENGTH;
+    private boolean emitAlternatives = true;
+    private ScoringModel scoringModel = null;
+    private int beamWidth = NO_LIMIT;
+    private int maxReadings = NO_LIMIT;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final PartOfSpeechAttribute posAtt = addAttribute(PartOfSpeechAttribute.class);
+    private final PositionIncrementAttribute incrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+
+    /* the window on the input: text[0] is the char at textBase in the input */
+    private char[] text = new char[4096];
+    private int textLength;
+    private int textBase;
+    private boolean inputEnded;
+    private int segStart, segEnd, nextSegStart;
+    private int finalOffset, lastStartOffset;
+
+    /* nodes of the lattice of the current segment */
+    private int nodeCount;
+    private int[] nodePosition = new int[64];
+    private String[] nodeInitial = new String[64];
+    private int[] nodeSurfaceStart = new int[64];
+    private int[] nodeCost = new int[64];
+    private int[] nodeBackEdge = new int[64];
+    private int[] nodeNext = new int[64];           // next node at the same position
+    private int[] nodeIndex = new int[64];          // index of the node in the output positions, or -1
+    private int[] firstNodeAt = new int[64];        // indexed by position - segStart
+    private int[] pathNodeAt = new int[64];
+
+    /* edges */
+    private int edgeCount;
+    private int[] edgeFrom = new int[64];
+    private int[] edgeTo = new int[64];
+    private int[] edgeKind = new int[64];
+    private int[] edgeStart = new int[64];
+    private int[] edgeEnd = new int[64];
+    private int[] edgeCost = new int[64];
+    private int[] edgeLemmaStart = new int[64];
+    private int[] edgeLemmaCount = new int[64];
+    private int[] edgeNextAlternative = new int[64];
+    private boolean[] edgeOnPath = new boolean[64];
+    private int[] firstAlternativeAt = new int[64];  // indexed by output position
+
+    /* lemmas of the word edges */
+    private int lemmaCount;
+    private String[] lemmaText = new String[64];
+    private int[] lemmaType = new int[64];
+    private int[] lemmaPos = new int[64];
+    private int[] lemmaCost = new int[64];
+    private MultiTokenLemma[] lemmaMultiToken = new MultiTokenLemma[64];
+
+    /* lemmas found for the current match, before being grouped by target node */
+    private int foundCount;
+    private int[] foundTarget = new int[16];
+    private String[] foundText = new String[16];
+    private int[] foundType = new int[16];
+    private int[] foundPos = new int[16];
+    private int[] foundCost = new int[16];
+    private MultiTokenLemma[] foundMultiToken = new MultiTokenLemma[16];
+    private final StringBuilder form = new StringBuilder();
+
+    /* best path */
+    private int[] scratch = new int[16];
+    private int[] scratchCosts = new int[16];
+    private int[] scratchSorted = new int[16];
+    private int pathLength;
+    private int[] pathEdges = new int[64];
+
+    /* tokens of the current segment, in emission order */
+    private int outCount, outNext;
+    private String[] outText = new String[64];
+    private int[] outStart = new int[64];
+    private int[] outEnd = new int[64];
+    private int[] outType = new int[64];
+    private int[] outPos = new int[64];
+    private int[] outPosInc = new int[64];
+    private int[] outPosLen = new int[64];
+    private final StringBuilder nonWord = new StringBuilder();
+
+    /**
+     * Default constructor: uses the default compiled Trie shared with {@link SkrtWordTokenizer}
+     */
+    public SkrtLatticeTokenizer() {
+        this(SkrtWordTokenizer.getDefaultTrie(SkrtWordTokenizer.DEFAULT_COMPILED_TRIE));
+    }
+
+    /**
+     * Builds a Trie from a file containing raw Trie data. (might take a long time, depending on the size of the Trie to build)
+     * <br> Is best used with small Tries, such as for testing purposes.
+     *
+     * @param filename the file containing the entries of the Trie
+     * @throws FileNotFoundException the file containing the Trie can't be found
+     * @throws IOException the file containing the Trie can't be read
+     */
+    public SkrtLatticeTokenizer(String filename) throws FileNotFoundException, IOException {
+        this(BuildCompiledTrie.buildTrie(filename));
+    }
+
+    /**
+     * Opens an already compiled Trie that was saved to disk.
+     *
+     * @param trieStream an InputStream (FileInputStream, for ex.) containing the compiled Trie
+     */
+    public SkrtLatticeTokenizer(InputStream trieStream) {
+        this(SkrtWordTokenizer.getTrie(trieStream));
+    }
+
+    /**
+     * Uses the given Trie
+     * @param trie a Trie built using {@link BuildCompiledTrie}
+     */
+    public SkrtLatticeTokenizer(Trie trie) {
+        this.scanner = trie;
+    }
+
+    /**
+     * @param maxWordLength  the maximum number of characters looked up in the Trie from a given position
+     */
+    public void setMaxWordLength(int maxWordLength) {
+        if (maxWordLength < 1)
+            throw new IllegalArgumentException("maxWordLength must be at least 1: " + maxWordLength);
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * @param maxSegmentLength  the maximum number of characters segmented at once.
+     *                          Sandhis are not undone across the cut of a longer segment
+     */
+    public void setMaxSegmentLength(int maxSegmentLength) {
+        if (maxSegmentLength < 2)
+            throw new IllegalArgumentException("maxSegmentLength must be at least 2: " + maxSegmentLength);
+        this.maxSegmentLength = maxSegmentLength;
+        if (text.length <= maxSegmentLength)
+            text = new char[ArrayUtil.oversize(maxSegmentLength + 1, Character.BYTES)];
+    }
+
+    /**
+     * @param emitAlternatives  also emit the words that are not on the best path (true by default)
+     */
+    public void setEmitAlternatives(boolean emitAlternatives) {
+        this.emitAlternatives = emitAlternatives;
+    }
+
+    /**
+     * Adds the costs of a {@link ScoringModel} to the words of the lattice: the cheapest reading 
+     * of each word and the sandhi rule it was found with. The best path is then the most likely 
+     * one rather than the one with the fewest words, and the alternatives can be ranked.
+     * 
+     * @param scoringModel  the model, or null to only count the words and non-words (the default)
+     */
+    public void setScoringModel(ScoringModel scoringModel) {
+        this.scoringModel = scoringModel;
+    }
+
+    /**
+     * Drops the branches of the lattice that are too costly to matter: a node is not expanded
+     * if its cost exceeds the one of the cheapest node at the same position by more than beamWidth,
+     * and an alternative is not emitted if it costs more than beamWidth above the best path it overlaps.
+     * <p>
+     * A word costs {@value #WORD_COST} plus its cost in the {@link ScoringModel}, if any, and
+     * a non-word character {@value #NONWORD_COST}. The nodes that wait for the initial of a sandhi
+     * have already paid for it, so a beam narrower than the cost of the sandhi rules drops their readings.
+     *
+     * @param beamWidth  the maximum extra cost, or {@link #NO_LIMIT} (the default)
+     */
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 0)
+            throw new IllegalArgumentException("beamWidth must be positive: " + beamWidth);
+        this.beamWidth = beamWidth;
+    }
+
+    /**
+     * Keeps only the cheapest readings: at most maxReadings words per position (the word of the best
+     * path and its cheapest alternatives) and maxReadings lemmas per word.
+     * 
+     * @param maxReadings  at least 1, or {@link #NO_LIMIT} (the default)
+     */
+    public void setMaxReadings(int maxReadings) {
+        if (maxReadings < 1)
+            throw new IllegalArgumentException("maxReadings must be at least 1: " + maxReadings);
+        this.maxReadings = maxReadings;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        clearAttributes();
+        while (outNext == outCount) {
+            if (!nextSegment())
+                return false;
+            buildLattice();
+            emitBestPath();
+        }
+        final int i = outNext++;
+        termAtt.setEmpty().append(outText[i]);
+        int startOffset = correctOffset(textBase + outStart[i]);
+        final int endOffset = correctOffset(textBase + outEnd[i]);
+        if (startOffset < lastStartOffset)
+            startOffset = lastStartOffset;
+        lastStartOffset = startOffset;
+        offsetAtt.setOffset(startOffset, Math.max(startOffset, endOffset));
+        if (outType[i] == TYPE_NONWORD) {
+            typeAtt.setType("non-word");
+        } else if (outType[i] == TYPE_WORD) {
+            typeAtt.setType("word");
+        } else {
+            typeAtt.setType("lemma");
+        }
+        posAtt.setPartOfSpeech(SkrtWordTokenizer.partOfSpeech(outPos[i]));
+        incrAtt.setPositionIncrement(outPosInc[i]);
+        posLenAtt.setPositionLength(outPosLen[i]);
+        return true;
+    }
+
+    /* SEGMENTS */
+
+    /**
+     * Finds the next run of SLP characters, spaces and hyphens
+     * @return false if the end of the input is reached
+     */
+    private boolean nextSegment() throws IOException {
+        int start = nextSegStart;
+        while (true) {
+            while (start < textLength && !isSegmentChar(text[start])) {
+                // the non-ASCII chars are never part of a segment
+                start = text[start] < 0x80 ? start + 1 : CharScanner.INSTANCE.indexOfAscii(text, start + 1, textLength);
+            }
+            if (start < textLength || inputEnded)
+                break;
+            start = slideWindow(start);
+        }
+        if (start == textLength) {
+            nextSegStart = textLength;
+            return false;
+        }
+        if (start + maxSegmentLength >= textLength && !inputEnded)
+            start = slideWindow(start);
+        int end = start + 1;
+        final int limit = Math.min(textLength, start + maxSegmentLength);
+        while (end < limit && isSegmentChar(text[end]))
+            end++;
+        if (end == limit && end < textLength && isSegmentChar(text[end])) {
+            // too long: cut after the last space or hyphen, if any in the second half
+            for (int i = end - 1; i > start + maxSegmentLength / 2; i--) {
+                if (isSeparator(text[i])) {
+                    end = i + 1;
+                    break;
+                }
+            }
+        }
+        segStart = start;
+        segEnd = end;
+        nextSegStart = end;
+        return true;
+    }
+
+    /**
+     * Drops the chars before from, that are all emitted, and fills the rest of the window.
+     * The window is never smaller than a segment and the char that follows it.
+     * @return the new index of from
+     */
+    private int slideWindow(int from) throws IOException {
+        textLength -= from;
+        System.arraycopy(text, from, text, 0, textLength);
+        textBase += from;
+        while (textLength < text.length) {
+            final int read = input.read(text, textLength, text.length - textLength);
+            if (read == -1) {
+                inputEnded = true;
+                break;
+            }
+            textLength += read;
+        }
+        return 0;
+    }
+
+    /* LATTICE */
+
+    private void buildLattice() {
+        final int segLength = segEnd - segStart;
+        if (firstNodeAt.length < segLength + 1) {
+            firstNodeAt = new int[ArrayUtil.oversize(segLength + 1, Integer.BYTES)];
+            pathNodeAt = new int[firstNodeAt.length];
+        }
+        Arrays.fill(firstNodeAt, 0, segLength + 1, -1);
+        nodeCount = 0;
+        edgeCount = 0;
+        lemmaCount = 0;
+
+        nodeCost[node(segStart, "", segStart)] = 0;
+        // all the edges go forward, so the cost of the nodes at q is final once q is reached
+        for (int q = segStart; q < segEnd; q++) {
+            int maxCost = INFINITY - 1;
+            int cheapestPlain = -1;
+            if (beamWidth != NO_LIMIT) {
+                int minCost = INFINITY;
+                for (int n = firstNodeAt[q - segStart]; n != -1; n = nodeNext[n]) {
+                    minCost = Math.min(minCost, nodeCost[n]);
+                    if (nodeInitial[n].isEmpty() && (cheapestPlain == -1 || nodeCost[n] < nodeCost[cheapestPlain]))
+                        cheapestPlain = n;
+                }
+                if (minCost != INFINITY)
+                    maxCost = (int) Math.min(INFINITY - 1, (long) minCost + beamWidth);
+            }
+            for (int n = firstNodeAt[q - segStart]; n != -1; n = nodeNext[n]) {
+                // the cheapest node without initial is always expanded: its non-word edge keeps the end reachable
+                if (nodeCost[n] <= maxCost || n == cheapestPlain && nodeCost[n] != INFINITY)
+                    expand(n);
+            }
+        }
+    }
+
+    /**
+     * @return the node at position q with the given pending initial, created if needed
+     */
+    private int node(int q, String initial, int surfaceStart) {
+        for (int n = firstNodeAt[q - segStart]; n != -1; n = nodeNext[n]) {
+            if (nodeSurfaceStart[n] == surfaceStart && nodeInitial[n].equals(initial))
+                return n;
+        }
+        if (nodeCount == nodePosition.length) {
+            final int size = ArrayUtil.oversize(nodeCount + 1, Integer.BYTES);
+            nodePosition = Arrays.copyOf(nodePosition, size);
+            nodeInitial = Arrays.copyOf(nodeInitial, size);
+            nodeSurfaceStart = Arrays.copyOf(nodeSurfaceStart, size);
+            nodeCost = Arrays.copyOf(nodeCost, size);
+            nodeBackEdge = Arrays.copyOf(nodeBackEdge, size);
+            nodeNext = Arrays.copyOf(nodeNext, size);
+            nodeIndex = Arrays.copyOf(nodeIndex, size);
+        }
+        final int n = nodeCount++;
+        nodePosition[n] = q;
+        nodeInitial[n] = initial;
+        nodeSurfaceStart[n] = surfaceStart;
+        nodeCost[n] = INFINITY;
+        nodeBackEdge[n] = -1;
+        nodeIndex[n] = -1;
+        nodeNext[n] = firstNodeAt[q - segStart];
+        firstNodeAt[q - segStart] = n;
+        return n;
+    }
+
+    private void expand(int n) {
+        final int q = nodePosition[n];
+        final String initial = nodeInitial[n];
+        if (initial.isEmpty()) {
+            final char c = text[q];
+            if (isSeparator(c)) {
+                addEdge(n, node(q + 1, "", q + 1), SEPARATOR, q, q + 1, 0);
+                return;
+            }
+            if (isSLPModifier(c)) {
+                addEdge(n, node(q + 1, "", q + 1), SKIP, q, q + 1, 0);
+                return;
+            }
+            addEdge(n, node(q + 1, "", q + 1), NONWORD, q, q + 1, NONWORD_COST);
+        }
+        if (scanner == null)
+            return;
+
+        /* walk down the Trie, starting with the unsandhied initial if there is one */
+        Row row = scanner.getRow(scanner.getRoot());
+        for (int i = 0; i < initial.length(); i++) {
+            final int ref = row.getRef(initial.charAt(i));
+            if (ref < 0)
+                return;
+            row = scanner.getRow(ref);
+        }
+        form.setLength(0);
+        form.append(initial);
+        final int limit = Math.min(segEnd, q + maxWordLength);
+        for (int r = q; r < limit; r++) {
+            final char c = text[r];
+            if (isSLPModifier(c))
+                continue;     // part of the word, but not looked up
+            if (isSeparator(c))
+                break;
+            form.append(c);
+            final int cmdIndex = row.getCmd(c);
+            if (cmdIndex >= 0)
+                addWordEdges(n, r + 1, cmdIndex);
+            final int ref = row.getRef(c);
+            if (ref < 0)
+                break;
+            row = scanner.getRow(ref);
+        }
+    }
+
+    /**
+     * Adds an edge for each node that can follow the form ending at e,
+     * depending on the sandhis of its cmd that are found in the text.
+     */
+    private void addWordEdges(int from, int e, int cmdIndex) {
+        final String cmd = scanner.getCommandVal(cmdIndex);
+        if (cmd == null)
+            return;
+        final String inflected = form.toString();
+        foundCount = 0;
+        ParsedCmd parsed = null;
+        try {
+            parsed = CmdParser.parseCached(inflected, cmd);
+        } catch (IllegalArgumentException ex) {
+            logger.debug("can't parse the cmd of {}: {}", inflected, cmd);
+        }
+        if (parsed != null) {
+            for (Entry<String, SortedSet<DiffStruct>> entry: parsed.sandhis.entrySet()) {
+                final String sandhied = entry.getKey();
+                for (DiffStruct diff: entry.getValue()) {
+                    if (diff.nbToDelete > inflected.length())
+                        continue;
+                    final String lemma = inflected.substring(0, inflected.length() - diff.nbToDelete) + diff.toAdd;
+                    if (diff.sandhiType == 0 && diff.toAdd.isEmpty() && diff.nbToDelete == 0 && diff.initial.isEmpty()) {
+                        found(node(e, "", e), lemma, TYPE_LEMMA, diff.pos, diff.multiToken, cost(lemma, -1));    // no sandhi
+                        continue;
+                    }
+                    final int target = sandhiTarget(inflected, e, sandhied, diff);
+                    if (target != -1)
+                        found(target, lemma, TYPE_LEMMA, diff.pos, diff.multiToken, cost(lemma, diff.sandhiType));
+                }
+            }
+        }
+        if (foundCount == 0) {
+            // there is no applicable sandhi. the form is kept as-is
+            int pos = -1;
+            try {
+                pos = Integer.parseInt(cmd.substring(cmd.lastIndexOf('#') + 1));
+            } catch (NumberFormatException ex) {
+                logger.debug("no POS in the cmd of {}: {}", inflected, cmd);
+            }
+            found(node(e, "", e), inflected, TYPE_WORD, pos, null, cost(inflected, -1));
+        }
+
+        /* one edge per target node */
+        for (int i = 0; i < foundCount; i++) {
+            final int target = foundTarget[i];
+            boolean seen = false;
+            for (int j = 0; j < i && !seen; j++)
+                seen = foundTarget[j] == target;
+            if (seen)
+                continue;
+            final int lemmaStart = lemmaCount;
+            int readingCost = INFINITY;
+            for (int j = i; j < foundCount; j++) {
+                if (foundTarget[j] == target) {
+                    addLemma(lemmaStart, foundText[j], foundType[j], foundPos[j], foundMultiToken[j], foundCost[j]);
+                    readingCost = Math.min(readingCost, foundCost[j]);
+                }
+            }
+            if (lemmaCount - lemmaStart > maxReadings)
+                keepCheapestLemmas(lemmaStart);
+            final int cost = WORD_COST + readingCost + (nodeInitial[target].isEmpty() ? 0 : SANDHI_COST);
+            final int edge = addEdge(from, target, WORD, nodeSurfaceStart[from], e, cost);
+            edgeLemmaStart[edge] = lemmaStart;
+            edgeLemmaCount[edge] = lemmaCount - lemmaStart;
+        }
+    }
+
+    /**
+     * @param sandhiType  the type of the sandhi undone to find the lemma, -1 if there is none
+     * @return the cost of the reading in the scoring model, 0 without model
+     */
+    private int cost(String lemma, int sandhiType) {
+        if (scoringModel == null)
+            return 0;
+        return scoringModel.lemmaCost(lemma) + (sandhiType == -1 ? 0 : scoringModel.sandhiCost(sandhiType));
+    }
+
+    /**
+     * Sorts the lemmas of a word from the cheapest on, the first found first, and drops 
+     * the ones beyond maxReadings.
+     */
+    private void keepCheapestLemmas(int from) {
+        for (int i = from + 1; i < lemmaCount; i++) {
+            for (int j = i; j > from && lemmaCost[j - 1] > lemmaCost[j]; j--) {
+                final String t = lemmaText[j]; lemmaText[j] = lemmaText[j - 1]; lemmaText[j - 1] = t;
+                final MultiTokenLemma m = lemmaMultiToken[j]; lemmaMultiToken[j] = lemmaMultiToken[j - 1]; lemmaMultiToken[j - 1] = m;
+                int tmp = lemmaType[j]; lemmaType[j] = lemmaType[j - 1]; lemmaType[j - 1] = tmp;
+                tmp = lemmaPos[j]; lemmaPos[j] = lemmaPos[j - 1]; lemmaPos[j - 1] = tmp;
+                tmp = lemmaCost[j]; lemmaCost[j] = lemmaCost[j - 1]; lemmaCost[j - 1] = tmp;
+            }
+        }
+        for (int i = from + maxReadings; i < lemmaCount; i++) {
+            lemmaText[i] = null;
+            lemmaMultiToken[i] = null;
+        }
+        lemmaCount = from + maxReadings;
+    }
+
+    /**
+     * Tells where the next word starts if the sandhi described by diff happened between
+     * the form ending at e and the following text.
+     *
+     * @return the node of the next word, or -1 if the sandhied string is not in the text
+     */
+    private int sandhiTarget(String inflected, int e, String sandhied, DiffStruct diff) {
+        final int finalsLength = finalsLength(diff.sandhiType);
+        if (finalsLength > sandhied.length() || finalsLength > inflected.length()
+                || !inflected.regionMatches(inflected.length() - finalsLength, sandhied, 0, finalsLength))
+            return -1;
+        /* the sandhied initial, ignoring spaces and hyphens */
+        int t = e;
+        int initialStart = e;
+        for (int k = finalsLength; k < sandhied.length(); t++) {
+            if (t == segEnd)
+                return -1;
+            final char c = text[t];
+            if (isSeparator(c))
+                continue;
+            if (c != sandhied.charAt(k))
+                return -1;
+            if (k == finalsLength)
+                initialStart = t;
+            k++;
+        }
+        final String initial = diff.initial;
+        if (initial.isEmpty() || sandhied.regionMatches(finalsLength, initial, 0, initial.length())
+                && sandhied.length() - finalsLength == initial.length()) {
+            return node(e, "", e);    // the next word starts with the text as it is
+        } else if (finalsLength == sandhied.length()) {
+            return node(e, initial, e - 1);   // the initial vowel merged with the final
+        } else {
+            return node(t, initial, initialStart);
+        }
+    }
+
+    /**
+     * @return the number of characters of the inflected form found in the sandhied string
+     *         (see {@link SkrtWordTokenizer#containsSandhiedCombination})
+     */
+    static int finalsLength(int sandhiType) {
+        switch (sandhiType) {
+        case 3:
+        case 5:
+        case 6:
+            return 2;
+        case 9:
+            return 5;
+        default:
+            return 1;
+        }
+    }
+
+    private void found(int target, String token, int type, int pos, MultiTokenLemma multiToken, int cost) {
+        if (foundCount == foundTarget.length) {
+            final int size = ArrayUtil.oversize(foundCount + 1, Integer.BYTES);
+            foundTarget = Arrays.copyOf(foundTarget, size);
+            foundText = Arrays.copyOf(foundText, size);
+            foundType = Arrays.copyOf(foundType, size);
+            foundPos = Arrays.copyOf(foundPos, size);
+            foundCost = Arrays.copyOf(foundCost, size);
+            foundMultiToken = Arrays.copyOf(foundMultiToken, size);
+        }
+        foundTarget[foundCount] = target;
+        foundText[foundCount] = token;
+        foundType[foundCount] = type;
+        foundPos[foundCount] = pos;
+        foundCost[foundCount] = cost;
+        foundMultiToken[foundCount] = multiToken;
+        foundCount++;
+    }
+
+    private void addLemma(int from, String token, int type, int pos, MultiTokenLemma multiToken, int cost) {
+        for (int i = from; i < lemmaCount; i++) {
+            if (lemmaType[i] == type && lemmaPos[i] == pos && lemmaText[i].equals(token)) {
+                lemmaCost[i] = Math.min(lemmaCost[i], cost);
+                return;
+            }
+        }
+        if (lemmaCount == lemmaText.length) {
+            final int size = ArrayUtil.oversize(lemmaCount + 1, Integer.BYTES);
+            lemmaText = Arrays.copyOf(lemmaText, size);
+            lemmaType = Arrays.copyOf(lemmaType, size);
+            lemmaPos = Arrays.copyOf(lemmaPos, size);
+            lemmaCost = Arrays.copyOf(lemmaCost, size);
+            lemmaMultiToken = Arrays.copyOf(lemmaMultiToken, size);
+        }
+        lemmaText[lemmaCount] = token;
+        lemmaType[lemmaCount] = type;
+        lemmaPos[lemmaCount] = pos;
+        lemmaCost[lemmaCount] = cost;
+        lemmaMultiToken[lemmaCount] = multiToken;
+        lemmaCount++;
+    }
+
+    private int addEdge(int from, int to, int kind, int start, int end, int cost) {
+        if (edgeCount == edgeFrom.length) {
+            final int size = ArrayUtil.oversize(edgeCount + 1, Integer.BYTES);
+            edgeFrom = Arrays.copyOf(edgeFrom, size);
+            edgeTo = Arrays.copyOf(edgeTo, size);
+            edgeKind = Arrays.copyOf(edgeKind, size);
+            edgeStart = Arrays.copyOf(edgeStart, size);
+            edgeEnd = Arrays.copyOf(edgeEnd, size);
+            edgeCost = Arrays.copyOf(edgeCost, size);
+            edgeLemmaStart = Arrays.copyOf(edgeLemmaStart, size);
+            edgeLemmaCount = Arrays.copyOf(edgeLemmaCount, size);
+            edgeNextAlternative = Arrays.copyOf(edgeNextAlternative, size);
+            edgeOnPath = Arrays.copyOf(edgeOnPath, size);
+        }
+        final int edge = edgeCount++;
+        edgeFrom[edge] = from;
+        edgeTo[edge] = to;
+        edgeKind[edge] = kind;
+        edgeStart[edge] = start;
+        edgeEnd[edge] = end;
+        edgeCost[edge] = cost;
+        edgeLemmaStart[edge] = 0;
+        edgeLemmaCount[edge] = 0;
+        edgeOnPath[edge] = false;
+        /* relax the target: the first of the cheapest paths wins */
+        final int pathCost = nodeCost[from] + cost;
+        if (pathCost < nodeCost[to]) {
+            nodeCost[to] = pathCost;
+            nodeBackEdge[to] = edge;
+        }
+        return edge;
+    }
+
+    /* OUTPUT */
+
+    private void emitBestPath() {
+        outCount = 0;
+        outNext = 0;
+
+        /* backtrack from the end of the segment */
+        pathLength = 0;
+        for (int n = node(segEnd, "", segEnd); nodeBackEdge[n] != -1; n = edgeFrom[nodeBackEdge[n]]) {
+            if (pathLength == pathEdges.length)
+                pathEdges = Arrays.copyOf(pathEdges, ArrayUtil.oversize(pathLength + 1, Integer.BYTES));
+            pathEdges[pathLength++] = nodeBackEdge[n];
+        }
+        final int segLength = segEnd - segStart;
+        Arrays.fill(pathNodeAt, 0, segLength + 1, -1);
+        for (int i = 0; i < pathLength; i++) {
+            final int edge = pathEdges[i];
+            edgeOnPath[edge] = true;
+            pathNodeAt[nodePosition[edgeTo[edge]] - segStart] = edgeTo[edge];
+        }
+        pathNodeAt[0] = node(segStart, "", segStart);
+
+        /* the output position of the nodes where a token starts or ends */
+        int position = 0;
+        boolean inNonWord = false;
+        for (int i = pathLength - 1; i >= 0; i--) {
+            final int edge = pathEdges[i];
+            final int kind = edgeKind[edge];
+            if (kind == NONWORD || kind == SKIP && inNonWord) {
+                if (!inNonWord)
+                    nodeIndex[edgeFrom[edge]] = position;
+                inNonWord = kind == NONWORD || inNonWord;
+                continue;
+            }
+            if (inNonWord) {
+                position++;
+                inNonWord = false;
+            }
+            nodeIndex[edgeFrom[edge]] = position;
+            if (kind == WORD)
+                position += width(edge);
+            nodeIndex[edgeTo[edge]] = position;
+        }
+        final int nbPositions = inNonWord ? position + 1 : position;
+        nodeIndex[node(segEnd, "", segEnd)] = nbPositions;
+
+        /* the alternatives, by starting position */
+        if (firstAlternativeAt.length < nbPositions)
+            firstAlternativeAt = new int[ArrayUtil.oversize(nbPositions, Integer.BYTES)];
+        Arrays.fill(firstAlternativeAt, 0, nbPositions, -1);
+        if (emitAlternatives) {
+            for (int edge = edgeCount - 1; edge >= 0; edge--) {
+                if (edgeKind[edge] != WORD || edgeOnPath[edge])
+                    continue;
+                final int from = indexOf(edgeFrom[edge]);
+                final int to = indexOf(edgeTo[edge]);
+                if (from != -1 && to > from && extraCost(edge) <= beamWidth) {
+                    edgeNextAlternative[edge] = firstAlternativeAt[from];
+                    firstAlternativeAt[from] = edge;
+                }
+            }
+            if (maxReadings != NO_LIMIT) {
+                for (int p = 0; p < nbPositions; p++)
+                    keepCheapestAlternatives(p);
+            }
+        }
+
+        /* the tokens, position by position */
+        position = 0;
+        inNonWord = false;
+        int nonWordStart = -1, nonWordEnd = -1;
+        for (int i = pathLength - 1; i >= 0; i--) {
+            final int edge = pathEdges[i];
+            final int kind = edgeKind[edge];
+            if (kind == NONWORD || kind == SKIP && inNonWord) {
+                if (!inNonWord) {
+                    nonWord.setLength(0);
+                    nonWordStart = edgeStart[edge];
+                    inNonWord = true;
+                }
+                if (kind == NONWORD) {
+                    nonWord.append(text[edgeStart[edge]]);
+                    nonWordEnd = edgeEnd[edge];
+                }
+                continue;
+            }
+            if (inNonWord) {
+                emitNonWord(nonWordStart, nonWordEnd, position++);
+                inNonWord = false;
+            }
+            if (kind == WORD)
+                position = emitWord(edge, position);
+        }
+        if (inNonWord)
+            emitNonWord(nonWordStart, nonWordEnd, position);
+    }
+
+    /**
+     * @return how much more the path through an alternative costs than the best path, 
+     *         where the alternative ends
+     */
+    private int extraCost(int edge) {
+        if (beamWidth == NO_LIMIT)
+            return 0;
+        final int onPath = pathNodeAt[nodePosition[edgeTo[edge]] - segStart];
+        if (onPath == -1)
+            return 0;
+        return (int) Math.max(0, (long) nodeCost[edgeFrom[edge]] + edgeCost[edge] - nodeCost[onPath]);
+    }
+
+    /**
+     * Only keeps the maxReadings - 1 cheapest alternatives of a position, in their original order.
+     */
+    private void keepCheapestAlternatives(int position) {
+        int count = 0;
+        for (int edge = firstAlternativeAt[position]; edge != -1; edge = edgeNextAlternative[edge]) {
+            scratch = ArrayUtil.grow(scratch, count + 1);
+            scratch[count++] = edge;
+        }
+        final int kept = maxReadings - 1;
+        if (count <= kept)
+            return;
+        /* the cost of the kept alternative that costs the most */
+        final int[] costs = scratchCosts = ArrayUtil.grow(scratchCosts, count);
+        final int[] sorted = scratchSorted = ArrayUtil.grow(scratchSorted, count);
+        for (int i = 0; i < count; i++)
+            costs[i] = nodeCost[edgeFrom[scratch[i]]] + edgeCost[scratch[i]];
+        System.arraycopy(costs, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        final int maxCost = kept == 0 ? Integer.MIN_VALUE : sorted[kept - 1];
+        int nbAtMax = 0;
+        for (int i = 0; i < kept; i++) {
+            if (sorted[i] == maxCost)
+                nbAtMax++;
+        }
+        /* relink the kept ones, the first found first among the ones that cost the same */
+        int last = -1;
+        firstAlternativeAt[position] = -1;
+        for (int i = 0; i < count; i++) {
+            final int edge = scratch[i];
+            if (costs[i] > maxCost || costs[i] == maxCost && nbAtMax-- <= 0)
+                continue;
+            if (last == -1)
+                firstAlternativeAt[position] = edge;
+            else
+                edgeNextAlternative[last] = edge;
+            last = edge;
+        }
+        if (last != -1)
+            edgeNextAlternative[last] = -1;
+    }
+
+    /**
+     * @return the output position of a node of the lattice, or -1 if no token of the best path
+     *         starts or ends there
+     */
+    private int indexOf(int n) {
+        if (nodeIndex[n] != -1)
+            return nodeIndex[n];
+        final int onPath = pathNodeAt[nodePosition[n] - segStart];
+        // another reading of the same boundary
+        if (onPath != -1 && nodeSurfaceStart[onPath] == nodeSurfaceStart[n])
+            return nodeIndex[onPath];
+        return -1;
+    }
+
+    /**
+     * @return the number of positions taken by the word: the number of tokens of its longest multi-token lemma
+     */
+    private int width(int edge) {
+        int width = 1;
+        for (int l = edgeLemmaStart[edge]; l < edgeLemmaStart[edge] + edgeLemmaCount[edge]; l++) {
+            if (lemmaMultiToken[l] != null)
+                width = Math.max(width, lemmaMultiToken[l].size());
+        }
+        return width;
+    }
+
+    private void emitNonWord(int start, int end, int position) {
+        final int batch = outCount;
+        addOut(nonWord.toString(), start, end, TYPE_NONWORD, -1, 1);
+        emitAlternatives(position);
+        finishPosition(batch);
+    }
+
+    /**
+     * Emits the lemmas of a word of the best path. A multi-token lemma takes one position per token,
+     * the other lemmas span all of them.
+     *
+     * @return the position following the word
+     */
+    private int emitWord(int edge, int position) {
+        final int width = width(edge);
+        final int base = edgeStart[edge];
+        final int end = edgeEnd[edge];
+        for (int j = 0; j < width; j++) {
+            final int batch = outCount;
+            for (int l = edgeLemmaStart[edge]; l < edgeLemmaStart[edge] + edgeLemmaCount[edge]; l++) {
+                final MultiTokenLemma multiToken = lemmaMultiToken[l];
+                if (multiToken == null) {
+                    if (j == 0)
+                        addOut(lemmaText[l], base, end, lemmaType[l], lemmaPos[l], width);
+                } else if (j < multiToken.size()) {
+                    addPart(lemmaText[l], multiToken, j, base, lemmaType[l], j == multiToken.size() - 1 ? width - j : 1);
+                }
+            }
+            if (j == 0)
+                emitAlternatives(position);
+            finishPosition(batch);
+        }
+        return position + width;
+    }
+
+    private void emitAlternatives(int position) {
+        for (int edge = firstAlternativeAt[position]; edge != -1; edge = edgeNextAlternative[edge]) {
+            final int posLen = indexOf(edgeTo[edge]) - position;
+            for (int l = edgeLemmaStart[edge]; l < edgeLemmaStart[edge] + edgeLemmaCount[edge]; l++) {
+                final MultiTokenLemma multiToken = lemmaMultiToken[l];
+                if (multiToken == null) {
+                    addOut(lemmaText[l], edgeStart[edge], edgeEnd[edge], lemmaType[l], lemmaPos[l], posLen);
+                } else {
+                    for (int j = 0; j < multiToken.size(); j++)
+                        addPart(lemmaText[l], multiToken, j, edgeStart[edge], lemmaType[l], posLen);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the token j of a multi-token lemma, at its offsets relative to base, the beginning of the word.
+     */
+    private void addPart(String lemma, MultiTokenLemma multiToken, int j, int base, int type, int posLen) {
+        addOut(multiToken.text(j, lemma), base + multiToken.start(j), base + multiToken.end(j), type, 
+                multiToken.pos(j), posLen);
+    }
+
+    private void addOut(String token, int start, int end, int type, int pos, int posLen) {
+        if (outCount == outText.length) {
+            final int size = ArrayUtil.oversize(outCount + 1, Integer.BYTES);
+            outText = Arrays.copyOf(outText, size);
+            outStart = Arrays.copyOf(outStart, size);
+            outEnd = Arrays.copyOf(outEnd, size);
+            outType = Arrays.copyOf(outType, size);
+            outPos = Arrays.copyOf(outPos, size);
+            outPosInc = Arrays.copyOf(outPosInc, size);
+            outPosLen = Arrays.copyOf(outPosLen, size);
+        }
+        outText[outCount] = token;
+        outStart[outCount] = start;
+        outEnd[outCount] = end;
+        outType[outCount] = type;
+        outPos[outCount] = pos;
+        outPosLen[outCount] = posLen;
+        outCount++;
+    }
+
+    /**
+     * Sorts the tokens of a position by start offset, removes the duplicates
+     * and sets the position increments.
+     */
+    private void finishPosition(int from) {
+        for (int i = from + 1; i < outCount; i++) {
+            for (int j = i; j > from && outStart[j - 1] > outStart[j]; j--)
+                swapOut(j - 1, j);
+        }
+        int kept = from;
+        for (int i = from; i < outCount; i++) {
+            boolean duplicate = false;
+            for (int j = from; j < kept && !duplicate; j++) {
+                duplicate = outStart[j] == outStart[i] && outEnd[j] == outEnd[i] && outType[j] == outType[i]
+                        && outPos[j] == outPos[i] && outPosLen[j] == outPosLen[i] && outText[j].equals(outText[i]);
+            }
+            if (duplicate)
+                continue;
+            if (kept != i)
+                swapOut(kept, i);
+            kept++;
+        }
+        outCount = kept;
+        for (int i = from; i < outCount; i++)
+            outPosInc[i] = i == from ? 1 : 0;
+    }
+
+    private void swapOut(int i, int j) {
+        final String t = outText[i]; outText[i] = outText[j]; outText[j] = t;
+        int tmp = outStart[i]; outStart[i] = outStart[j]; outStart[j] = tmp;
+        tmp = outEnd[i]; outEnd[i] = outEnd[j]; outEnd[j] = tmp;
+        tmp = outType[i]; outType[i] = outType[j]; outType[j] = tmp;
+        tmp = outPos[i]; outPos[i] = outPos[j]; outPos[j] = tmp;
+        tmp = outPosLen[i]; outPosLen[i] = outPosLen[j]; outPosLen[j] = tmp;
+    }
+
+    /* CHARACTERS */
+
+    private static boolean isSegmentChar(char c) {
+        return SlpCharClass.is(c, SlpCharClass.SLP | SlpCharClass.WITHIN_SANDHI);
+    }
+
+    private static boolean isSeparator(char c) {
+        return SlpCharClass.isValidWithinSandhi(c);
+    }
+
+    private static boolean isSLPModifier(char c) {
+        return SlpCharClass.isModifier(c);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        textLength = 0;
+        textBase = 0;
+        inputEnded = false;
+        nextSegStart = 0;
+        outCount = 0;
+        outNext = 0;
+        lastStartOffset = 0;
+    }
+
+    @Override
+    public final void end() throws IOException {
+        super.end();
+        // the rest of the input is only counted
+        while (!inputEnded)
+            slideWindow(textLength);
+        finalOffset = correctOffset(textBase + textLength);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+import io.bdrc.lucene.stemmer.Row;
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Lemmatizes words that are already segmented, for instance by a WhitespaceTokenizer on 
+ * a pada-pāṭha text, where the words are separated and in their pausa form.
+ * <p>
+ * Each token is looked up as a whole in the Trie used by {@link SkrtWordTokenizer}, and the diffs 
+ * of its cmd that apply without a following word (no sandhi and absolute finals, without initial) 
+ * give its lemmas. They replace the token, with the type "lemma" and their part of speech: the first 
+ * one at the position of the token, the others stacked on it. The tokens of a multi-token lemma are 
+ * stacked the same way, with the offsets they have in the word.
+ * <p>
+ * A token found in the Trie without such a diff is kept with the type "word", as SkrtWordTokenizer
+ * does, and a token that is not found gets the type "non-word".
+ * <p>
+ * Expects SLP input, with the same normalizations as the Trie (see {@link SanskritAnalyzer}).
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SkrtLemmatizerFilter extends TokenFilter {
+
+    static final Logger logger = LoggerFactory.getLogger(SkrtLemmatizerFilter.class);
+
+    /* the token types, as in SkrtWordTokenizer */
+    private static final int WORD = 1;
+    private static final int LEMMA = 2;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final PartOfSpeechAttribute posAtt = addAttribute(PartOfSpeechAttribute.class);
+
+    private final Trie scanner;
+    private final StringBuilder form = new StringBuilder();
+    private final TokenQueue lemmas = new TokenQueue();
+    private State wordState = null;     // the attributes of the token the queued lemmas come from
+
+    /**
+     * Uses the default compiled Trie, shared with {@link SkrtWordTokenizer}.
+     * 
+     * @param input  the words
+     * @throws IOException  the default Trie can't be found
+     */
+    public SkrtLemmatizerFilter(TokenStream input) throws IOException {
+        this(input, SkrtWordTokenizer.getDefaultTrie(SkrtWordTokenizer.DEFAULT_COMPILED_TRIE));
+    }
+
+    /**
+     * @param input  the words
+     * @param trie  a Trie built with {@link BuildCompiledTrie}
+     * @throws IOException  the Trie is null
+     */
+    public SkrtLemmatizerFilter(TokenStream input, Trie trie) throws IOException {
+        super(input);
+        if (trie == null)
+            throw new IOException("no Trie to lemmatize with");
+        this.scanner = trie;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        if (!lemmas.isEmpty()) {
+            restoreState(wordState);
+            posIncrAtt.setPositionIncrement(0);
+            emitFirstLemma();
+            return true;
+        }
+        if (!input.incrementToken())
+            return false;
+        if (lookUp()) {
+            wordState = captureState();
+            emitFirstLemma();
+        } else {
+            typeAtt.setType("non-word");
+        }
+        return true;
+    }
+
+    /**
+     * Fills lemmas with the lemmas of the current token.
+     * 
+     * @return false if the token is not in the Trie
+     */
+    private boolean lookUp() {
+        lemmas.clear();
+        form.setLength(0);
+        final char[] buffer = termAtt.buffer();
+        Row row = scanner.getRow(scanner.getRoot());
+        int cmdIndex = -1;
+        for (int i = 0; i < termAtt.length(); i++) {
+            final char c = buffer[i];
+            if (SlpCharClass.isModifier(c))
+                continue;     // part of the word, but not looked up
+            if (row == null)
+                return false;
+            form.append(c);
+            cmdIndex = row.getCmd(c);
+            final int ref = row.getRef(c);
+            row = ref >= 0 ? scanner.getRow(ref) : null;
+        }
+        if (cmdIndex < 0)
+            return false;
+        final String cmd = scanner.getCommandVal(cmdIndex);
+        if (cmd == null)
+            return false;
+
+        final String inflected = form.toString();
+        final int start = offsetAtt.startOffset();
+        final int end = offsetAtt.endOffset();
+        ParsedCmd parsed = null;
+        try {
+            parsed = CmdParser.parseCached(inflected, cmd);
+        } catch (IllegalArgumentException ex) {
+            logger.debug("can't parse the cmd of {}: {}", inflected, cmd);
+        }
+        if (parsed != null) {
+            for (Entry<String, SortedSet<DiffStruct>> entry: parsed.sandhis.entrySet()) {
+                for (DiffStruct diff: entry.getValue()) {
+                    if (!appliesInPausa(diff) || diff.nbToDelete > inflected.length())
+                        continue;
+                    final String lemma = inflected.substring(0, inflected.length() - diff.nbToDelete) + diff.toAdd;
+                    final MultiTokenLemma multiToken = diff.multiToken;
+                    if (multiToken == null) {
+                        lemmas.addIfAbsent(lemma, start, end, LEMMA, diff.pos);
+                    } else {
+                        for (int j = 0; j < multiToken.size(); j++) {
+                            final int tokenStart = Math.min(end, start + multiToken.start(j));
+                            final int tokenEnd = Math.max(tokenStart, Math.min(end, start + multiToken.end(j)));
+                            lemmas.addIfAbsent(multiToken.text(j, lemma), tokenStart, tokenEnd, LEMMA, multiToken.pos(j));
+                        }
+                    }
+                }
+            }
+        }
+        if (lemmas.isEmpty()) {
+            // there is no diff for a word on its own. the form is kept as-is
+            int pos = -1;
+            try {
+                pos = Integer.parseInt(cmd.substring(cmd.lastIndexOf('#') + 1));
+            } catch (NumberFormatException ex) {
+                logger.debug("no POS in the cmd of {}: {}", inflected, cmd);
+            }
+            lemmas.addIfAbsent(inflected, start, end, WORD, pos);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the diff applies to a word followed by nothing: no sandhi
+     *          or absolute finals, and no initial to restore
+     */
+    static boolean appliesInPausa(DiffStruct diff) {
+        return diff.initial.isEmpty() && (diff.sandhiType == 0 || diff.sandhiType == 7);
+    }
+
+    private void emitFirstLemma() {
+        termAtt.copyBuffer(lemmas.arena(), lemmas.textStart(0), lemmas.textLength(0));
+        offsetAtt.setOffset(lemmas.start(0), lemmas.end(0));
+        typeAtt.setType(lemmas.type(0) == LEMMA ? "lemma" : "word");
+        posAtt.setPartOfSpeech(SkrtWordTokenizer.partOfSpeech(lemmas.pos(0)));
+        lemmas.removeFirst();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        lemmas.clear();
+        wordState = null;
+    }
+}
@@ -0,0 +1,487 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.CharArrayReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+import io.bdrc.lucene.sa.PartOfSpeechAttribute.PartOfSpeech;
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Tokenizes large documents with {@link SkrtWordTokenizer} on several cores.
+ * <p>
+ * The input is cut in chunks of at least {@link #setMinChunkSize(int)} characters, 
+ * right after a danda ({@code .} or {@code ..} once converted to SLP by
+ * {@link Roman2SlpFilter} or {@link Deva2SlpFilter}) or a newline: no sandhi crosses
+ * these boundaries. The chunks are tokenized on a ForkJoinPool, each worker thread
+ * reusing its own SkrtWordTokenizer, and their tokens are emitted in the order of the
+ * input, with the offsets of the whole document.
+ * <p>
+ * The input is read as the chunks are submitted, and only a few chunks are tokenized 
+ * ahead of the one being emitted, so the memory used by the text and the pending tokens 
+ * does not grow with the size of the document, only with the length of its chunks.
+ * <p>
+ * The workers use the settings given by {@link #setGraphOutput(boolean)} and 
+ * {@link #setMaxVisitedChars(int)}. A {@link SegmentationListener} is not supported,
+ * since the chunks are segmented concurrently.
+ * <p>
+ * With a {@link SegmentationCache}, the chunks are tokenized sentence by sentence and the
+ * tokens of the sentences found in the cache are reused.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SkrtParallelWordTokenizer extends Tokenizer {
+
+    static final int DEFAULT_MIN_CHUNK_SIZE = 16384;
+
+    private final Trie trie;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+    private int maxPendingChunks;
+    private SegmentationCache cache = null;
+    private boolean graphOutput = false;
+    private int maxVisitedChars = 0;
+    private long syllableFallbacks = 0;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final PartOfSpeechAttribute posAtt = addAttribute(PartOfSpeechAttribute.class);
+    private final PositionIncrementAttribute incrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+
+    private final ChunkReader chunks = new ChunkReader();
+    private int finalOffset;
+
+    /* chunks being tokenized, in the order of the input, and the one being emitted */
+    private final ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+    private Chunk current;
+    private int currentToken;
+
+    /**
+     * Default constructor: uses the default compiled Trie shared with {@link SkrtWordTokenizer}
+     * and the common ForkJoinPool
+     */
+    public SkrtParallelWordTokenizer() {
+        this(SkrtWordTokenizer.getDefaultTrie(SkrtWordTokenizer.DEFAULT_COMPILED_TRIE));
+    }
+
+    /**
+     * Builds a Trie from a file containing raw Trie data. (might take a long time, depending on the size of the Trie to build)
+     * <br> Is best used with small Tries, such as for testing purposes.
+     *
+     * @param filename the file containing the entries of the Trie
+     * @throws FileNotFoundException the file containing the Trie can't be found
+     * @throws IOException the file containing the Trie can't be read
+     */
+    public SkrtParallelWordTokenizer(String filename) throws FileNotFoundException, IOException {
+        this(BuildCompiledTrie.buildTrie(filename));
+    }
+
+    /**
+     * Opens an already compiled Trie that was saved to disk.
+     *
+     * @param trieStream an InputStream (FileInputStream, for ex.) containing the compiled Trie
+     */
+    public SkrtParallelWordTokenizer(InputStream trieStream) {
+        this(SkrtWordTokenizer.getTrie(trieStream));
+    }
+
+    /**
+     * Uses the given Trie and the common ForkJoinPool
+     * @param trie a Trie built using {@link BuildCompiledTrie}
+     */
+    public SkrtParallelWordTokenizer(Trie trie) {
+        this(trie, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param trie a Trie built using {@link BuildCompiledTrie}
+     * @param pool the pool the chunks are tokenized on
+     */
+    public SkrtParallelWordTokenizer(final Trie trie, ForkJoinPool pool) {
+        this.trie = trie;
+        this.pool = pool;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(new SkrtWordTokenizer(trie)));
+        this.maxPendingChunks = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    /**
+     * @param minChunkSize  the number of characters after which a chunk ends at the next danda or newline
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        if (minChunkSize < 1)
+            throw new IllegalArgumentException("minChunkSize must be > 0: " + minChunkSize);
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * @param cache  the cache of tokenized sentences, null (the default) for no cache
+     * @throws IllegalArgumentException if the cache was created for another Trie
+     */
+    public void setSegmentationCache(SegmentationCache cache) {
+        if (cache != null && cache.trie != trie)
+            throw new IllegalArgumentException("the cache is used with another Trie");
+        this.cache = cache;
+    }
+
+    /**
+     * @param graphOutput true for a token graph. false by default
+     * @see SkrtWordTokenizer#setGraphOutput(boolean)
+     */
+    public void setGraphOutput(boolean graphOutput) {
+        this.graphOutput = graphOutput;
+    }
+
+    /**
+     * @param maxVisitedChars the budget, or 0 (the default) for no budget
+     * @see SkrtWordTokenizer#setMaxVisitedChars(int)
+     */
+    public void setMaxVisitedChars(int maxVisitedChars) {
+        if (maxVisitedChars < 0)
+            throw new IllegalArgumentException("maxVisitedChars must be positive: " + maxVisitedChars);
+        this.maxVisitedChars = maxVisitedChars;
+    }
+
+    /**
+     * @return the number of times the budget set with {@link #setMaxVisitedChars(int)} was exceeded
+     *         in the chunks emitted since this tokenizer was created, the cached sentences excepted
+     */
+    public long getSyllableFallbacks() {
+        return syllableFallbacks;
+    }
+
+    /**
+     * The steps of the workers would be interleaved and relative to their chunks:
+     * use a {@link SkrtWordTokenizer} to follow the segmentation of a document.
+     * 
+     * @param listener  only null or {@link SegmentationListener#NONE} are accepted
+     * @throws UnsupportedOperationException for any other listener
+     */
+    public void setSegmentationListener(SegmentationListener listener) {
+        if (listener != null && listener != SegmentationListener.NONE)
+            throw new UnsupportedOperationException("the chunks are segmented concurrently, use a SkrtWordTokenizer to follow the segmentation");
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        while (current == null || currentToken == current.size) {
+            if (pending.isEmpty())
+                return false;
+            current = join(pending.poll());
+            currentToken = 0;
+            syllableFallbacks += current.fallbacks;
+            submitChunks();
+        }
+        final int i = currentToken++;
+        termAtt.copyBuffer(current.arena, current.textStarts[i], current.textLengths[i]);
+        offsetAtt.setOffset(correctOffset(current.start + current.starts[i]), correctOffset(current.start + current.ends[i]));
+        typeAtt.setType(current.types[i]);
+        posAtt.setPartOfSpeech(current.poss[i]);
+        incrAtt.setPositionIncrement(current.posIncs[i]);
+        posLenAtt.setPositionLength(current.posLens[i]);
+        return true;
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while tokenizing a chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /* reads and submits chunks until enough of them are tokenized ahead */
+    private void submitChunks() throws IOException {
+        final SegmentationCache sentences = cache;
+        final Settings settings = new Settings(graphOutput, maxVisitedChars);
+        while (pending.size() < maxPendingChunks) {
+            final int length = chunks.read(input, minChunkSize);
+            if (length == 0)
+                return;
+            final int offset = chunks.offset();
+            final char[] chars = chunks.take(length);
+            pending.add(pool.submit(() -> workers.get().tokenize(chars, offset, settings, sentences)));
+        }
+    }
+
+    /**
+     * @return the index right after the first run of dandas and newlines found from start, 
+     *         or end if there is none
+     */
+    static int sentenceEnd(char[] text, int start, int end) {
+        int i = CharScanner.INSTANCE.indexOfAny(text, start, end, '.', '\n', '\r');
+        while (i < end && isBoundary(text[i]))
+            i++;
+        return i;
+    }
+
+    static boolean isBoundary(char c) {
+        return c == '.' || c == '\n' || c == '\r';
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        cancelPending();
+        current = null;
+        currentToken = 0;
+        chunks.reset();
+        submitChunks();
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        // the rest of the input, if the tokens were not all consumed
+        finalOffset = correctOffset(chunks.end(input));
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        cancelPending();
+        current = null;
+    }
+
+    private void cancelPending() {
+        for (ForkJoinTask<Chunk> task: pending)
+            task.cancel(false);
+        pending.clear();
+    }
+
+    /**
+     * The settings of the workers, taken when a chunk is submitted.
+     */
+    static final class Settings {
+        final boolean graphOutput;
+        final int maxVisitedChars;
+
+        Settings(boolean graphOutput, int maxVisitedChars) {
+            this.graphOutput = graphOutput;
+            this.maxVisitedChars = maxVisitedChars;
+        }
+
+        /* the sentences are cached along with the settings they were tokenized with */
+        String key(char[] text, int start, int length) {
+            return new StringBuilder(length + 12).append(graphOutput ? 'g' : 'f').append(maxVisitedChars)
+                    .append(' ').append(text, start, length).toString();
+        }
+    }
+
+    /**
+     * The SkrtWordTokenizer of a worker thread, with its attributes.
+     */
+    static final class Worker {
+        final SkrtWordTokenizer tokenizer;
+        final CharTermAttribute termAtt;
+        final OffsetAttribute offsetAtt;
+        final TypeAttribute typeAtt;
+        final PartOfSpeechAttribute posAtt;
+        final PositionIncrementAttribute incrAtt;
+        final PositionLengthAttribute posLenAtt;
+        /* where the work of the tokenizer is added up, or null */
+        final SegmentationStats work;
+
+        Worker(SkrtWordTokenizer tokenizer) {
+            this(tokenizer, null);
+        }
+
+        /**
+         * @param tokenizer  a tokenizer that doesn't publish its stats, see {@code SkrtWordTokenizer.publishesStats}
+         * @param work  the stats the work done on each chunk is added to, but not its tokens
+         */
+        Worker(SkrtWordTokenizer tokenizer, SegmentationStats work) {
+            this.tokenizer = tokenizer;
+            this.work = work;
+            this.termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+            this.offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+            this.typeAtt = tokenizer.addAttribute(TypeAttribute.class);
+            this.posAtt = tokenizer.addAttribute(PartOfSpeechAttribute.class);
+            this.incrAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+            this.posLenAtt = tokenizer.addAttribute(PositionLengthAttribute.class);
+        }
+
+        /* tokenizes the chunk text, found at offset in the input */
+        Chunk tokenize(char[] text, int offset, Settings settings, SegmentationCache cache) throws IOException {
+            tokenizer.setGraphOutput(settings.graphOutput);
+            tokenizer.setMaxVisitedChars(settings.maxVisitedChars);
+            final long fallbacks = tokenizer.getSyllableFallbacks();
+            final Chunk chunk = new Chunk(offset);
+            if (cache == null) {
+                tokenize(text, 0, text.length, chunk, 0);
+            } else {
+                int sentenceStart = 0;
+                while (sentenceStart < text.length) {
+                    final int sentenceEnd = sentenceEnd(text, sentenceStart, text.length);
+                    final int length = sentenceEnd - sentenceStart;
+                    if (length > SegmentationCache.MAX_SENTENCE_LENGTH) {
+                        tokenize(text, sentenceStart, sentenceEnd, chunk, sentenceStart);
+                    } else {
+                        final int from = sentenceStart;
+                        final Chunk sentence;
+                        try {
+                            sentence = cache.cache.get(settings.key(text, sentenceStart, length), key -> {
+                                final Chunk tokens = new Chunk(0);
+                                try {
+                                    tokenize(text, from, from + length, tokens, 0);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                                return tokens.compact();
+                            });
+                        } catch (UncheckedIOException e) {
+                            throw e.getCause();
+                        }
+                        chunk.addAll(sentence, sentenceStart);
+                    }
+                    sentenceStart = sentenceEnd;
+                }
+            }
+            chunk.fallbacks = (int) (tokenizer.getSyllableFallbacks() - fallbacks);
+            return chunk;
+        }
+
+        /* adds the tokens of text[start, end) to chunk, shifting their offsets by shift */
+        private void tokenize(char[] text, int start, int end, Chunk chunk, int shift) throws IOException {
+            tokenizer.setReader(new CharArrayReader(text, start, end - start));
+            try {
+                tokenizer.reset();
+                while (tokenizer.incrementToken()) {
+                    chunk.add(termAtt.buffer(), 0, termAtt.length(), shift + offsetAtt.startOffset(), 
+                            shift + offsetAtt.endOffset(), typeAtt.type(), SkrtWordTokenizer.tokenType(typeAtt.type()), 
+                            posAtt.getPartOfSpeech(), incrAtt.getPositionIncrement(), posLenAtt.getPositionLength());
+                }
+                tokenizer.end();
+                if (work != null)
+                    work.addWork(tokenizer.getSegmentationStats());
+            } finally {
+                tokenizer.close();
+            }
+        }
+    }
+
+    /**
+     * The tokens of a chunk, with offsets relative to its start.
+     * Not modified anymore once it is in a {@link SegmentationCache}.
+     */
+    static final class Chunk {
+        final int start;
+        int size;
+        int fallbacks;
+        char[] arena = new char[256];
+        int arenaLength;
+        int[] textStarts = new int[32];
+        int[] textLengths = new int[32];
+        int[] starts = new int[32];
+        int[] ends = new int[32];
+        int[] posIncs = new int[32];
+        int[] posLens = new int[32];
+        String[] types = new String[32];
+        int[] tokenTypes = new int[32];     // the types as counted by SegmentationStats
+        PartOfSpeech[] poss = new PartOfSpeech[32];
+
+        Chunk(int start) {
+            this.start = start;
+        }
+
+        void add(char[] buffer, int offset, int length, int startOffset, int endOffset, String type, int tokenType, 
+                PartOfSpeech pos, int posInc, int posLen) {
+            if (size == starts.length) {
+                final int capacity = ArrayUtil.oversize(size + 1, Integer.BYTES);
+                textStarts = Arrays.copyOf(textStarts, capacity);
+                textLengths = Arrays.copyOf(textLengths, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                posIncs = Arrays.copyOf(posIncs, capacity);
+                posLens = Arrays.copyOf(posLens, capacity);
+                types = Arrays.copyOf(types, capacity);
+                tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+                poss = Arrays.copyOf(poss, capacity);
+            }
+            if (arenaLength + length > arena.length)
+                arena = Arrays.copyOf(arena, ArrayUtil.oversize(arenaLength + length, Character.BYTES));
+            System.arraycopy(buffer, offset, arena, arenaLength, length);
+            textStarts[size] = arenaLength;
+            textLengths[size] = length;
+            starts[size] = startOffset;
+            ends[size] = endOffset;
+            posIncs[size] = posInc;
+            posLens[size] = posLen;
+            types[size] = type;
+            tokenTypes[size] = tokenType;
+            poss[size] = pos;
+            arenaLength += length;
+            size++;
+        }
+
+        /* adds the tokens of other, shifting their offsets by shift */
+        void addAll(Chunk other, int shift) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.arena, other.textStarts[i], other.textLengths[i], shift + other.starts[i], 
+                        shift + other.ends[i], other.types[i], other.tokenTypes[i], other.poss[i], 
+                        other.posIncs[i], other.posLens[i]);
+            }
+        }
+
+        /* trims the arrays to the tokens, for the chunks that are kept */
+        Chunk compact() {
+            arena = Arrays.copyOf(arena, arenaLength);
+            textStarts = Arrays.copyOf(textStarts, size);
+            textLengths = Arrays.copyOf(textLengths, size);
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            posIncs = Arrays.copyOf(posIncs, size);
+            posLens = Arrays.copyOf(posLens, size);
+            types = Arrays.copyOf(types, size);
+            tokenTypes = Arrays.copyOf(tokenTypes, size);
+            poss = Arrays.copyOf(poss, size);
+            return this;
+        }
+    }
+}
@@ -20,13 +20,14 @@
 package io.bdrc.lucene.sa;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import org.apache.lucene.analysis.CharacterUtils;
 import org.apache.lucene.analysis.CharacterUtils.CharacterBuffer;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.ArrayUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +58,7 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 	private int previousChar = -1;
 	public static final int DEFAULT_MAX_WORD_LEN = 255;
 	private static final int IO_BUFFER_SIZE = 4096;
-	private final int maxTokenLen = 10;
+	private static final int maxTokenLen = 10;
 
 	// valid SLP characters' types
 	public final static int VOWEL = 0;
@@ -87,101 +88,73 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 	private final CharacterBuffer ioBuffer = CharacterUtils.newCharacterBuffer(IO_BUFFER_SIZE);
 	static final Logger logger = LoggerFactory.getLogger(SkrtSyllableTokenizer.class);
 	
-	private static final HashMap<Integer, Integer> skrtPunct = punctMap();
-	private static final HashMap<Integer, Integer> punctMap()
-	{
-		HashMap<Integer, Integer> skrtPunct = new HashMap<>();
-		skrtPunct.put((int)'.', PUNCT);
-		skrtPunct.put((int)' ', PUNCT);
-		skrtPunct.put((int)',', PUNCT);
-		skrtPunct.put((int)'-', PUNCT);
-		return skrtPunct;
-	}
-
-	static final HashMap<Integer, Integer> charType = new HashMap<>();
+	/*
+	 * The syllabation rules, compiled into tables: each char gets a class, the trailing clusters
+	 * are found in a backward pass over the chars instead of looking ahead from each of them,
+	 * and the end of a syllable is a single lookup with the 
+	 * trailing cluster, the class of previousChar and the one of the current char.
+	 */
+	private static final int OTHER_CLASS = 0;
+	private static final int VOWEL_CLASS = 1;
+	private static final int SPECIALPHONEME_CLASS = 2;
+	private static final int CONSONANT_CLASS = 3;
+	private static final int MODIFIER_CLASS = 4;
+	private static final int PUNCT_CLASS = 5;
+	private static final int END_CLASS = 6;      // after the last char of the buffer
+	private static final int NB_CLASSES = 7;
 	
-	static void addToMap(int c, int type) {
-	    charType.put(c, type);
-	}
+	// the states of the trailing clusters, as indices in the tables
+	private static final int NB_CLUSTER_STATES = NOT_A_CLUSTER - CLUSTER_N_VOWEL + 1;
+	private static final byte KEEP_CLUSTER = -1;
+	
+	/** the class of each ASCII char in the tables, from {@link SlpCharClass} */
+	private static final byte[] charClass = new byte[128];
+	
+	/** [class of a char][class of the next one]: the trailing cluster found from this char, KEEP_CLUSTER if it is the same as from the next one */
+	private static final byte[] clusterTransitions = new byte[NB_CLASSES * NB_CLASSES];
+	
+	/** [trailing cluster][class of previousChar][class of c]: a syllable ends between previousChar and c */
+	private static final boolean[] syllableEnds = new boolean[NB_CLUSTER_STATES * NB_CLASSES * NB_CLASSES];
 	
 	static
 	{
-		// vowels
-		addToMap((int)'a', VOWEL);
-		addToMap((int)'A', VOWEL);
-		addToMap((int)'i', VOWEL);
-		addToMap((int)'I', VOWEL);
-		addToMap((int)'u', VOWEL);
-		addToMap((int)'U', VOWEL);
-		addToMap((int)'f', VOWEL);
-		addToMap((int)'F', VOWEL);
-		addToMap((int)'x', VOWEL);
-		addToMap((int)'X', VOWEL);
-		addToMap((int)'e', VOWEL);
-		addToMap((int)'E', VOWEL);
-		addToMap((int)'o', VOWEL);
-		addToMap((int)'O', VOWEL);
-		// special class for anusvara & visarga, jihvamuliya, upadhmaniya
-		addToMap((int)'M', SPECIALPHONEME);
-		addToMap((int)'H', SPECIALPHONEME);
-		addToMap((int)'V', SPECIALPHONEME);
-		addToMap((int)'Z', SPECIALPHONEME);
-		addToMap((int)'~', SPECIALPHONEME);
-		// consonants
-		addToMap((int)'k', CONSONANT);
-		addToMap((int)'K', CONSONANT);
-		addToMap((int)'g', CONSONANT);
-		addToMap((int)'G', CONSONANT);
-		addToMap((int)'N', CONSONANT);
-		addToMap((int)'c', CONSONANT);
-		addToMap((int)'C', CONSONANT);
-		addToMap((int)'j', CONSONANT);
-		addToMap((int)'J', CONSONANT);
-		addToMap((int)'Y', CONSONANT);
-		addToMap((int)'w', CONSONANT);
-		addToMap((int)'W', CONSONANT);
-		addToMap((int)'q', CONSONANT);
-		addToMap((int)'Q', CONSONANT);
-		addToMap((int)'R', CONSONANT);
-		addToMap((int)'t', CONSONANT);
-		addToMap((int)'T', CONSONANT);
-		addToMap((int)'d', CONSONANT);
-		addToMap((int)'D', CONSONANT);
-		addToMap((int)'n', CONSONANT);
-		addToMap((int)'p', CONSONANT);
-		addToMap((int)'P', CONSONANT);
-		addToMap((int)'b', CONSONANT);
-		addToMap((int)'B', CONSONANT);
-		addToMap((int)'m', CONSONANT);
-		addToMap((int)'y', CONSONANT);
-		addToMap((int)'r', CONSONANT);
-		addToMap((int)'l', CONSONANT);
-		addToMap((int)'v', CONSONANT);
-		addToMap((int)'L', CONSONANT);
-		addToMap((int)'|', CONSONANT);
-		addToMap((int)'S', CONSONANT);
-		addToMap((int)'z', CONSONANT);
-		addToMap((int)'s', CONSONANT);
-		addToMap((int)'h', CONSONANT);
+		for (int c = 0; c < charClass.length; c++) {
+			if (SlpCharClass.is(c, SlpCharClass.VOWEL))
+				charClass[c] = VOWEL_CLASS;
+			else if (SlpCharClass.is(c, SlpCharClass.SPECIAL_PHONEME))
+				charClass[c] = SPECIALPHONEME_CLASS;
+			else if (SlpCharClass.is(c, SlpCharClass.CONSONANT))
+				charClass[c] = CONSONANT_CLASS;
+			else if (SlpCharClass.is(c, SlpCharClass.MODIFIER))
+				charClass[c] = MODIFIER_CLASS;
+			else if (SlpCharClass.is(c, SlpCharClass.PUNCT))
+				charClass[c] = PUNCT_CLASS;
+		}
 		
-		// Modifiers
-		addToMap((int)'_', MODIFIER);
-		addToMap((int)'=', MODIFIER);
-		addToMap((int)'!', MODIFIER);
-		addToMap((int)'#', MODIFIER);
-		addToMap((int)'1', MODIFIER);
-		addToMap((int)'2', MODIFIER);
-		addToMap((int)'3', MODIFIER);
-		addToMap((int)'4', MODIFIER);
-		addToMap((int)'/', MODIFIER);
-		addToMap((int)'\\', MODIFIER);
-		addToMap((int)'^', MODIFIER);
-		addToMap((int)'6', MODIFIER);
-		addToMap((int)'7', MODIFIER);
-		addToMap((int)'8', MODIFIER);
-		addToMap((int)'9', MODIFIER);
-		addToMap((int)'+', MODIFIER);
+		Arrays.fill(clusterTransitions, KEEP_CLUSTER);
+		clusterTransitions[CONSONANT_CLASS * NB_CLASSES + VOWEL_CLASS] = CLUSTER_N_VOWEL - CLUSTER_N_VOWEL;
+		clusterTransitions[CONSONANT_CLASS * NB_CLASSES + PUNCT_CLASS] = CLUSTER_N_PUNCT - CLUSTER_N_VOWEL;
+		clusterTransitions[CONSONANT_CLASS * NB_CLASSES + END_CLASS] = CLUSTER_N_END - CLUSTER_N_VOWEL;
+		
+		// a char of each class, to apply syllEndingCombinations()
+		final int[] classChars = new int[NB_CLASSES - 1];
+		for (int c = charClass.length - 1; c >= 0; c--)
+			classChars[charClass[c]] = c;
+		classChars[OTHER_CLASS] = -1;
+		// a syllable never ends before a cluster followed by a punctuation or the end
+		for (int cluster: new int[] {CLUSTER_N_VOWEL, NOT_A_CLUSTER}) {
+			for (int previous = 0; previous < classChars.length; previous++) {
+				for (int current = 0; current < classChars.length; current++) {
+					final int sylEnd = syllEndingCombinations(classChars[previous], classChars[current]);
+					syllableEnds[((cluster - CLUSTER_N_VOWEL) * NB_CLASSES + previous) * NB_CLASSES + current] = 
+							sylEnd == VOWEL_N_CONSONANT || sylEnd == SPECIALPHONEME_N_CONSONANT || sylEnd == MODIFIER_N_CONSONANT;
+				}
+			}
+		}
 	}
+	
+	/* the trailing clusters found in ioBuffer */
+	private final byte[] clusters = new byte[IO_BUFFER_SIZE];
 
 	@Override
 	public final boolean incrementToken() throws IOException {
@@ -206,6 +179,7 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 				}
 				dataLen = ioBuffer.getLength();
 				bufferIndex = 0;
+				findClusters(ioBuffer.getBuffer(), 0, dataLen, clusters);
 			}
 			// use CharacterUtils here to support < 3.1 UTF-16 code unit behavior if the char based methods are gone
 			final int c = Character.codePointAt(ioBuffer.getBuffer(), bufferIndex, ioBuffer.getLength());
@@ -222,27 +196,7 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 				length += Character.toChars(c, buffer, length); // buffer it 
 				
 				// Here is where the syllabation logic really happens
-				int maybeTrailingConsonants = afterConsonantCluster(ioBuffer, bufferIndex-1);
-				int maybeSylEnd = syllEndingCombinations(previousChar, c);
-				
-				boolean endOfSyllable;
-				if (maybeTrailingConsonants == CLUSTER_N_VOWEL || maybeTrailingConsonants == NOT_A_CLUSTER) {
-					if (maybeSylEnd == VOWEL_N_CONSONANT || maybeSylEnd == SPECIALPHONEME_N_CONSONANT ||
-							maybeSylEnd == MODIFIER_N_CONSONANT || maybeSylEnd == SLP_N_NONSLP ||
-							maybeSylEnd == MODIFIER_N_CONSONANT) {
-						endOfSyllable = true;
-					} else if (maybeSylEnd == NOT_SYLL_END) {
-						endOfSyllable = false;
-					} else {
-						endOfSyllable = false;
-					}
-				} else if (maybeTrailingConsonants == CLUSTER_N_PUNCT || maybeTrailingConsonants == CLUSTER_N_END) {
-					endOfSyllable = false;
-				} else {
-					endOfSyllable = false;
-				}
-
-				if (endOfSyllable) {
+				if (isSyllableEnd(clusters[bufferIndex-1], previousChar, c)) {
 					// previousChar is the end of the current syllable
 					// setting the cursor one step back and ending this token/syllable 
 					bufferIndex = bufferIndex - charCount;
@@ -258,6 +212,10 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 			} else if (length > 0) {           // at non-Letter w/ chars
 			    previousChar = c;
 				break;                           // return 'em
+			} else if (c >= 0x80) {            // skip the rest of a run of non-ASCII chars
+			    bufferIndex = CharScanner.INSTANCE.indexOfAscii(ioBuffer.getBuffer(), bufferIndex, dataLen);
+			    previousChar = ioBuffer.getBuffer()[bufferIndex - 1];
+			    continue;
 			}
 			previousChar = c;
 		}
@@ -318,11 +276,41 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 		 * filters only legal SLP1 characters
 		 * @return true if c is a SLP character, else false
 		 */
-		final Integer res = charType.get(c);
-		return (res != null); 
+		return SlpCharClass.isSLP(c); 
+	}
+	
+	private static int classOf(final int c) {
+		return c >= 0 && c < charClass.length ? charClass[c] : OTHER_CLASS;
 	}
 	
-	public int syllEndingCombinations(final int char1, final int char2) {
+	/**
+	 * @param cluster  the trailing cluster found from c by {@link #findClusters}
+	 * @return true if a syllable ends between previousChar and c
+	 */
+	private static boolean isSyllableEnd(final int cluster, final int previousChar, final int c) {
+		return syllableEnds[(cluster * NB_CLASSES + classOf(previousChar)) * NB_CLASSES + classOf(c)];
+	}
+	
+	/**
+	 * Finds, for each char of buffer[from, to), whether a vowel, a legal punctuation or the end of the span
+	 * comes first after the next consonant in a single backward pass.
+	 * 
+	 * @param clusters  receives the trailing cluster of buffer[i] at i - from, as an index in the tables
+	 */
+	static void findClusters(final char[] buffer, final int from, final int to, final byte[] clusters) {
+		int next = NOT_A_CLUSTER - CLUSTER_N_VOWEL;
+		int nextClass = END_CLASS;
+		for (int i = to - 1; i >= from; i--) {
+			final int currentClass = classOf(buffer[i]);
+			final int cluster = clusterTransitions[currentClass * NB_CLASSES + nextClass];
+			if (cluster != KEEP_CLUSTER)
+				next = cluster;
+			clusters[i - from] = (byte) next;
+			nextClass = currentClass;
+		}
+	}
+	
+	public static int syllEndingCombinations(final int char1, final int char2) {
 		/**
 		 * Finds all combinations that correspond to a syllable ending
 		 * 
@@ -339,14 +327,14 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 		 * @param corresponds to c
 		 * @return true if a syllable ends between char1 and char2, else false
 		 */
-		if (charType.containsKey(char1) && !charType.containsKey(char2)) {
+		if (SlpCharClass.isSLP(char1) && !SlpCharClass.isSLP(char2)) {
 			return SLP_N_NONSLP;
-		} else if (charType.containsKey(char2) && charType.get(char2) == CONSONANT) {
-			if (charType.containsKey(char1) && charType.get(char1) == MODIFIER) {
+		} else if (SlpCharClass.is(char2, SlpCharClass.CONSONANT)) {
+			if (SlpCharClass.is(char1, SlpCharClass.MODIFIER)) {
 				return MODIFIER_N_CONSONANT;
-			} else if (charType.containsKey(char1) && charType.get(char1) == SPECIALPHONEME) {
+			} else if (SlpCharClass.is(char1, SlpCharClass.SPECIAL_PHONEME)) {
 				return SPECIALPHONEME_N_CONSONANT;
-			} else if (charType.containsKey(char1) && charType.get(char1) == VOWEL) {
+			} else if (SlpCharClass.is(char1, SlpCharClass.VOWEL)) {
 				return VOWEL_N_CONSONANT;
 			} else {
 				return NOT_SYLL_END;
@@ -356,32 +344,60 @@ public final class SkrtSyllableTokenizer extends Tokenizer {
 		}
 	}
 	
-	private int afterConsonantCluster(final CharacterBuffer inputBuffer, final int currentIdx ) {
-		/**
-		 * checks whether the next consonants constitute a trailing cluster of consonants or not.
-		 * @return the combination
-		 */
-		// see who comes first, a vowel, a legal punctuation or the end of the buffer
-		int nextSylEndIdx = currentIdx;
-		final char[] buffer = inputBuffer.getBuffer();
-		while (nextSylEndIdx < inputBuffer.getLength()) {
-		    final int nextChar = (int)buffer[nextSylEndIdx];
-		    Integer nextCharType = charType.get(nextChar);
-			if (nextCharType != null && nextCharType == CONSONANT) {
-				if (nextSylEndIdx+1 == inputBuffer.getLength()) {
-					return CLUSTER_N_END;
-				}// if char at nextSylIdx
-				else {
-				    if (charType.containsKey((int)buffer[nextSylEndIdx+1]) && charType.get((int)buffer[nextSylEndIdx+1]) == VOWEL) {
-				        return CLUSTER_N_VOWEL;
-				    } else if (skrtPunct.containsKey((int)buffer[nextSylEndIdx+1])) {
-				        //System.out.print(Arrays.asList(buffer).subList(0, nextSylEndIdx).toString());
-				        return CLUSTER_N_PUNCT;
-				    }
-				}
-			}
-			nextSylEndIdx++;
-		}
-		return NOT_A_CLUSTER;
+	/**
+	 * The syllables found by {@link SkrtSyllableTokenizer#syllabify}, with arrays reused from one call to the next.
+	 */
+	static final class Syllables {
+	    private int[] bounds = new int[16];
+	    private byte[] clusters = new byte[64];
+	    private int size = 0;
+	    
+	    int size() {
+	        return size;
+	    }
+	    
+	    int start(final int i) {
+	        return bounds[2 * i];
+	    }
+	    
+	    int end(final int i) {
+	        return bounds[2 * i + 1];
+	    }
+	}
+	
+	/**
+	 * Splits buffer[from, to) in syllables, with the same rules as {@link #incrementToken()}.
+	 * <p>
+	 * The trailing clusters are found with {@link #findClusters}, so the cost is linear in the length of the span.
+	 * The span is considered to be the end of the input.
+	 * 
+	 * @param syllables  cleared, then filled with the start and end indices of the syllables
+	 */
+	static void syllabify(final char[] buffer, final int from, final int to, final Syllables syllables) {
+	    if (syllables.clusters.length < to - from)
+	        syllables.clusters = new byte[ArrayUtil.oversize(to - from, Byte.BYTES)];
+	    final byte[] clusters = syllables.clusters;
+	    findClusters(buffer, from, to, clusters);
+	    
+	    int nbBounds = 0;
+	    int i = from;
+	    while (i < to) {
+	        while (i < to && !isSLP(buffer[i]))
+	            i++;
+	        if (i == to)
+	            break;
+	        final int start = i;
+	        i++;         // the first char never ends a syllable
+	        while (i < to && i - start < maxTokenLen && isSLP(buffer[i])) {
+	            if (isSyllableEnd(clusters[i - from], buffer[i - 1], buffer[i]))
+	                break;
+	            i++;
+	        }
+	        if (nbBounds + 2 > syllables.bounds.length)
+	            syllables.bounds = ArrayUtil.grow(syllables.bounds, nbBounds + 2);
+	        syllables.bounds[nbBounds++] = start;
+	        syllables.bounds[nbBounds++] = i;
+	    }
+	    syllables.size = nbBounds / 2;
 	}
 }
\ No newline at end of file
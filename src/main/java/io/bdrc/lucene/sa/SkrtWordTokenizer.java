@@ -23,27 +23,24 @@ import java.io.DataInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
-import org.apache.lucene.analysis.util.RollingCharBuffer;
+import org.apache.lucene.util.ArrayUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,7 +72,7 @@ import io.bdrc.lucene.stemmer.Trie;
  * See <a href="https://github.com/BuddhistDigitalResourceCenter/sanskrit-stemming-data#multi-token-lemmas">here</a>
  * for more information.
  * <p>
- * Derived from Lucene 6.4.1 CharTokenizer, but differs by using a RollingCharBuffer
+ * Derived from Lucene 6.4.1 CharTokenizer, but differs by using a {@link CharWindow}
  * to still find tokens that are on the IO_BUFFER_SIZE (4096 chars)
  *
  * @author Élie Roux
@@ -84,8 +81,12 @@ import io.bdrc.lucene.stemmer.Trie;
  */
 public final class SkrtWordTokenizer extends Tokenizer {
 	
-	private boolean debug = false;
-	String compiledTrieName = "skrt-compiled-trie.dump";
+	private SegmentationListener listener = SegmentationListener.NONE;
+	private final SegmentationStats stats = new SegmentationStats();
+	private boolean statsPending = false;           // true between reset() and end()
+	boolean publishesStats = true;                  // false for the tokenizer of the sentences missing from a cache
+	static final String DEFAULT_COMPILED_TRIE = "skrt-compiled-trie.dump";
+	String compiledTrieName = DEFAULT_COMPILED_TRIE;
 	private static Trie defaultTrie;
 	private Trie scanner;
 	static final Logger logger = LoggerFactory.getLogger(SkrtWordTokenizer.class);
@@ -96,19 +97,20 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
 	private final PartOfSpeechAttribute posAtt = addAttribute(PartOfSpeechAttribute.class);
 	private final PositionIncrementAttribute incrAtt = addAttribute(PositionIncrementAttribute.class);
+	private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
 
 	/**
 	 * Default constructor: uses the default compiled Trie loaded at class level
 	 */
 	public SkrtWordTokenizer() {
 	    this.scanner = getTrie();
-	    ioBuffer = new RollingCharBuffer();
+	    ioBuffer = new CharWindow();
         ioBuffer.reset(input);
 	}
 
     public SkrtWordTokenizer(boolean debug) {
         this();
-        this.debug = debug;
+        if (debug) this.listener = new SegmentationTrace(System.out, false);
     }
 	
 	/**
@@ -126,13 +128,13 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	public SkrtWordTokenizer(String filename) throws FileNotFoundException, IOException {
         this.scanner = BuildCompiledTrie.buildTrie(filename);
         
-        ioBuffer = new RollingCharBuffer();
+        ioBuffer = new CharWindow();
         ioBuffer.reset(input);
 	}
 	
     public SkrtWordTokenizer(boolean debug, String filename) throws FileNotFoundException, IOException {
         this(filename);
-        this.debug = debug;
+        if (debug) this.listener = new SegmentationTrace(System.out, false);
     }
 	
 	/**
@@ -151,13 +153,13 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	public SkrtWordTokenizer(InputStream trieStream) throws FileNotFoundException, IOException {
 	      getTrie(trieStream);
 	        
-	      ioBuffer = new RollingCharBuffer();
+	      ioBuffer = new CharWindow();
 	      ioBuffer.reset(input);
 	}
 
     public SkrtWordTokenizer(boolean debug, InputStream trieStream) throws FileNotFoundException, IOException {
         this(trieStream);
-        this.debug = debug;
+        if (debug) this.listener = new SegmentationTrace(System.out, false);
     }
 	
 	/**
@@ -167,16 +169,27 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	public SkrtWordTokenizer(Trie trie) {
 	    this.scanner = trie;
         
-        ioBuffer = new RollingCharBuffer();
+        ioBuffer = new CharWindow();
         ioBuffer.reset(input);
 	}
 	
 	public SkrtWordTokenizer(boolean debug, Trie trie) {
 		this(trie);
-		this.debug = debug;
+		if (debug) this.listener = new SegmentationTrace(System.out, false);
 	}
 	
 	private Trie getTrie() {
+	    return getDefaultTrie(compiledTrieName);
+	}
+	
+	/**
+	 * Loads the default compiled Trie once and shares it with all the tokenizers,
+	 * including {@link SkrtLatticeTokenizer}.
+	 * 
+	 * @param compiledTrieName the resource or file containing the compiled Trie
+	 * @return the Trie, or null if it can't be found
+	 */
+	static synchronized Trie getDefaultTrie(String compiledTrieName) {
 	    if (defaultTrie != null)
 	        return defaultTrie;
 	    Trie trie = null;
@@ -194,7 +207,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
         return defaultTrie;
 	}
 	
-	private Trie getTrie(InputStream stream) {
+	static Trie getTrie(InputStream stream) {
 	    Trie trie = null;
 	    long start = System.currentTimeMillis();
         try {
@@ -206,7 +219,6 @@ public final class SkrtWordTokenizer extends Tokenizer {
         long end = System.currentTimeMillis();
         String msg = "Trie loaded in: " + (end - start) / 1000 + "s.";
         logger.info(msg);
-        System.out.println(msg);
 	    return trie;
 	}
 	
@@ -224,7 +236,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	private int nonMaxTokenStart, nonMaxBufferIndex, nonMaxFoundMatchCmdIndex, nonMaxNonWordLength;
 	
 	/* tokens related */
-	private LinkedHashMap<String, Integer[]> potentialTokens = new LinkedHashMap<String, Integer[]>();	
+	private final PotentialTokens potentialTokens = new PotentialTokens();
+	private final SandhiMatcher.Matches sandhiMatches = new SandhiMatcher.Matches();
 	// contains : {startingIndex, endingIndex, tokenLength, (isItAMatchInTheTrie ? 1 : 0), 
 	//												(isItAMatchInTheTrie ? theIndexOfTheCmd : -1)}
 
@@ -233,26 +246,26 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	private StringBuilder nonWordBuffer = new StringBuilder();
 	
 	/* totalTokens related */
-	private LinkedList<PreToken> totalTokens = new LinkedList<PreToken>();
+	private final TokenQueue totalTokens = new TokenQueue();
 	private boolean hasTokenToEmit;
 	
 	/* initials related */
 	private LinkedHashMap<String, Integer> initials = null;			// it is HashSet to filter duplicate initials
 	private Iterator<Entry<String, Integer>> initialsIterator = null;
 	private StringCharacterIterator initialCharsIterator = null;
-	private static int sandhiIndex = -1;
+	private int sandhiIndex = -1;
 	
 	private int initialsOrigBufferIndex = -1, initialsOrigTokenStart = -1;
 	private StringBuilder initialsOrigBuffer = new StringBuilder();
 	private HashSet<String> storedInitials = null;
 	
-	private static boolean mergesInitials = false;
+	private boolean mergesInitials = false;
 	private int finalsIndex = -1;
 	private int firstInitialIndex;
 	private boolean applyOtherInitial;
 	
 	/* ioBuffer related (contains the input string) */
-	private RollingCharBuffer ioBuffer;
+	private CharWindow ioBuffer;
 	private int bufferIndex = 0, finalOffset = 0, lastStartOffset = 0;
 	private int charCount;
 	int MAX_WORD_LEN = 255;
@@ -262,6 +275,236 @@ public final class SkrtWordTokenizer extends Tokenizer {
     private StringBuilder noMatchBuffer = new StringBuilder();
     private Integer idempotentIdx = -1;
     private boolean previousIsSpace;
+    
+    /* work budget related */
+    static final int SYLLABLE_FALLBACK = 3;     // type of the tokens produced when the budget is exceeded
+    private int maxVisitedChars = 0;            // 0: no budget
+    private int visitedChars, fallbackStart, furthestIndex;
+    private long syllableFallbacks = 0;
+    private boolean emittingFallback;           // the tokens of totalTokens come from fallBackToSyllables()
+    private final SkrtSyllableTokenizer.Syllables syllables = new SkrtSyllableTokenizer.Syllables();
+    
+    /* graph output related */
+    private boolean graphOutput = false;
+    private int lastEmittedStart;
+    
+    /* the classes of the cmds of the Trie already found, by cmd index */
+    private CmdClass[] cmdClasses = new CmdClass[0];
+    
+    /* checkpoint related */
+    private Checkpoint resumeFrom = null;       // applied by the next reset()
+    private int baseOffset = 0;                 // the offset of the checkpoint the input was resumed from
+    
+    /* segmentation cache related */
+    private SegmentationCache cache = null;
+    private SkrtParallelWordTokenizer.Worker cacheWorker;   // tokenizes the sentences missing from the cache
+    private ChunkReader sentences;
+    private SkrtParallelWordTokenizer.Chunk sentence;       // the tokens of the sentence being emitted
+    private int sentenceToken;
+    private boolean readsSentences;                         // a cache was set at the last reset()
+    private static final String[] TOKEN_TYPES = {"non-word", "word", "lemma", "syllable"};
+	
+	/**
+	 * Bounds the work done to emit a token.
+	 * <p>
+	 * Restoring the state and retrying the unsandhied initials can visit the same characters
+	 * many times, mostly on garbled input or long runs without spaces.
+	 * When more than maxVisitedChars characters are visited again before a token is found, 
+	 * the words already found in the Trie are kept and the rest of the span visited so far 
+	 * is split in syllables with the rules of {@link SkrtSyllableTokenizer} instead. 
+	 * These tokens have the type "syllable" and an Unknown part of speech, 
+	 * except the runs without a vowel, that are non-words.
+	 * <p>
+	 * The first visit of a character is never counted, so a word of the Trie is never split,
+	 * whatever its length.
+	 * 
+	 * @param maxVisitedChars the budget, or 0 (the default) for no budget
+	 */
+	public void setMaxVisitedChars(int maxVisitedChars) {
+	    if (maxVisitedChars < 0)
+	        throw new IllegalArgumentException("maxVisitedChars must be positive: " + maxVisitedChars);
+	    this.maxVisitedChars = maxVisitedChars;
+	}
+	
+	/**
+	 * @return the number of times the budget set with {@link #setMaxVisitedChars(int)} was exceeded
+	 *         since this tokenizer was created
+	 */
+	public long getSyllableFallbacks() {
+	    return syllableFallbacks;
+	}
+	
+	/**
+	 * The counts of the current input, added to {@link SegmentationMetrics} by {@link #end()}.
+	 * <p>
+	 * Indexing pipelines should rather use {@link SegmentationStatsAttribute}.
+	 * 
+	 * @return the live counts of this tokenizer, cleared by {@link #reset()}
+	 */
+	public SegmentationStats getSegmentationStats() {
+	    return stats;
+	}
+	
+	/**
+	 * Emits a token graph instead of a flat list of tokens.
+	 * <p>
+	 * By default, the first token found for a span of text has a position increment of 1 and
+	 * all the others (other lemmas, non-words, the tokens of multi-token lemmas) have 0.
+	 * In graph mode, the tokens of a span are sorted by start: each new start is a new position,
+	 * the alternatives with the same start are stacked on it, and a token covering the starts 
+	 * of other tokens gets a {@link PositionLengthAttribute} spanning them, as expected by 
+	 * graph-aware query parsers (see {@link org.apache.lucene.util.graph.GraphTokenStreamFiniteStrings}).
+	 * 
+	 * @param graphOutput true for a token graph. false by default
+	 */
+	public void setGraphOutput(boolean graphOutput) {
+	    this.graphOutput = graphOutput;
+	}
+	
+	/**
+	 * Reports the steps of the segmentation to a listener, for instance a {@link SegmentationTrace}
+	 * to see what happens on a given document.
+	 * 
+	 * @param listener the listener, or null for {@link SegmentationListener#NONE}, the default
+	 */
+	public void setSegmentationListener(SegmentationListener listener) {
+	    this.listener = listener == null ? SegmentationListener.NONE : listener;
+	}
+	
+	/**
+	 * Reuses the tokens of the sentences (up to a danda or a newline) already tokenized with the 
+	 * same Trie and settings, for corpora repeating the same titles or formulae.
+	 * <p>
+	 * From the next {@link #reset()} on, the input is read sentence by sentence: the tokens of the
+	 * sentences found in the cache are replayed with their offsets shifted, and the others are 
+	 * tokenized on their own, as with {@link SkrtParallelWordTokenizer}, and added to the cache. 
+	 * No checkpoint can be taken, and the listener only receives the emitted tokens.
+	 * The {@link SegmentationStats} count the emitted tokens and the work done on the sentences 
+	 * missing from the cache, once per input.
+	 * 
+	 * @param cache  the cache, that can be shared by several tokenizers, or null (the default) for no cache
+	 * @throws IllegalArgumentException if the cache was created for another Trie
+	 */
+	public void setSegmentationCache(SegmentationCache cache) {
+	    if (cache != null && cache.trie != scanner)
+	        throw new IllegalArgumentException("the cache is used with another Trie");
+	    if (cache != null && cacheWorker == null) {
+	        // its work is counted in the stats of this tokenizer, that publishes them
+	        final SkrtWordTokenizer sentenceTokenizer = new SkrtWordTokenizer(scanner);
+	        sentenceTokenizer.publishesStats = false;
+	        cacheWorker = new SkrtParallelWordTokenizer.Worker(sentenceTokenizer, stats);
+	        sentences = new ChunkReader();
+	    }
+	    this.cache = cache;
+	}
+	
+	/**
+	 * Captures the state of the tokenizer, so that another tokenizer using the same Trie
+	 * and the same settings can tokenize the rest of the input.
+	 * <p>
+	 * This is only possible between two sentences, when no token is pending and no sandhi
+	 * links the last token to the next one: call it after {@link #incrementToken()} and keep 
+	 * the last checkpoint that is not null.
+	 * 
+	 * @return the checkpoint, or null if the tokenizer is not between two sentences or uses a {@link SegmentationCache}
+	 */
+	public Checkpoint checkpoint() {
+	    if (readsSentences) {
+	        return null;
+	    }
+	    // hasTokenToEmit is only set back to false by the next call once all the tokens are emitted
+	    if (!totalTokens.isEmpty() || initials != null || sandhiIndex != -1 || idempotentIdx != -1 || mergesInitials) {
+	        return null;
+	    }
+	    try {
+	        if (!isBetweenSentences()) {
+	            return null;
+	        }
+	    } catch (IOException e) {
+	        return null;
+	    }
+	    return new Checkpoint(bufferIndex, offset(bufferIndex), finalOffset, lastStartOffset, 
+	            finalsIndex < 0 ? -1 : finalsIndex - bufferIndex, lastEmittedStart - bufferIndex, 
+	            storedInitials == null ? null : new HashSet<String>(storedInitials));
+	}
+	
+	/* a sentence boundary precedes bufferIndex or follows it, maybe after spaces */
+	private boolean isBetweenSentences() throws IOException {
+	    if (bufferIndex > 0 && SkrtParallelWordTokenizer.isBoundary((char) ioBuffer.get(bufferIndex - 1))) {
+	        return true;
+	    }
+	    int idx = bufferIndex;
+	    int c = ioBuffer.get(idx);
+	    while (isValidCharWithinSandhi(c)) {
+	        c = ioBuffer.get(++idx);
+	    }
+	    return c != -1 && SkrtParallelWordTokenizer.isBoundary((char) c);
+	}
+	
+	/**
+	 * Resumes the tokenization from a checkpoint at the next {@link #reset()}.
+	 * <p>
+	 * The Reader must give the rest of the input: without CharFilter, from {@link Checkpoint#getOffset()} on. 
+	 * With CharFilters (like {@link Roman2SlpFilter} or {@link Deva2SlpFilter}), the original text
+	 * from {@link Checkpoint#getCorrectedOffset()} on, wrapped in the same CharFilters. The tokens are then 
+	 * the same as if the whole input had been tokenized by one tokenizer, offsets included.
+	 * 
+	 * @param checkpoint a checkpoint given by {@link #checkpoint()}, or null to start from the beginning
+	 */
+	public void resumeFrom(Checkpoint checkpoint) {
+	    this.resumeFrom = checkpoint;
+	}
+	
+	/**
+	 * The state of a {@link SkrtWordTokenizer} between two sentences, see {@link SkrtWordTokenizer#checkpoint()}.
+	 * <p>
+	 * The indices are relative to the offset of the checkpoint, so the input can be resumed 
+	 * from a Reader that starts there.
+	 */
+	public static final class Checkpoint implements Serializable {
+	    private static final long serialVersionUID = 1L;
+	    
+	    final int offset;
+	    final int correctedOffset;
+	    final int finalOffset;
+	    final int lastStartOffset;
+	    final int finalsIndex;
+	    final int lastEmittedStart;
+	    final HashSet<String> storedInitials;
+	    
+	    Checkpoint(int offset, int correctedOffset, int finalOffset, int lastStartOffset, int finalsIndex, 
+	            int lastEmittedStart, HashSet<String> storedInitials) {
+	        this.offset = offset;
+	        this.correctedOffset = correctedOffset;
+	        this.finalOffset = finalOffset;
+	        this.lastStartOffset = lastStartOffset;
+	        this.finalsIndex = finalsIndex;
+	        this.lastEmittedStart = lastEmittedStart;
+	        this.storedInitials = storedInitials;
+	    }
+	    
+	    /**
+	     * @return the number of chars read from the input of the tokenizer, after the CharFilters: 
+	     *         without CharFilter, the Reader given to resume must skip them
+	     */
+	    public int getOffset() {
+	        return offset;
+	    }
+	    
+	    /**
+	     * @return the same offset, corrected by the CharFilters of the input: the offset in the
+	     *         original text, where the Reader given to resume must start before its CharFilters.
+	     *         The same as {@link #getOffset()} without CharFilter
+	     */
+	    public int getCorrectedOffset() {
+	        return correctedOffset;
+	    }
+	    
+	    @Override
+	    public String toString() {
+	        return "Checkpoint[" + offset + "]";
+	    }
+	}
 	
 	/**
 	 * Called on each token character to normalize it before it is added to the
@@ -277,12 +520,15 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	@Override
 	public final boolean incrementToken() throws IOException {
 		clearAttributes();
+		if (readsSentences) {
+		    return incrementCachedToken();
+		}
 
 		/* B.3. ADDING REMAINING EXTRA TOKENS */
 		if (hasTokenToEmit == true) {
 			addExtraToken();
 			if (hasTokenToEmit == true) {
-				return true;
+				return tokenEmitted();
 			} else {
 				totalTokens.clear();		// and resume looping over ioBuffer
 			}
@@ -332,6 +578,9 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	    initialsOrigBufferIndex = -1;
 	    
 		charCount = -1;
+		visitedChars = 0;
+		fallbackStart = bufferIndex;
+		furthestIndex = bufferIndex;
 		
 		// furthest char visited when iterating over the initials.
 		// ensures we do MaxMatch in case the match of the last initial is shorter
@@ -339,14 +588,6 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		
 		tokenBuffer.setLength(0);
 		boolean potentialTokensContainMatches = false;
-		@SuppressWarnings("unused")   // these two variables are not used.
-        boolean match = false;
-		@SuppressWarnings("unused")   // they only provide humans an easy way to understand what is happening
-        boolean continuing = false;
-		@SuppressWarnings("unused")
-		char currentChar;
-		
-		if (debug) System.out.println("----------------------");
 
 		/* A. FINDING TOKENS */
 		while (true) {
@@ -362,14 +603,22 @@ public final class SkrtWordTokenizer extends Tokenizer {
 			 */
 		    
 			int c = ioBuffer.get(bufferIndex);	// take next char in ioBuffer
-			currentChar = (char) c;
 			charCount = Character.charCount(c);
 			bufferIndex += charCount; 			// increment bufferIndex for next value of c
+			if (maxVisitedChars > 0 && isSLPTokenChar(c)) {     // spaces and punctuation are not part of the budget
+			    if (fallbackStart > bufferIndex - charCount)
+			        fallbackStart = bufferIndex - charCount;
+			    if (furthestIndex < bufferIndex)
+			        furthestIndex = bufferIndex;
+			    else if (++visitedChars > maxVisitedChars)     // only the chars visited again count
+			        return fallBackToSyllables();
+			}
 			ifIsNeededInitializeStartingIndexOfNonword();
 			if (initialsOrigBufferIndex == -1) 
 			    storeCurrentState();
 			
-			if (debug) System.out.print((char) c);
+			listener.charConsumed(bufferIndex - charCount, c);
+			stats.visitedChars++;
 			
 			/* when ioBuffer is empty (end of input, ...) */
 			if (c == -1) {
@@ -377,7 +626,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
 			        bufferIndex -= charCount;
 	                cutOffTokenFromNonWordBuffer();
 			        if ((tokenBuffer.length() == 0 && nonWordBuffer.length() == 0) || isLoneInitial()) {
-	                    finalOffset = correctOffset(bufferIndex);
+	                    finalOffset = offset(bufferIndex);
 	                    initials = null;                // discard all initial-related content
 	                    initialsIterator = null;
 	                    initialCharsIterator = null;
@@ -472,7 +721,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
  		               c = ioBuffer.get(sandhiIndex);
  		               bufferIndex = sandhiIndex + charCount;
  		               sandhiIndex = -1;
- 		               if (debug) System.out.print("=>" + (char) c);
+ 		               listener.charConsumed(bufferIndex - charCount, c);
  		            }
  				    storeCurrentState();
  				    firstInitialIndex = bufferIndex;
@@ -486,7 +735,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
 					    }
                     }
 					c = applyInitialChar();
-					if (debug) System.out.print("=>" + (char) c);
+					listener.initialTried(bufferIndex - 1, c);
+					stats.initialsTried++;
 
 				} else if (stillConsumingInitials() || applyOtherInitial) {
 				/* we enter here if all initial chars are not yet consumed */
@@ -501,14 +751,14 @@ public final class SkrtWordTokenizer extends Tokenizer {
                     }
 					c = applyInitialChar();
 					if (nonWordBuffer.length() > 0) decrement(nonWordBuffer);
-					if (debug) System.out.print("=>" + (char) c);
+					listener.initialTried(bufferIndex - 1, c);
+					stats.initialsTried++;
 					applyOtherInitial = false;                 
 				}
 			}
 	         
 			tokenBuffer.append((char) normalize(c));
 			nonWordBuffer.append((char) c);          // later remove chars belonging to a token
-			if (debug) System.out.println("");
 			/* A.2. PROCESSING c */
 			
 			/* A.2.1) if it's a token char */
@@ -524,16 +774,16 @@ public final class SkrtWordTokenizer extends Tokenizer {
 				/* we enter on two occasions: at the actual start of a token and at each new non-word character. */
 				    tokenStart = bufferIndex - charCount;                   // update for potential word starting here
 				    
-				    match = tryToFindMatchIn(rootRow, c);					// if foundMatch == true, there is a match  
-					continuing = tryToContinueDownTheTrie(rootRow, c);	    // if currentRow != null, can continue
+				    tryToFindMatchIn(rootRow, c);					// if foundMatch == true, there is a match  
+					tryToContinueDownTheTrie(rootRow, c);	    // if currentRow != null, can continue
 					incrementTokenIndices();
 					ifIsNeededInitializeStartingIndexOfNonword();
 
 				} else {
 				/* we enter here on all other occasions: we don't know if word chars will be a match or not */
 										
-					match = tryToFindMatchIn(currentRow, c);
-					continuing = tryToContinueDownTheTrie(currentRow, c);
+					tryToFindMatchIn(currentRow, c);
+					tryToContinueDownTheTrie(currentRow, c);
 					if (reachedNonwordCharacter()) {
 					    if (!foundNonMaxMatch && storedNoMatchState == 1) {
 					        restoreNoMatchState();
@@ -580,8 +830,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		                    }
 					        
 					    } else if (!foundNonMaxMatch) {
-					        match = tryToFindMatchIn(rootRow, c);
-					        continuing = tryToContinueDownTheTrie(rootRow, c);
+					        tryToFindMatchIn(rootRow, c);
+					        tryToContinueDownTheTrie(rootRow, c);
 					        tokenBuffer.setLength(0);
 					        tokenStart = bufferIndex - 1;
 					        if (foundMatch) {
@@ -746,6 +996,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
 				
 				/* tokenBuffer corner case: buffer overflow! */
 				if (tokenBuffer.length() >= MAX_WORD_LEN) {		// make sure to check for >= surrogate pair could break == test
+				    stats.wordLengthCutOffs++;
 					break;
 				}
 			
@@ -924,6 +1175,9 @@ public final class SkrtWordTokenizer extends Tokenizer {
 			    decrement(tokenBuffer);
 			    decrement(nonWordBuffer);
 			    nonWordStart = -1;
+			    if (!thereAreInitialsToConsume() && sandhiIndex == -1 && idempotentIdx == -1 && initialsOrigBufferIndex != -1
+			            && (currentRow != null || nonWordBuffer.length() == 0))
+			        skipNonSLPRun();
 			}
 		}
 
@@ -976,97 +1230,199 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		    /* B.2.a. ADJUSTING THE LIST OF PreTokens */
 		    /* deal with preverbs and other custom defined entries */
 		    processMultiTokenLemmas();
-		    removeOverlappingNonwords();
+		    totalTokens.removeOverlappingNonwords();
+		    if (graphOutput)
+		        totalTokens.sortByStart();
 		    
 		    /* B.2.b. RETURNING A TOKEN */
-			final PreToken firstToken = totalTokens.removeFirst();
-			final Integer[] metaData = firstToken.getMetadata();
-			fillTermAttributeWith(firstToken.getString(), metaData);
-			changeTypeOfToken(metaData[3]);
-			changePartOfSpeech(metaData[4]);
+		    emittingFallback = false;
+			fillTermAttributeWithFirstToken();
+			changeTypeOfToken(totalTokens.type(0));
+			changePartOfSpeech(totalTokens.pos(0));
+			setPositionLength();
+			totalTokens.removeFirst();
 			incrAtt.setPositionIncrement(1);
-			return true;						// we exit incrementToken()
+			return tokenEmitted();						// we exit incrementToken()
 		
 		} else {					// there is no non-word nor extra lemma to add. there was no sandhi for this token 			
 			assert(tokenStart != -1);
 			finalizeSettingTermAttribute();
-			return true;						// we exit incrementToken()
+			stats.countToken(1);                // the default type of the TypeAttribute is word
+			return tokenEmitted();						// we exit incrementToken()
 		}
 	}
 
-    private void removeOverlappingNonwords() {
-        TreeSet<Integer> toDelete = new TreeSet<Integer>(Collections.reverseOrder());
-        for (int i=0; i < totalTokens.size(); i++) {
-            final Integer[] aMetadata = totalTokens.get(i).getMetadata();
-            final int aStart = aMetadata[0];
-            final int aEnd = aMetadata[1];
-            final int aPos = aMetadata[4];
-            if (aPos == -1) {
-                for (int j=0; j < totalTokens.size(); j++) {
-                    if (i != j) {
-                        final Integer[] bMetadata = totalTokens.get(j).getMetadata();
-                        final int bStart = bMetadata[0];
-                        final int bEnd = bMetadata[1];
-                        final int bPos = bMetadata[4];
-                        if (aStart >= bStart && aEnd <= bEnd) {
-                            if (bPos != -1) {
-                                toDelete.add(i);
-                            } else {
-                                if (!toDelete.contains(i) && !toDelete.contains(j)) {
-                                    toDelete.add(i);
-                                }
-                            }
-                        }
-                    }
-                }
+    /**
+     * Gives up on the current token: keeps the words the Trie found, splits the other chars 
+     * visited so far in syllables, drops all the sandhi-related state and emits the first token.
+     * <p>
+     * The last syllable is kept for the next token if it might continue after the visited chars.
+     * Syllables that have no vowel are only a part of a non-word, so they are emitted as non-words.
+     */
+    private boolean fallBackToSyllables() throws IOException {
+        syllableFallbacks++;
+        stats.syllableFallbacks++;
+        int matchStart = furthestIndex, matchEnd = fallbackStart;
+        for (int i = 0; i < potentialTokens.size(); i++) {
+            if (potentialTokens.kind(i) == PotentialTokens.MATCH) {
+                matchStart = Math.min(matchStart, potentialTokens.start(i));
+                matchEnd = Math.max(matchEnd, potentialTokens.end(i));
+            }
+        }
+        
+        totalTokens.clear();
+        int resumeIndex;
+        if (matchStart < matchEnd) {
+            addSyllables(fallbackStart, matchStart, false);
+            unsandhiFinalsAndAddLemmatizedMatchesToTotalTokens();
+            processMultiTokenLemmas();
+            resumeIndex = addSyllables(matchEnd, furthestIndex, true);
+        } else {
+            resumeIndex = addSyllables(fallbackStart, furthestIndex, true);
+        }
+        potentialTokens.clear();
+        initials = null;
+        initialsIterator = null;
+        initialCharsIterator = null;
+        storedInitials = null;
+        sandhiIndex = -1;
+        idempotentIdx = -1;
+        mergesInitials = false;
+        finalsIndex = -1;
+        bufferIndex = resumeIndex;
+        
+        if (totalTokens.isEmpty())           // only spaces and punctuation were visited
+            return incrementToken();
+        hasTokenToEmit = true;
+        emittingFallback = true;
+        if (graphOutput)
+            totalTokens.sortByStart();
+        fillTermAttributeWithFirstToken();
+        changeTypeOfToken(totalTokens.type(0));
+        changePartOfSpeech(totalTokens.pos(0));
+        setPositionLength();
+        totalTokens.removeFirst();
+        incrAtt.setPositionIncrement(1);
+        return tokenEmitted();
+    }
+    
+    /**
+     * Adds the syllables of the chars between from and to to totalTokens.
+     * 
+     * @param last  true if to is the furthest char visited
+     * @return the index to resume from: to, or the start of the last syllable if it might continue after to
+     */
+    private int addSyllables(final int from, final int to, final boolean last) throws IOException {
+        if (from >= to)
+            return Math.max(from, to);
+        final char[] span = ioBuffer.get(from, to - from);
+        SkrtSyllableTokenizer.syllabify(span, 0, span.length, syllables);
+        int nbSyllables = syllables.size();
+        int resumeIndex = to;
+        if (last && nbSyllables > 1 && syllables.end(nbSyllables - 1) == span.length && isSLPTokenChar(ioBuffer.get(to))) {
+            nbSyllables--;
+            resumeIndex = from + syllables.start(nbSyllables);
+        }
+        int nonWordStart = -1;
+        for (int i = 0; i < nbSyllables; i++) {
+            final int start = syllables.start(i);
+            final int end = syllables.end(i);
+            if (!containsVowel(span, start, end)) {
+                if (nonWordStart == -1)
+                    nonWordStart = start;
+                if (i + 1 < nbSyllables && syllables.start(i + 1) == end && !containsVowel(span, end, syllables.end(i + 1)))
+                    continue;      // the next syllable continues the non-word
+                totalTokens.addIfAbsent(span, nonWordStart, end - nonWordStart, from + nonWordStart, from + end, 0, -1);
+                nonWordStart = -1;
+            } else {
+                totalTokens.addIfAbsent(span, start, end - start, from + start, from + end, SYLLABLE_FALLBACK, -1);
             }
         }
-        for (int idx: toDelete) {
-            totalTokens.remove(idx);
+        return resumeIndex;
+    }
+    
+    private static boolean containsVowel(final char[] span, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (SlpCharClass.is(span[i], SlpCharClass.VOWEL))
+                return true;
         }
+        return false;
     }
 
     /**
-	 * Splits tokens that have a multi-token lemma.
+	 * Splits tokens that have a multi-token lemma, using the tokens compiled when its cmd was parsed.
 	 */
 	private void processMultiTokenLemmas() {
         for (int i=0; i < totalTokens.size(); i++) {
-            PreToken token = totalTokens.get(i);
-            if (token.getString().contains("⟾")) {
-                String[] rawTokens = token.getString().split("⟾");
-                LinkedList<PreToken> newTokens = new LinkedList<PreToken>();
-                for (String rawToken: rawTokens) {
-                    Integer[] metaData = token.getMetadata().clone();
-                    final int base = metaData[0];
-                    final int underscore = rawToken.indexOf('_');
-                    final int arrow = rawToken.indexOf('>');
-                    final String string = rawToken.substring(0, underscore - 1);
-                    final int pos = Integer.valueOf(rawToken.substring(underscore - 1, underscore ));
-                    final int startIdx = Integer.valueOf(rawToken.substring(underscore + 1, arrow )) - 1;
-                    final int endIdx = Integer.valueOf(rawToken.substring(arrow + 1, rawToken.length()));
-                    final int tokenLen = string.length();
-                    
-                    // replace with new start and end
-                    metaData[0] = base + startIdx;
-                    metaData[1] = base + endIdx;
-                    metaData[2] = tokenLen;
-                    metaData[4] = pos;
-                    newTokens.add(new PreToken(string, metaData));
-                }
+            final MultiTokenLemma multiToken = totalTokens.multiToken(i);
+            if (multiToken != null) {
+                final int base = totalTokens.start(i);
+                final int type = totalTokens.type(i);
+                final int textStart = totalTokens.textStart(i);
+                final int firstTextLength = multiToken.firstTextLength(totalTokens.textLength(i));
                 
-                // replace the original token with the new ones
+                // replace the original token with the new ones. its text stays in the arena
                 totalTokens.remove(i);
-                int j = 0;
-                for (PreToken newToken: newTokens) {
-                    if (!isDupe(newToken))
-                        totalTokens.add(i + j, newToken);
-                    j ++;
+                totalTokens.insertIfAbsent(i, totalTokens.arena(), textStart, firstTextLength, 
+                        base + multiToken.start(0), base + multiToken.end(0), type, multiToken.pos(0));
+                for (int j = 1; j < multiToken.size(); j++) {
+                    totalTokens.insertIfAbsent(i + j, multiToken.text(j), base + multiToken.start(j), 
+                            base + multiToken.end(j), type, multiToken.pos(j));
                 }
             }
         }
     }
 
-    TreeSet<String> reconstructLemmas(String cmd, String inflected) throws NumberFormatException, IOException {
+    /**
+     * @return the class of the cmd at cmdIndex in the Trie, null if it was not found yet
+     */
+    private CmdClass knownClassOfCmd(int cmdIndex) {
+        return cmdIndex >= 0 && cmdIndex < cmdClasses.length ? cmdClasses[cmdIndex] : null;
+    }
+    
+    /**
+     * @return the class of the cmd at cmdIndex in the Trie, worked out from its parse the first time it is found
+     */
+    private CmdClass classOfCmd(int cmdIndex, String cmd, String inflected) {
+        CmdClass cmdClass = knownClassOfCmd(cmdIndex);
+        if (cmdClass == null) {
+            if (cmdIndex >= cmdClasses.length)
+                cmdClasses = ArrayUtil.grow(cmdClasses, cmdIndex + 1);
+            cmdClass = CmdClass.of(CmdParser.parseCached(inflected, cmd));
+            cmdClasses[cmdIndex] = cmdClass;
+        }
+        return cmdClass;
+    }
+    
+    /**
+     * Same as {@link #reconstructLemmas(String, String, int)} for a {@link CmdClass#FINALS_ONLY} cmd:
+     * the lemmas of the identity diffs, and the ones of the other diffs if the final of inflected
+     * is in the text (ignoring spaces and hyphens), which is all the sandhi matcher would find.
+     */
+    private TreeMap<String, MultiTokenLemma> lemmatizeFinals(CmdClass cmdClass, String inflected, int tokenEndIdx) throws IOException {
+        final TreeMap<String, MultiTokenLemma> totalLemmas = new TreeMap<String, MultiTokenLemma>();
+        for (int pos: cmdClass.identityPos) {
+            totalLemmas.put(inflected + "_" + pos, null);
+        }
+        int idx = tokenEndIdx - 1;
+        int c = ioBuffer.get(idx++);
+        while (isValidCharWithinSandhi(c))
+            c = ioBuffer.get(idx++);
+        int idempotentGroups = 0;
+        if (c == inflected.charAt(inflected.length() - 1)) {
+            for (DiffStruct diff: cmdClass.finalDiffs) {
+                stats.countSandhi(diff.sandhiType);
+                final String lemma = inflected.substring(0, inflected.length()-diff.nbToDelete)+diff.toAdd+"_"+diff.pos;
+                totalLemmas.put(lemma, diff.multiToken);
+                if (diff.idempotentGroup > 0)
+                    idempotentGroups |= CmdParser.idempotentGroupBit(diff.idempotentGroup);
+            }
+        }
+        addIdempotentInitial(idempotentGroups, inflected, tokenEndIdx);
+        return totalLemmas;
+    }
+
+    TreeMap<String, MultiTokenLemma> reconstructLemmas(String cmd, String inflected) throws NumberFormatException, IOException {
 	    return reconstructLemmas(cmd, inflected, -1);
 	}
 
@@ -1100,74 +1456,95 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	 * @param inflected the inflected word to be lemmatized
 	 * @param tokenEndIdx 
 	 *
-	 * @return the list of all the possible lemmas given the current context
+	 * @return all the possible lemmas given the current context, with their tokens if they are multi-token lemmas
 	 */
-	TreeSet<String> reconstructLemmas(String cmd, String inflected, int tokenEndIdx) throws NumberFormatException, IOException {
-		TreeSet<String> totalLemmas = new TreeSet<String>();	// uses a Set to avoid duplicates
-		CmdParser parser = new CmdParser();
+	TreeMap<String, MultiTokenLemma> reconstructLemmas(String cmd, String inflected, int tokenEndIdx) throws NumberFormatException, IOException {
+		TreeMap<String, MultiTokenLemma> totalLemmas = new TreeMap<String, MultiTokenLemma>();	// uses a Map to avoid duplicates
 		
 		if (tokenEndIdx == -1) tokenEndIdx = bufferIndex;
 		
-		// (a hack needed because we don't want to generate the idempotent sandhis of ALL sandhis in the cmd. 
-		//  we only need those from the sandhis that were applied)
-		// a list of two elements,
-		// the first contains all the contexts from the sandhis of the cmd
-		// the second will contain all the contexts from the idempotent sandhis from the sandhis that fit in the current context.
-		List<TreeMap<String, TreeSet<DiffStruct>>> diffLists = Arrays.asList(parser.parse(inflected, cmd), new TreeMap<String, TreeSet<DiffStruct>>());
+		// the parsed cmd is shared through CmdParser's cache and must not be modified
+		final ParsedCmd parsed = CmdParser.parseCached(inflected, cmd);
+		// the sandhis of the cmd are all looked for at once
+		sandhiMatches.reset(parsed.matcher, ioBuffer, tokenEndIdx - 1);
+		// the idempotent groups of the sandhis that fit in the current context
+		// (we don't want to look for the idempotent sandhis of ALL sandhis in the cmd)
+		int idempotentGroups = 0;
 		
-		for (TreeMap<String, TreeSet<DiffStruct>> diffList: diffLists) {
-	        for (Entry<String, TreeSet<DiffStruct>> current: diffList.entrySet()) {
-	            String sandhied = current.getKey();
-	            TreeSet<DiffStruct> diffs = current.getValue();
-	            boolean foundAsandhi = false; 
-	            for (DiffStruct diff: diffs) {
-	                if (diff.sandhiType == 0 && diff.toAdd.isEmpty() && diff.nbToDelete == 0 && diff.initial.isEmpty()) {
-	                    final String lemma = inflected.substring(0, inflected.length()-diff.nbToDelete)+diff.toAdd+"_"+diff.pos;
-                        totalLemmas.add(lemma);
-	                    continue;   // there is no sandhi nor, so we skip this diff
-	                }
-	                if (containsSandhiedCombination(ioBuffer, tokenEndIdx - 1, sandhied, diff.sandhiType)) {
-	                    foundAsandhi = true;
-	                    if (!diff.initial.isEmpty() || diff.idempotentGroup == -2) {
-	                        if (initials == null) {
-	                            initials = new LinkedHashMap<String, Integer>();
-	                            storedInitials = new HashSet<String>();
-	                        }
-	                        if (diff.idempotentGroup == -2) {
-	                            initials.put(diff.initial, 1);
-	                            idempotentIdx = bufferIndex + 1;
-	                        } else {
-	                            initials.put(diff.initial, -1);
-	                        }
-	                        storedInitials.add(diff.initial);
-	                    }
-	                    
-	                    if (diff.idempotentGroup != -2) {
-	                        final String lemma = inflected.substring(0, inflected.length()-diff.nbToDelete)+diff.toAdd+"_"+diff.pos;
-                            totalLemmas.add(lemma);
-	                    }
-	                    
-	                    if (diff.idempotentGroup > 0) {  // filters groups -1 and 0 (no sandhi)
-	                        
-	                        TreeMap<String, TreeSet<DiffStruct>> idemDiffList = diffLists.get(1);
-	                        
-	                        final HashMap<String, String> idemSandhis = parser.getIdemSandhied(inflected, diff.idempotentGroup);
-	                        for (Entry<String, String> idem: idemSandhis.entrySet()) {
-                                final String initial = idem.getKey().substring(idem.getKey().length()-1);
-                                TreeSet<DiffStruct> structs = new TreeSet<DiffStruct>();
-                                structs.add(new DiffStruct(0, null, initial, 10, diff.pos, -2));
-                                
-                                idemDiffList.put(idem.getKey(), structs);
-	                        }
-	                        diffLists.set(1, idemDiffList);
-	                    }
-	                }
-	            }
-	            if (foundAsandhi) break;
-	        }
+		int key = -1;
+		for (Entry<String, SortedSet<DiffStruct>> current: parsed.sandhis.entrySet()) {
+		    key++;
+		    String sandhied = current.getKey();
+		    SortedSet<DiffStruct> diffs = current.getValue();
+		    boolean foundAsandhi = false; 
+		    for (DiffStruct diff: diffs) {
+		        if (CmdClass.isIdentity(diff)) {
+		            final String lemma = inflected.substring(0, inflected.length()-diff.nbToDelete)+diff.toAdd+"_"+diff.pos;
+		            totalLemmas.put(lemma, diff.multiToken);
+		            continue;   // there is no sandhi nor, so we skip this diff
+		        }
+		        if (sandhiMatches.contains(key, diff.sandhiType)) {
+		            foundAsandhi = true;
+		            stats.countSandhi(diff.sandhiType);
+		            if (diff.sandhiType == 1 && sandhied.length() == 1)
+		                mergesInitials = true;     // a vowel sandhi merges the final and the initial
+		            if (!diff.initial.isEmpty()) {
+		                addInitial(diff.initial, -1);
+		            }
+		            final String lemma = inflected.substring(0, inflected.length()-diff.nbToDelete)+diff.toAdd+"_"+diff.pos;
+		            totalLemmas.put(lemma, diff.multiToken);
+		            
+		            if (diff.idempotentGroup > 0) {  // filters groups -1 and 0 (no sandhi)
+		                idempotentGroups |= CmdParser.idempotentGroupBit(diff.idempotentGroup);
+		            }
+		        }
+		    }
+		    if (foundAsandhi) break;
 		}
+		
+		addIdempotentInitial(idempotentGroups, inflected, tokenEndIdx);
 		return totalLemmas;
 	}
+	
+	/* the idempotent sandhis: the final of the inflected form followed by an initial of one of the groups */
+	private void addIdempotentInitial(int idempotentGroups, String inflected, int tokenEndIdx) throws IOException {
+	    if (idempotentGroups != 0) {
+	        final int initial = idempotentInitial(ioBuffer, tokenEndIdx - 1, inflected.charAt(inflected.length() - 1), idempotentGroups);
+	        if (initial != -1) {
+	            addInitial(String.valueOf((char) initial), 1);
+	            idempotentIdx = bufferIndex + 1;
+	        }
+	    }
+	}
+
+	private void addInitial(String initial, int value) {
+	    if (initials == null) {
+	        initials = new LinkedHashMap<String, Integer>();
+	        storedInitials = new HashSet<String>();
+	    }
+	    initials.put(initial, value);
+	    storedInitials.add(initial);
+	}
+	
+	/**
+	 * Same as {@link #containsSandhiedCombination(CharWindow, int, String, int)} for the final
+	 * followed by each initial of the idempotent groups (all the initials are single chars).
+	 * 
+	 * @param groups  the idempotent groups, as given by {@link CmdParser#idempotentGroupBit(int)}
+	 * @return the initial found after the final, -1 if there is none
+	 */
+	static int idempotentInitial(CharWindow ioBuffer, int bufferIndex, char sandhiedFinal, int groups) throws IOException {
+	    int pos = bufferIndex;
+	    int c = ioBuffer.get(pos++);
+	    while (isValidCharWithinSandhi(c))
+	        c = ioBuffer.get(pos++);
+	    if (c != sandhiedFinal)
+	        return -1;
+	    c = ioBuffer.get(pos++);
+	    while (isValidCharWithinSandhi(c))
+	        c = ioBuffer.get(pos++);
+	    return c != -1 && SlpCharClass.isIdempotentInitial(c, groups) ? c : -1;
+	}
 
 	/**
 	 * Tells whether sandhied could be found between the two words.
@@ -1175,58 +1552,61 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	 * <p>
 	 * See SandhiedCombinationTests for how these figures were obtained
 	 *
-	 * @param ioBuffer: is given as parameter for the tests
 	 * @return true if sandhied is one of the combinations; false otherwise
 	 */
-	static boolean containsSandhiedCombination(RollingCharBuffer ioBuffer, int bufferIndex, String sandhied, int sandhiType) throws IOException {
+	static boolean containsSandhiedCombination(CharWindow ioBuffer, int bufferIndex, String sandhied, int sandhiType) throws IOException {
+	    final int start = sandhiStart(sandhiType);
+	    return start != NO_SANDHI_START && isSandhiedCombination(ioBuffer, bufferIndex, sandhied, start);
+	}
+
+	private static final int NO_SANDHI_START = Integer.MIN_VALUE;
+
+	/**
+	 * @return where the sandhied string starts relative to the last char of the token,
+	 *         or NO_SANDHI_START for an unknown sandhi type
+	 */
+	static int sandhiStart(int sandhiType) {
 		switch(sandhiType) {
 		
 		case 0:
-		    return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // no sandhi, but lemmatization required
+		    return 0;    // no sandhi, but lemmatization required
 		
-		case 1:																			
-			if (isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0)) {     // vowel sandhi
-	            if (sandhied.length() == 1) {
-	                mergesInitials = true;
-	            }
-	            return true;
-			} else {
-			    return false;
-			}
+		case 1:
+		    return 0;    // vowel sandhi
 
 		case 2:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // consonant sandhi 1
+			return 0;    // consonant sandhi 1
 
 		case 3:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, -1);   // consonant sandhi 1 vowels
+			return -1;   // consonant sandhi 1 vowels
 			
 		case 4:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // consonant sandhi 2
+			return 0;    // consonant sandhi 2
 
 		case 5:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, -1);   // visarga sandhi
+			return -1;   // visarga sandhi
 
 		case 6:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, -1);   // visarga sandhi 2
+			return -1;   // visarga sandhi 2
 			
 		case 7:
 			// (consonant clusters are always reduced to the first consonant)
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // absolute finals sandhi
+			return 0;    // absolute finals sandhi
 
 		case 8:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // "cC"-words sandhi
+			return 0;    // "cC"-words sandhi
 
 		case 9:
-			return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, -4);   // special sandhi: "punar"
+			return -4;   // special sandhi: "punar"
 			
 		case 10:
-		    return isSandhiedCombination(ioBuffer, bufferIndex, sandhied, 0);    // idempotent sandhi
+		    return 0;    // idempotent sandhi
 		default:
-			return false;
+			return NO_SANDHI_START;
 		}
 	}
 
-	static boolean isSandhiedCombination(RollingCharBuffer ioBuffer, int bufferIndex, String sandhied, int start) throws IOException {
+	static boolean isSandhiedCombination(CharWindow ioBuffer, int bufferIndex, String sandhied, int start) throws IOException {
         int j = 0;
         int nbIgnoredSpaces = 0;
         while (j < sandhied.length()) {
@@ -1243,7 +1623,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
         }
 		return true;
 	}
-	
+
 	private void decrement(StringBuilder buffer) {
 	    buffer.setLength(buffer.length() - charCount);
 	}
@@ -1253,9 +1633,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
 			
 			/* cleanup potentialTokens */
 			for (String key: storedInitials) {
-				 if (potentialTokens.containsKey(key)) {
-					 potentialTokens.remove(key);
-				 }
+				 potentialTokens.remove(key);
 				 if (tokenBuffer.toString().equals(key)) {
 				     tokenBuffer.setLength(0);
 				 }
@@ -1277,9 +1655,9 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	}
 
 	private void finalizeSettingTermAttribute() {
-		int initialOffset = correctOffset(tokenStart);
+		int initialOffset = offset(tokenStart);
 		if (initialOffset <= finalOffset) { initialOffset = finalOffset + 1; }
-	    finalOffset = correctOffset(tokenStart + tokenBuffer.length());
+	    finalOffset = offset(tokenStart + tokenBuffer.length());
 	    if (initialOffset < 0) {
 	        logger.warn("initialOffset incorrect: {}-{} in {}", initialOffset, finalOffset, tokenBuffer);
 	        initialOffset = 0;
@@ -1295,42 +1673,98 @@ public final class SkrtWordTokenizer extends Tokenizer {
         } catch (Exception ex) {
             logger.error("SkrtWordTokenizer.finalizeSettingTermAttribute error on term: {}; message {}", tokenBuffer, ex.getMessage());
         }
-		termAtt.setEmpty().append(tokenBuffer.toString());
+		termAtt.setEmpty().append(tokenBuffer);
+	}
+
+	/* the offset in the whole input of an index of ioBuffer */
+	private int offset(int index) {
+	    return correctOffset(index) + baseOffset;
+	}
+
+	/* emits the tokens of the sentences of the input, found in the cache or tokenized by cacheWorker */
+	private boolean incrementCachedToken() throws IOException {
+	    while (sentence == null || sentenceToken == sentence.size) {
+	        final int length = sentences.read(input, 1);
+	        if (length == 0) {
+	            return false;
+	        }
+	        final int start = sentences.offset();
+	        sentence = cacheWorker.tokenize(sentences.take(length), start, 
+	                new SkrtParallelWordTokenizer.Settings(graphOutput, maxVisitedChars), cache);
+	        sentenceToken = 0;
+	        syllableFallbacks += sentence.fallbacks;
+	    }
+	    final int i = sentenceToken++;
+	    termAtt.copyBuffer(sentence.arena, sentence.textStarts[i], sentence.textLengths[i]);
+	    offsetAtt.setOffset(offset(sentence.start + sentence.starts[i]), offset(sentence.start + sentence.ends[i]));
+	    typeAtt.setType(sentence.types[i]);
+	    posAtt.setPartOfSpeech(sentence.poss[i]);
+	    incrAtt.setPositionIncrement(sentence.posIncs[i]);
+	    posLenAtt.setPositionLength(sentence.posLens[i]);
+	    stats.countToken(sentence.tokenTypes[i]);
+	    return tokenEmitted();
+	}
+	
+	/**
+	 * @param type  the type of a token, as set by {@link #changeTypeOfToken(int)}
+	 * @return its index in {@link SegmentationStats}, or -1
+	 */
+	static int tokenType(String type) {
+	    for (int t = 0; t < TOKEN_TYPES.length; t++) {
+	        if (TOKEN_TYPES[t].equals(type))
+	            return t;
+	    }
+	    return -1;
+	}
+	
+	private boolean tokenEmitted() {
+	    listener.tokenEmitted(termAtt, offsetAtt.startOffset(), offsetAtt.endOffset(), typeAtt.type());
+	    return true;
 	}
 
 	private void changeTypeOfToken(int t) {
+	    stats.countToken(t);
 		if (t == 0) {  
 			typeAtt.setType("non-word");
 		} else if (t == 1) {
 		    typeAtt.setType("word");
 		} else if (t == 2) {
             typeAtt.setType("lemma");
+        } else if (t == SYLLABLE_FALLBACK) {
+            typeAtt.setType("syllable");
         }
 	}
 
 	private void changePartOfSpeech(int t) {
+	    posAtt.setPartOfSpeech(partOfSpeech(t));
+	}
+	
+	/**
+	 * @param t the POS code found in the Trie
+	 * @return the corresponding PartOfSpeech
+	 */
+	static PartOfSpeech partOfSpeech(int t) {
 	    if (t == 0) {
-	        posAtt.setPartOfSpeech(PartOfSpeech.Indeclinable);
+	        return PartOfSpeech.Indeclinable;
 	    } else if (t == 1) {
-	        posAtt.setPartOfSpeech(PartOfSpeech.Noun);
+	        return PartOfSpeech.Noun;
 	    } else if (t == 2) {
-	        posAtt.setPartOfSpeech(PartOfSpeech.Pronoun);
+	        return PartOfSpeech.Pronoun;
         } else if (t == 3) {
-            posAtt.setPartOfSpeech(PartOfSpeech.Verb);
+            return PartOfSpeech.Verb;
         } else if (t == 4) {
-            posAtt.setPartOfSpeech(PartOfSpeech.Preposition);
+            return PartOfSpeech.Preposition;
         } else {
-            posAtt.setPartOfSpeech(PartOfSpeech.Unknown);
+            return PartOfSpeech.Unknown;
         }
 	}
 	
-	private void fillTermAttributeWith(String string, Integer[] metaData) {
-		termAtt.setEmpty().append(string);								// add the token string
-		termAtt.setLength(metaData[2]);									// declare its size
-		int initialOffset = correctOffset(metaData[0]);
+	private void fillTermAttributeWithFirstToken() {
+		termAtt.copyBuffer(totalTokens.arena(), totalTokens.textStart(0), totalTokens.textLength(0));	// add the token string
+		int initialOffset = offset(totalTokens.start(0));
 		// not sure this is necessary:
 		//if (initialOffset <= finalOffset) { initialOffset = finalOffset; }
-		finalOffset = correctOffset(metaData[1]);						// get final offset
+		finalOffset = offset(totalTokens.end(0));						// get final offset
         if (initialOffset < 0) {
             logger.warn("initialOffset incorrect. start: ", initialOffset, "end: ", finalOffset, 
                     "string: ", tokenBuffer);
@@ -1352,6 +1786,13 @@ public final class SkrtWordTokenizer extends Tokenizer {
         }
 	}
 
+	/* in graph mode, sets the position length of the first token of totalTokens, that is about to be emitted */
+	private void setPositionLength() {
+	    lastEmittedStart = totalTokens.start(0);
+	    if (graphOutput)
+	        posLenAtt.setPositionLength(totalTokens.positionLength(0));
+	}
+	
 	private void ifThereAreInitialsFillIterator() {
 		if (initials != null && !initials.isEmpty()) {
 			initialsIterator = initials.entrySet().iterator();		// one sandhi can yield many unsandhied initials
@@ -1373,17 +1814,22 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		if (cmd != null) {
 		    String token = tokenBuffer.toString();
 		    if (!token.isEmpty()) {
-		        if (debug) System.out.println("form found: " + token + "\n");
-	            final Set<String> lemmas = reconstructLemmas(cmd, token);
+		        final CmdClass cmdClass = classOfCmd(foundMatchCmdIndex, cmd, token);
+		        if (cmdClass.kind == CmdClass.IDENTITY) {
+		            for (int pos: cmdClass.identityPos) {
+		                totalTokens.addIfAbsent(token, tokenStart, tokenStart + tokenBuffer.length(), 2, pos, null);
+		            }
+		            return true;
+		        }
+	            final Map<String, MultiTokenLemma> lemmas = cmdClass.kind == CmdClass.FINALS_ONLY ? 
+	                    lemmatizeFinals(cmdClass, token, bufferIndex) : reconstructLemmas(cmd, token);
 	            if (lemmas.size() != 0) {
-	                for (String l: lemmas) {
+	                for (Entry<String, MultiTokenLemma> entry: lemmas.entrySet()) {
+	                    final String l = entry.getKey();
 	                    final int underscore = l.lastIndexOf('_');
 	                    final String lemma = l.substring(0, underscore);
 	                    final int pos = Integer.valueOf(l.substring(underscore + 1));
-	                    final PreToken newToken = new PreToken(lemma, 
-	                            new Integer[] {tokenStart, tokenStart + tokenBuffer.length(), lemma.length(), 2, pos});
-	                    if (!isDupe(newToken))
-	                        totalTokens.add(newToken);
+	                    totalTokens.addIfAbsent(lemma, tokenStart, tokenStart + tokenBuffer.length(), 2, pos, entry.getValue());
 	                    // use same start-end indices since all are from the same inflected form)
 	                }
 	                return true;
@@ -1395,20 +1841,15 @@ public final class SkrtWordTokenizer extends Tokenizer {
 
 	private boolean ifThereIsNonwordAddItToTotalTokens() {
 		boolean containsNonWord = false;
-	    final String nonWord = nonWordBuffer.toString();
-		if (nonWord.length() > 0) {
-		    final PreToken newToken = new PreToken(nonWord,
-		            new Integer[] {nonWordStart, nonWordStart + nonWordBuffer.length(), nonWord.length(), 0, -1});
-		    if (!isDupe(newToken))
-                totalTokens.add(newToken);
+		if (nonWordBuffer.length() > 0) {
+		    totalTokens.addIfAbsent(nonWordBuffer, nonWordStart, nonWordStart + nonWordBuffer.length(), 0, -1);
 			// ignore all potential tokens. add the non-word with sandhied initials
 			containsNonWord = true;
 		}
-		for (Entry<String, Integer[]> potential: potentialTokens.entrySet()) {
-		    if (potential.getValue()[3] == 0) {
-		        final PreToken newToken = new PreToken(potential.getKey(), potential.getValue());
-	            if (!isDupe(newToken)) {
-	                totalTokens.add(newToken);
+		for (int i = 0; i < potentialTokens.size(); i++) {
+		    if (potentialTokens.kind(i) == PotentialTokens.NONWORD) {
+	            if (totalTokens.addIfAbsent(potentialTokens.arena(), potentialTokens.textStart(i), potentialTokens.textLength(i), 
+	                    potentialTokens.start(i), potentialTokens.end(i), 0, -1)) {
 	                containsNonWord = true;
 	            }
 		    }
@@ -1417,50 +1858,43 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	}
 
 	private void unsandhiFinalsAndAddLemmatizedMatchesToTotalTokens() throws NumberFormatException, IOException {
-		for (Entry<String, Integer[]> entry: potentialTokens.entrySet()) {
-			final String key = entry.getKey();
-			final Integer[] value = entry.getValue();
-			if (debug) System.out.println("form found: " + key);
-			if (value[3] == 1) {
-				String cmd = scanner.getCommandVal(value[4]);
-				final Set<String> lemmas = reconstructLemmas(cmd, key, value[1]);
+		for (int i = 0; i < potentialTokens.size(); i++) {
+			if (potentialTokens.kind(i) == PotentialTokens.MATCH) {
+			    final int start = potentialTokens.start(i);
+			    final int end = potentialTokens.end(i);
+				String cmd = scanner.getCommandVal(potentialTokens.cmdIndex(i));
+				CmdClass cmdClass = knownClassOfCmd(potentialTokens.cmdIndex(i));
+				if (cmdClass == null)
+				    cmdClass = classOfCmd(potentialTokens.cmdIndex(i), cmd, potentialTokens.text(i));
+				if (cmdClass.kind == CmdClass.IDENTITY) {
+				    for (int pos: cmdClass.identityPos) {
+				        totalTokens.addIfAbsent(potentialTokens.arena(), potentialTokens.textStart(i), potentialTokens.textLength(i), 
+				                start, end, 2, pos);
+				    }
+				    continue;
+				}
+				final String inflected = potentialTokens.text(i);
+				final Map<String, MultiTokenLemma> lemmas = cmdClass.kind == CmdClass.FINALS_ONLY ? 
+				        lemmatizeFinals(cmdClass, inflected, end) : reconstructLemmas(cmd, inflected, end);
 				if (lemmas.size() != 0) {
-					for (String l: lemmas) {	// multiple lemmas are possible: finals remain unanalyzed
+					for (Entry<String, MultiTokenLemma> entry: lemmas.entrySet()) {	// multiple lemmas are possible: finals remain unanalyzed
+					    final String l = entry.getKey();
 					    final int underscore = l.lastIndexOf('_');
 	                    final String lemma = l.substring(0, underscore);
 	                    final int pos = Integer.valueOf(l.substring(underscore + 1));
-					    final PreToken newToken = new PreToken(lemma, 
-					            new Integer[] {value[0], value[1], lemma.length(), 2, pos});
-					    if (!isDupe(newToken))
-	                        totalTokens.add(newToken);
+					    totalTokens.addIfAbsent(lemma, start, end, 2, pos, entry.getValue());
 						// use same indices for all (all are from the same inflected form)
 					}
 				} else {	// there is no applicable sandhi. the form is returned as-is.
 					final int pos = Integer.valueOf(cmd.substring(cmd.lastIndexOf('#')+1));
-					final PreToken newToken = new PreToken(key, new Integer[] {value[0], value[1], value[2], 1, pos});
-				    if (!isDupe(newToken))
-				        totalTokens.add(newToken);
+					totalTokens.addIfAbsent(potentialTokens.arena(), potentialTokens.textStart(i), potentialTokens.textLength(i), 
+					        start, end, 1, pos);
 				    mergesInitials = false;
 				}
-			} else {
-			    if (debug) System.out.println("can't be lemmatized\n");
 			}
 		}
 	}
 
-	private boolean isDupe(PreToken newToken) {
-        // determine if newToken already exists. 
-	    // this looks for equality in both metadata and token string
-	    boolean isDupe = false;
-        int idx = 0;
-        while (!isDupe && idx < totalTokens.size()) {
-            if (newToken.compareTo(totalTokens.get(idx)) == 0) {
-                isDupe = true;
-            }
-            idx ++;
-        }
-        return isDupe;
-    }
 
     private void cutOffTokenFromNonWordBuffer() {
 		int newSize = nonWordBuffer.length() - tokenBuffer.length();
@@ -1497,6 +1931,7 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		foundMatch = (cmdIndex >= 0);
 		if (foundMatch) {
 			foundMatchCmdIndex = cmdIndex;
+			listener.trieMatch(tokenStart, bufferIndex, cmdIndex);
 			foundNonMaxMatch = storeNonMaxMatchState();
 			if (storedNoMatchState == -1) {
 			    storeNoMatchState();
@@ -1521,6 +1956,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
         tokenStart = noMatchTokenStart;
         currentRow = rootRow;
         foundMatchCmdIndex = noMatchFoundMatchCmdIndex;
+        listener.stateRestored(SegmentationListener.State.NO_MATCH, bufferIndex);
+        stats.stateRestorations++;
     }
     
 	private boolean storeNonMaxMatchState() {
@@ -1542,6 +1979,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
         foundMatchCmdIndex = nonMaxFoundMatchCmdIndex;
         if (nonWordBuffer.length() > nonMaxNonWordLength)
             nonWordBuffer.setLength(nonMaxNonWordLength);
+        listener.stateRestored(SegmentationListener.State.NON_MAX_MATCH, bufferIndex);
+        stats.stateRestorations++;
     }
 	
     private void storeCurrentState() {
@@ -1558,6 +1997,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
         currentRow = rootRow;
         tokenBuffer.setLength(0);
         tokenBuffer.append(initialsOrigBuffer);
+        listener.stateRestored(SegmentationListener.State.INITIALS, bufferIndex);
+        stats.stateRestorations++;
     }
     
     private void reinitializeState() {
@@ -1598,16 +2039,13 @@ public final class SkrtWordTokenizer extends Tokenizer {
 
 	private void addNonwordToPotentialTokensIfThereIsOne() {
 		if (nonWordBuffer.length() != 0 && nonWordStart < tokenStart) {
-		    potentialTokens.put(nonWordBuffer.toString(),  
-	                new Integer[] {nonWordStart, nonWordStart + nonWordBuffer.length(), nonWordBuffer.length(), 0, -1});
+		    potentialTokens.put(nonWordBuffer, nonWordStart, nonWordStart + nonWordBuffer.length(), PotentialTokens.NONWORD, -1);
 		}
 	}
 
 	private boolean addFoundTokenToPotentialTokensIfThereIsOne() {
 		if (tokenBuffer.length() > 0) {																// avoid empty tokens
-			final String potentialToken = tokenBuffer.toString();
-			potentialTokens.put(potentialToken,  
-			        new Integer[] {tokenStart, tokenStart + tokenBuffer.length(), potentialToken.length(), 1, foundMatchCmdIndex});
+			potentialTokens.put(tokenBuffer, tokenStart, tokenStart + tokenBuffer.length(), PotentialTokens.MATCH, foundMatchCmdIndex);
 			return true;
 		}
 		return false;
@@ -1647,22 +2085,23 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	}
 
 	private void addExtraToken() {
-		if (totalTokens.peekFirst() != null) {
-			final PreToken nextToken = totalTokens.removeFirst();
-			final Integer[] metaData = nextToken.getMetadata();
-			termAtt.setEmpty().append(nextToken.getString());
-			changePartOfSpeech(metaData[4]);
-			changeTypeOfToken(metaData[3]);
-			termAtt.setLength(metaData[2]);
-			int initialOffset = correctOffset(metaData[0]);
+		if (!totalTokens.isEmpty()) {
+			termAtt.copyBuffer(totalTokens.arena(), totalTokens.textStart(0), totalTokens.textLength(0));
+			changePartOfSpeech(totalTokens.pos(0));
+			changeTypeOfToken(totalTokens.type(0));
+			int initialOffset = offset(totalTokens.start(0));
 			// not sure this is necessary:
 			// if (initialOffset <= finalOffset) { initialOffset = finalOffset; }
-			finalOffset = correctOffset(metaData[1]);
+			finalOffset = offset(totalTokens.end(0));
+			final boolean samePosition = totalTokens.start(0) == lastEmittedStart;
+			setPositionLength();
+			totalTokens.removeFirst();
 			if (initialOffset < 0) {
 			    logger.warn("initialOffset incorrect: {}-{} in {}", initialOffset, finalOffset, tokenBuffer);
 			    initialOffset = 0;
 		    }
-	        if (initialOffset < lastStartOffset) { 
+	        // in graph mode, the tokens are sorted by start and keep the offsets of their matches
+	        if (!graphOutput && initialOffset < lastStartOffset) { 
 	            initialOffset = lastStartOffset; 
 	        }
 	        lastStartOffset = initialOffset;
@@ -1675,7 +2114,11 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	        } catch (Exception ex) {
 	            logger.error("SkrtWordTokenizer.addExtraToken error on term: {}; messsage: ", tokenBuffer, ex.getMessage());
 	        }
-			incrAtt.setPositionIncrement(0);
+			if (graphOutput) {
+			    incrAtt.setPositionIncrement(samePosition ? 0 : 1);
+			} else {
+			    incrAtt.setPositionIncrement(emittingFallback && !samePosition ? 1 : 0);    // syllables follow each other and the words around them
+			}
 		} else {
 			hasTokenToEmit = false;
 		}
@@ -1697,11 +2140,11 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	final private boolean nonWordPrecedes() {
 	    int nonWordStartIdx = -1;
 	    int wordStartIdx = -1;
-	    for (Integer[] value: potentialTokens.values()) {
-	        if (value[3] == 0) {
-	            nonWordStartIdx = value[0];
-	        } else if (value[3] == 1) {
-	            wordStartIdx = value[0];
+	    for (int i = 0; i < potentialTokens.size(); i++) {
+	        if (potentialTokens.kind(i) == PotentialTokens.NONWORD) {
+	            nonWordStartIdx = potentialTokens.start(i);
+	        } else {
+	            wordStartIdx = potentialTokens.start(i);
 	        }
 	    }
 	    return nonWordStartIdx != -1 && wordStartIdx > nonWordStartIdx;
@@ -1724,8 +2167,33 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	    return tokenBuffer.length() == 1 && storedInitials != null && storedInitials.contains(tokenBuffer.toString());
 	}
 	
+	/**
+	 * Moves bufferIndex beyond the non-SLP characters that follow a non-SLP character.
+	 * <p>
+	 * Called when the loop of incrementToken() would do nothing else with them than 
+	 * reporting them: no initial to apply, no sandhi span and no non-word to end.
+	 * Spaces and hyphens are left to the loop, as they can be part of a sandhi.
+	 */
+	private void skipNonSLPRun() throws IOException {
+	    int c = ioBuffer.get(bufferIndex);
+	    while (isSkippableNonSLP(c)) {
+	        listener.charConsumed(bufferIndex, c);
+	        stats.visitedChars++;
+	        bufferIndex += Character.charCount(c);
+	        c = ioBuffer.get(bufferIndex);
+	    }
+	}
+	
+	/** 
+	 * @return true for the chars the loop of incrementToken() has nothing to do with: 
+	 *          all but the SLP chars, spaces and hyphens 
+	 */
+	final static boolean isSkippableNonSLP(int c) {
+	    return c >= 0 && !SlpCharClass.is(c, SlpCharClass.SLP | SlpCharClass.WITHIN_SANDHI);
+	}
+	
 	final private boolean isSLPTokenChar(int c) {
-	    return SkrtSyllableTokenizer.charType.get(c) != null;
+	    return SlpCharClass.isSLP(c);
 		// SLP modifiers are excluded because they are not considered to be part of a word/token. 
 		// TODO: If a modifier occurs between two sandhied words, second word won't be considered sandhied
 	}
@@ -1734,13 +2202,12 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		return finalsIndex + 1 == bufferIndex && isValidCharWithinSandhi(c);
 	}
 	
-	final private static boolean isValidCharWithinSandhi(int c) {
-	    return c == ' ' || c == '-';
+	final static boolean isValidCharWithinSandhi(int c) {
+	    return SlpCharClass.isValidWithinSandhi(c);
 	}
 	
 	final private boolean isSLPModifier(int c) {
-	    final Integer type = SkrtSyllableTokenizer.charType.get(c);
-		return type != null && type == SkrtSyllableTokenizer.MODIFIER;
+		return SlpCharClass.isModifier(c);
 	}
 	
 	final private boolean thereIsNoTokenAndNoNonword() {
@@ -1814,6 +2281,9 @@ public final class SkrtWordTokenizer extends Tokenizer {
 	@Override
 	public final void end() throws IOException {
 		super.end();
+		if (readsSentences) {
+		    finalOffset = offset(sentences.end(input));
+		}
         if (finalOffset < 0) {
             logger.warn("finalOffset incorrect: {}", finalOffset);
             finalOffset = 0;
@@ -1823,6 +2293,14 @@ public final class SkrtWordTokenizer extends Tokenizer {
         } catch (Exception ex) {
             logger.error("SkrtWordTokenizer.end error on term: {}; message: {}", tokenBuffer, ex.getMessage());
         }
+        if (statsPending) {
+            statsPending = false;
+            if (publishesStats) {
+                SegmentationMetrics.get().add(stats);
+                if (hasAttribute(SegmentationStatsAttribute.class))
+                    getAttribute(SegmentationStatsAttribute.class).setStats(stats);
+            }
+        }
 	}
 
 	@Override
@@ -1831,7 +2309,8 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		bufferIndex = 0;
 		finalOffset = 0;
 		ioBuffer.reset(input);		// make sure to reset the IO buffer!!
-		totalTokens = new LinkedList<PreToken>();
+		totalTokens.clear();
+		potentialTokens.clear();
 		initialCharsIterator = null;
 		sandhiIndex = -1;
 		initials = null;
@@ -1842,33 +2321,23 @@ public final class SkrtWordTokenizer extends Tokenizer {
 		hasTokenToEmit = false;	// for emitting multiple tokens
 		idempotentIdx = -1;
 		lastStartOffset = 0;
-	}
-	
-	public static class PreToken implements Comparable<PreToken>{
-	    String tokenString;
-	    Integer[] tokenMetaData;
-	    
-	    public PreToken(String string, Integer[] metaData) {
-	        this.tokenString = string;
-	        this.tokenMetaData = metaData;
-	    }
-	    
-	    public String getString() {
-	        return tokenString;
-	    }
-	    
-	    public Integer[] getMetadata() {
-	        return tokenMetaData;
-	    }
-
-        @Override
-        public int compareTo(PreToken o) {
-            boolean meta = Arrays.equals(tokenMetaData, o.tokenMetaData);
-            boolean str = tokenString.equals(o.tokenString);
-            if (meta && str) {
-                return 0;
-            }
-            return 1;
-        }
+		stats.clear();
+		statsPending = true;
+		baseOffset = 0;
+		sentence = null;
+		readsSentences = cache != null;
+		if (readsSentences) {
+		    sentences.reset();
+		}
+		if (resumeFrom != null) {
+		    baseOffset = resumeFrom.correctedOffset;
+		    finalOffset = resumeFrom.finalOffset;
+		    lastStartOffset = resumeFrom.lastStartOffset;
+		    finalsIndex = resumeFrom.finalsIndex;
+		    lastEmittedStart = resumeFrom.lastEmittedStart;
+		    if (resumeFrom.storedInitials != null)
+		        storedInitials = new HashSet<String>(resumeFrom.storedInitials);
+		    resumeFrom = null;
+		}
 	}
 }
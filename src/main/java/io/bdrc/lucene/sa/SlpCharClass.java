@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * The classes of the SLP characters, in a single table shared by all the tokenizers and filters.
+ * <p>
+ * Each ASCII char has bit flags for its class (vowel, special phoneme, consonant, modifier), 
+ * for the punctuation that ends a consonant cluster, for the chars allowed within a sandhi and 
+ * for the idempotent groups it is an initial of. The other chars have no flag.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class SlpCharClass {
+
+    static final int VOWEL = 1;
+    /** anusvara, visarga, jihvamuliya, upadhmaniya and candrabindu */
+    static final int SPECIAL_PHONEME = 1 << 1;
+    static final int CONSONANT = 1 << 2;
+    static final int MODIFIER = 1 << 3;
+    /** the punctuation after which a consonant cluster is trailing, see {@link SkrtSyllableTokenizer} */
+    static final int PUNCT = 1 << 4;
+    /** the chars that can be found between the two words of a sandhi */
+    static final int WITHIN_SANDHI = 1 << 5;
+    
+    /** all the chars of SLP words */
+    static final int SLP = VOWEL | SPECIAL_PHONEME | CONSONANT | MODIFIER;
+    
+    /* the bits of the idempotent groups, as given by CmdParser.idempotentGroupBit(), start here */
+    private static final int IDEMPOTENT_SHIFT = 16;
+    
+    static final String VOWELS = "aAiIuUfFxXeEoO";
+    static final String SPECIAL_PHONEMES = "MHVZ~";
+    static final String CONSONANTS = "kKgGNcCjJYwWqQRtTdDnpPbBmyrlvL|Szsh";
+    static final String MODIFIERS = "_=!#1234/\\^6789+";
+    static final String PUNCTUATION = ". ,-";
+    static final String WITHIN_SANDHI_CHARS = " -";
+    
+    private static final int[] flags = new int[128];
+    static {
+        add(VOWELS, VOWEL);
+        add(SPECIAL_PHONEMES, SPECIAL_PHONEME);
+        add(CONSONANTS, CONSONANT);
+        add(MODIFIERS, MODIFIER);
+        add(PUNCTUATION, PUNCT);
+        add(WITHIN_SANDHI_CHARS, WITHIN_SANDHI);
+        for (Entry<Integer, List<String>> group: CmdParser.idempotentInitials.entrySet()) {
+            for (String initial: group.getValue()) {
+                flags[initial.charAt(0)] |= CmdParser.idempotentGroupBit(group.getKey()) << IDEMPOTENT_SHIFT;
+            }
+        }
+    }
+    
+    private static void add(String chars, int flag) {
+        for (int i = 0; i < chars.length(); i++) {
+            flags[chars.charAt(i)] |= flag;
+        }
+    }
+    
+    private SlpCharClass() {}
+    
+    /**
+     * @return the flags of c, 0 if it is not ASCII or -1
+     */
+    static int flagsOf(final int c) {
+        return (c & ~0x7F) == 0 ? flags[c] : 0;
+    }
+    
+    /**
+     * @return true if c has one of the flags
+     */
+    static boolean is(final int c, final int someFlags) {
+        return (flagsOf(c) & someFlags) != 0;
+    }
+    
+    static boolean isSLP(final int c) {
+        return is(c, SLP);
+    }
+    
+    static boolean isModifier(final int c) {
+        return is(c, MODIFIER);
+    }
+    
+    static boolean isValidWithinSandhi(final int c) {
+        return is(c, WITHIN_SANDHI);
+    }
+    
+    /**
+     * @param groups  the bits of the idempotent groups, as given by {@link CmdParser#idempotentGroupBit(int)}, or-ed together
+     * @return true if c is an initial of one of the groups
+     */
+    static boolean isIdempotentInitial(final int c, final int groups) {
+        return is(c, groups << IDEMPOTENT_SHIFT);
+    }
+}
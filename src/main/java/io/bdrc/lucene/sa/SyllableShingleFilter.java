@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Adds shingles of consecutive syllables to the output of {@link SkrtSyllableTokenizer}, 
+ * so phrase queries look up a few selective shingles instead of the huge posting lists 
+ * of syllables like "ta" or "na".
+ * <p>
+ * When indexing, each syllable is followed by the shingles of 2 to maxShingleSize syllables 
+ * starting with it, at the same position.
+ * When querying, only the shingles of maxShingleSize syllables are emitted, one per position, 
+ * which is enough to match the same phrase. A query with fewer syllables becomes a single shingle
+ * (or stays a single syllable).
+ * <p>
+ * The syllables of a shingle are joined with {@link #SEPARATOR} and its type is "shingle".
+ * A shingle never spans a gap in the positions, such as a removed stopword.
+ *
+ * @author Hélios Hildt
+ *
+ */
+public final class SyllableShingleFilter extends TokenFilter {
+
+    public static final int DEFAULT_MAX_SHINGLE_SIZE = 3;
+    public static final char SEPARATOR = ' ';
+    public static final String SHINGLE_TYPE = "shingle";
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+    private final boolean forQuery;
+    private final int maxShingleSize;
+
+    /* the next syllables: the run of consecutive positions starting with the first one, then possibly 
+     * the first syllable of the next run */
+    private final State[] states;
+    private final char[][] terms;
+    private final int[] termLengths;
+    private final int[] ends;
+    private final int[] posIncs;
+    private int size = 0;
+    private int runLength = 0;
+    private boolean exhausted = false;
+
+    private int shingleSize = 0;    // the size of the next token starting with the first syllable, 0 when they are all emitted
+    private int toRemove = 0;       // the syllables to remove before the next token
+    private boolean emittedInRun = false;
+    private int skippedPositions = 0;
+
+    /**
+     * @param input  syllables
+     * @param forQuery  true to only emit the longest shingles
+     */
+    public SyllableShingleFilter(TokenStream input, boolean forQuery) {
+        this(input, forQuery, DEFAULT_MAX_SHINGLE_SIZE);
+    }
+
+    /**
+     * @param input  syllables
+     * @param forQuery  true to only emit the longest shingles
+     * @param maxShingleSize  the number of syllables of the longest shingles, at least 2
+     */
+    public SyllableShingleFilter(TokenStream input, boolean forQuery, int maxShingleSize) {
+        super(input);
+        if (maxShingleSize < 2)
+            throw new IllegalArgumentException("maxShingleSize must be at least 2, got " + maxShingleSize);
+        this.forQuery = forQuery;
+        this.maxShingleSize = maxShingleSize;
+        this.states = new State[maxShingleSize];
+        this.terms = new char[maxShingleSize][16];
+        this.termLengths = new int[maxShingleSize];
+        this.ends = new int[maxShingleSize];
+        this.posIncs = new int[maxShingleSize];
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        while (true) {
+            if (shingleSize == 0) {
+                remove(toRemove);
+                fill();
+                if (size == 0)
+                    return false;
+                shingleSize = forQuery ? Math.min(runLength, maxShingleSize) : 1;
+            }
+            if (!forQuery) {
+                emit(shingleSize, shingleSize == 1 ? posIncs[0] : 0);
+                shingleSize = shingleSize < runLength ? shingleSize + 1 : 0;
+                toRemove = 1;
+                return true;
+            }
+            if (runLength == maxShingleSize) {
+                emit(maxShingleSize, posIncs[0] + skippedPositions);
+                toRemove = 1;
+                emittedInRun = true;
+            } else if (!emittedInRun) {
+                // the whole run is shorter than the shingles
+                emit(runLength, posIncs[0] + skippedPositions);
+                toRemove = runLength;
+            } else {
+                // the end of the run, already in the last shingle
+                for (int i = 1; i < runLength; i++)
+                    skippedPositions += posIncs[i];
+                skippedPositions += posIncs[0];
+                toRemove = runLength;
+                shingleSize = 0;
+                continue;
+            }
+            skippedPositions = 0;
+            shingleSize = 0;
+            return true;
+        }
+    }
+
+    /* reads syllables until the run of the first one has maxShingleSize syllables or ends */
+    private void fill() throws IOException {
+        while (runLength == size && size < maxShingleSize && !exhausted) {
+            if (!input.incrementToken()) {
+                exhausted = true;
+                break;
+            }
+            final int i = size++;
+            states[i] = captureState();
+            terms[i] = ArrayUtil.grow(terms[i], termAtt.length());
+            System.arraycopy(termAtt.buffer(), 0, terms[i], 0, termAtt.length());
+            termLengths[i] = termAtt.length();
+            ends[i] = offsetAtt.endOffset();
+            posIncs[i] = posIncrAtt.getPositionIncrement();
+            if (i == 0 || posIncs[i] == 1)
+                runLength = size;
+        }
+    }
+
+    /* removes the first syllables of the window */
+    private void remove(int nb) {
+        for (int n = 0; n < nb; n++) {
+            final char[] term = terms[0];
+            for (int i = 1; i < size; i++) {
+                states[i - 1] = states[i];
+                terms[i - 1] = terms[i];
+                termLengths[i - 1] = termLengths[i];
+                ends[i - 1] = ends[i];
+                posIncs[i - 1] = posIncs[i];
+            }
+            terms[--size] = term;     // reuses the buffer
+            states[size] = null;
+            if (--runLength == 0) {
+                // the next run starts
+                runLength = size;
+                emittedInRun = false;
+            }
+        }
+    }
+
+    /* the first syllable, or the shingle of the first syllables */
+    private void emit(int nbSyllables, int posInc) {
+        restoreState(states[0]);
+        posIncrAtt.setPositionIncrement(posInc);
+        if (nbSyllables == 1)
+            return;
+        int length = termLengths[0];
+        for (int i = 1; i < nbSyllables; i++)
+            length += 1 + termLengths[i];
+        final char[] buffer = termAtt.resizeBuffer(length);
+        int pos = 0;
+        for (int i = 0; i < nbSyllables; i++) {
+            if (i > 0)
+                buffer[pos++] = SEPARATOR;
+            System.arraycopy(terms[i], 0, buffer, pos, termLengths[i]);
+            pos += termLengths[i];
+        }
+        termAtt.setLength(length);
+        offsetAtt.setOffset(offsetAtt.startOffset(), ends[nbSyllables - 1]);
+        typeAtt.setType(SHINGLE_TYPE);
+        posLenAtt.setPositionLength(forQuery ? 1 : nbSyllables);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        for (int i = 0; i < size; i++)
+            states[i] = null;
+        size = 0;
+        runLength = 0;
+        exhausted = false;
+        shingleSize = 0;
+        toRemove = 0;
+        emittedInRun = false;
+        skippedPositions = 0;
+    }
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.InPlaceMergeSorter;
+
+/**
+ * A reusable queue of the tokens waiting to be emitted by {@link SkrtWordTokenizer}.
+ * <p>
+ * Tokens are stored in parallel {@code int[]} columns (start, end, type, POS) and their
+ * text is copied into a shared {@code char[]} arena, so that once the arrays have grown
+ * to the size needed by the input, filling and draining the queue does not allocate.
+ * <p>
+ * Indexes given to the accessors are relative to the first token that was not yet
+ * consumed by {@link #removeFirst()}.
+ * <p>
+ * Duplicates are found through a hash of each token: the texts are only compared
+ * when a queued token has the same hash.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class TokenQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] poss = new int[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] textLengths = new int[INITIAL_CAPACITY];
+    private MultiTokenLemma[] multiTokens = new MultiTokenLemma[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    private char[] arena = new char[INITIAL_CAPACITY * 8];
+    private int arenaLength = 0;
+
+    private int head = 0;     // index of the next token to emit
+    private int tail = 0;     // index after the last token
+
+    /* number of queued tokens per hash, in an open-addressing table. slots of older stamps are empty */
+    private int[] tableHashes = new int[INITIAL_CAPACITY * 4];
+    private int[] tableCounts = new int[INITIAL_CAPACITY * 4];
+    private int[] tableStamps = new int[INITIAL_CAPACITY * 4];
+    private int stamp = 1;
+    private int tableUsed = 0;
+
+    /* removeOverlappingNonwords() and sortByStart() */
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] scratch = new int[INITIAL_CAPACITY];
+    private MultiTokenLemma[] scratchLemmas = new MultiTokenLemma[INITIAL_CAPACITY];
+    private boolean[] toDelete = new boolean[INITIAL_CAPACITY];
+    private final InPlaceMergeSorter byStart = new InPlaceMergeSorter() {
+        @Override
+        protected int compare(int i, int j) {
+            final int c = Integer.compare(starts[order[i]], starts[order[j]]);
+            return c != 0 ? c : Integer.compare(ends[order[j]], ends[order[i]]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+            final int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    };
+
+    int size() {
+        return tail - head;
+    }
+
+    boolean isEmpty() {
+        return tail == head;
+    }
+
+    void clear() {
+        head = 0;
+        tail = 0;
+        arenaLength = 0;
+        if (++stamp == 0) {
+            Arrays.fill(tableStamps, 0);
+            stamp = 1;
+        }
+        tableUsed = 0;
+    }
+
+    int start(int i) {
+        return starts[head + i];
+    }
+
+    int end(int i) {
+        return ends[head + i];
+    }
+
+    int type(int i) {
+        return types[head + i];
+    }
+
+    int pos(int i) {
+        return poss[head + i];
+    }
+
+    int textLength(int i) {
+        return textLengths[head + i];
+    }
+
+    int textStart(int i) {
+        return textStarts[head + i];
+    }
+
+    /** @return the tokens to splice in place of the token i, or null if it is not a multi-token lemma */
+    MultiTokenLemma multiToken(int i) {
+        return multiTokens[head + i];
+    }
+
+    /** the arena holding the text of all the tokens. only valid until the next append. */
+    char[] arena() {
+        return arena;
+    }
+
+    String text(int i) {
+        return new String(arena, textStarts[head + i], textLengths[head + i]);
+    }
+
+    boolean textContains(int i, char c) {
+        final int from = textStarts[head + i];
+        final int to = from + textLengths[head + i];
+        for (int k = from; k < to; k++) {
+            if (arena[k] == c)
+                return true;
+        }
+        return false;
+    }
+
+    /** drops the first token. its content stays in the arena until {@link #clear()} */
+    void removeFirst() {
+        uncount(hashes[head]);
+        head++;
+        if (head == tail)
+            clear();
+    }
+
+    /**
+     * Appends a token, unless an identical one (same text, start, end, type and POS)
+     * is already queued.
+     *
+     * @return true if the token was added
+     */
+    boolean addIfAbsent(CharSequence text, int start, int end, int type, int pos) {
+        return addIfAbsent(text, start, end, type, pos, null);
+    }
+
+    /**
+     * Same as {@link #addIfAbsent(CharSequence, int, int, int, int)}, for a lemma that
+     * may be a multi-token lemma.
+     *
+     * @return true if the token was added
+     */
+    boolean addIfAbsent(CharSequence text, int start, int end, int type, int pos, MultiTokenLemma multiToken) {
+        if (!insertIfAbsent(size(), text, start, end, type, pos))
+            return false;
+        multiTokens[tail - 1] = multiToken;
+        return true;
+    }
+
+    /**
+     * Same as {@link #addIfAbsent(CharSequence, int, int, int, int)}, with the text given
+     * as a slice of a char array.
+     *
+     * @return true if the token was added
+     */
+    boolean addIfAbsent(char[] text, int offset, int length, int start, int end, int type, int pos) {
+        return insertIfAbsent(size(), text, offset, length, start, end, type, pos);
+    }
+
+    /**
+     * Inserts a token at index i, unless an identical one is already queued.
+     *
+     * @return true if the token was inserted
+     */
+    boolean insertIfAbsent(int i, CharSequence text, int start, int end, int type, int pos) {
+        final int hash = hash(text, start, end, type, pos);
+        if (count(hash) > 0 && indexOf(text, start, end, type, pos, hash) != -1)
+            return false;
+        insert(i, appendToArena(text), text.length(), start, end, type, pos, hash);
+        return true;
+    }
+
+    /**
+     * Same as {@link #insertIfAbsent(int, CharSequence, int, int, int, int)}, with the text
+     * given as a slice of a char array, that may be {@link #arena()}.
+     *
+     * @return true if the token was inserted
+     */
+    boolean insertIfAbsent(int i, char[] text, int offset, int length, int start, int end, int type, int pos) {
+        final int hash = hash(text, offset, length, start, end, type, pos);
+        if (count(hash) > 0) {
+            for (int at = head; at < tail; at++) {
+                if (hashes[at] == hash && starts[at] == start && ends[at] == end && types[at] == type && poss[at] == pos
+                        && textLengths[at] == length && textEquals(textStarts[at], text, offset, length)) {
+                    return false;
+                }
+            }
+        }
+        if (arenaLength + length > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+        System.arraycopy(text, offset, arena, arenaLength, length);
+        arenaLength += length;
+        insert(i, arenaLength - length, length, start, end, type, pos, hash);
+        return true;
+    }
+
+    private void insert(int i, int textStart, int textLength, int start, int end, int type, int pos, int hash) {
+        count(hash, 1);
+        ensureCapacity(tail + 1);
+        final int at = head + i;
+        if (at < tail) {
+            final int toMove = tail - at;
+            System.arraycopy(starts, at, starts, at + 1, toMove);
+            System.arraycopy(ends, at, ends, at + 1, toMove);
+            System.arraycopy(types, at, types, at + 1, toMove);
+            System.arraycopy(poss, at, poss, at + 1, toMove);
+            System.arraycopy(textStarts, at, textStarts, at + 1, toMove);
+            System.arraycopy(textLengths, at, textLengths, at + 1, toMove);
+            System.arraycopy(multiTokens, at, multiTokens, at + 1, toMove);
+            System.arraycopy(hashes, at, hashes, at + 1, toMove);
+        }
+        starts[at] = start;
+        ends[at] = end;
+        types[at] = type;
+        poss[at] = pos;
+        textStarts[at] = textStart;
+        textLengths[at] = textLength;
+        multiTokens[at] = null;
+        hashes[at] = hash;
+        tail++;
+    }
+
+    /** removes the token at index i */
+    void remove(int i) {
+        final int at = head + i;
+        uncount(hashes[at]);
+        final int toMove = tail - at - 1;
+        if (toMove > 0) {
+            System.arraycopy(starts, at + 1, starts, at, toMove);
+            System.arraycopy(ends, at + 1, ends, at, toMove);
+            System.arraycopy(types, at + 1, types, at, toMove);
+            System.arraycopy(poss, at + 1, poss, at, toMove);
+            System.arraycopy(textStarts, at + 1, textStarts, at, toMove);
+            System.arraycopy(textLengths, at + 1, textLengths, at, toMove);
+            System.arraycopy(multiTokens, at + 1, multiTokens, at, toMove);
+            System.arraycopy(hashes, at + 1, hashes, at, toMove);
+        }
+        tail--;
+        if (head == tail)
+            clear();
+    }
+
+    /**
+     * Removes in one pass all the tokens whose index is flagged in toDelete.
+     *
+     * @param toDelete  flags indexed like the accessors. must be at least {@link #size()} long
+     */
+    void removeAll(boolean[] toDelete) {
+        int kept = head;
+        for (int at = head; at < tail; at++) {
+            if (toDelete[at - head]) {
+                uncount(hashes[at]);
+                continue;
+            }
+            if (kept != at) {
+                starts[kept] = starts[at];
+                ends[kept] = ends[at];
+                types[kept] = types[at];
+                poss[kept] = poss[at];
+                textStarts[kept] = textStarts[at];
+                textLengths[kept] = textLengths[at];
+                multiTokens[kept] = multiTokens[at];
+                hashes[kept] = hashes[at];
+            }
+            kept++;
+        }
+        tail = kept;
+        if (head == tail)
+            clear();
+    }
+
+    int indexOf(CharSequence text, int start, int end, int type, int pos) {
+        final int hash = hash(text, start, end, type, pos);
+        return count(hash) > 0 ? indexOf(text, start, end, type, pos, hash) : -1;
+    }
+
+    private int indexOf(CharSequence text, int start, int end, int type, int pos, int hash) {
+        final int len = text.length();
+        for (int at = head; at < tail; at++) {
+            if (hashes[at] == hash && starts[at] == start && ends[at] == end && types[at] == type && poss[at] == pos
+                    && textLengths[at] == len && textEquals(textStarts[at], text)) {
+                return at - head;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the tokens that have no POS (non-words) and that are within the span of another token.
+     * <p>
+     * A token without POS is removed if it is covered by a token with a POS, by a larger token,
+     * or by a token with the same span that comes after it: of several non-words with the same
+     * span, only the last one is kept.
+     * <p>
+     * This is done by sweeping the tokens sorted by start, then by decreasing end.
+     */
+    void removeOverlappingNonwords() {
+        final int size = size();
+        if (size < 2)
+            return;
+        if (order.length < size) {
+            order = new int[Math.max(order.length * 2, size)];
+            toDelete = new boolean[order.length];
+        }
+        for (int k = 0; k < size; k++) {
+            order[k] = head + k;
+            toDelete[k] = false;
+        }
+        byStart.sort(0, size);      // stable: tokens with the same span stay in queue order
+        boolean deleting = false;
+        int maxEndBefore = Integer.MIN_VALUE;   // furthest end of the tokens starting before the current start
+        int k = 0;
+        while (k < size) {
+            final int start = starts[order[k]];
+            final int longestEnd = ends[order[k]];
+            int sameStartEnd = k;
+            while (sameStartEnd < size && starts[order[sameStartEnd]] == start)
+                sameStartEnd++;
+            while (k < sameStartEnd) {
+                /* tokens with the same span */
+                final int end = ends[order[k]];
+                int sameSpanEnd = k;
+                boolean hasPos = false;
+                int last = -1;
+                while (sameSpanEnd < sameStartEnd && ends[order[sameSpanEnd]] == end) {
+                    final int at = order[sameSpanEnd];
+                    hasPos |= poss[at] != -1;
+                    last = Math.max(last, at);
+                    sameSpanEnd++;
+                }
+                final boolean inLargerToken = maxEndBefore >= end || longestEnd > end;
+                for (; k < sameSpanEnd; k++) {
+                    final int at = order[k];
+                    if (poss[at] == -1 && (inLargerToken || hasPos || at != last)) {
+                        toDelete[at - head] = true;
+                        deleting = true;
+                    }
+                }
+            }
+            maxEndBefore = Math.max(maxEndBefore, longestEnd);
+        }
+        if (deleting)
+            removeAll(toDelete);
+    }
+
+    /**
+     * Sorts the tokens by start, then by decreasing end. Tokens with the same span stay in queue order.
+     */
+    void sortByStart() {
+        final int size = size();
+        if (size < 2)
+            return;
+        if (order.length < size) {
+            order = new int[Math.max(order.length * 2, size)];
+            toDelete = new boolean[order.length];
+        }
+        for (int k = 0; k < size; k++)
+            order[k] = head + k;
+        byStart.sort(0, size);
+        if (scratch.length < size) {
+            scratch = new int[order.length];
+            scratchLemmas = new MultiTokenLemma[order.length];
+        }
+        permute(starts, size);
+        permute(ends, size);
+        permute(types, size);
+        permute(poss, size);
+        permute(textStarts, size);
+        permute(textLengths, size);
+        permute(hashes, size);
+        for (int k = 0; k < size; k++)
+            scratchLemmas[k] = multiTokens[order[k]];
+        System.arraycopy(scratchLemmas, 0, multiTokens, head, size);
+        Arrays.fill(scratchLemmas, 0, size, null);
+    }
+
+    /* puts column in the order of order */
+    private void permute(int[] column, int size) {
+        for (int k = 0; k < size; k++)
+            scratch[k] = column[order[k]];
+        System.arraycopy(scratch, 0, column, head, size);
+    }
+
+    /**
+     * The number of positions covered by token i in a graph of the tokens sorted by {@link #sortByStart()},
+     * where each distinct start is a position: the token covers the starts of the following tokens
+     * that are before its last char. (a vowel sandhi makes the last char of a word the first of the next one)
+     */
+    int positionLength(int i) {
+        final int start = starts[head + i];
+        final int lastChar = ends[head + i] - 1;
+        int length = 1;
+        int previous = start;
+        for (int at = head + i + 1; at < tail && starts[at] < lastChar; at++) {
+            if (starts[at] != previous) {
+                length++;
+                previous = starts[at];
+            }
+        }
+        return length;
+    }
+
+    private boolean textEquals(int from, CharSequence text) {
+        final int len = text.length();
+        for (int k = 0; k < len; k++) {
+            if (arena[from + k] != text.charAt(k))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean textEquals(int from, char[] text, int offset, int length) {
+        for (int k = 0; k < length; k++) {
+            if (arena[from + k] != text[offset + k])
+                return false;
+        }
+        return true;
+    }
+
+    private int appendToArena(CharSequence text) {
+        final int len = text.length();
+        if (arenaLength + len > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + len));
+        final int textStart = arenaLength;
+        for (int k = 0; k < len; k++) {
+            arena[textStart + k] = text.charAt(k);
+        }
+        arenaLength += len;
+        return textStart;
+    }
+
+    private static int hash(CharSequence text, int start, int end, int type, int pos) {
+        int h = 0;
+        final int len = text.length();
+        for (int k = 0; k < len; k++)
+            h = 31 * h + text.charAt(k);
+        return hash(h, start, end, type, pos);
+    }
+
+    private static int hash(char[] text, int offset, int length, int start, int end, int type, int pos) {
+        int h = 0;
+        for (int k = offset; k < offset + length; k++)
+            h = 31 * h + text[k];
+        return hash(h, start, end, type, pos);
+    }
+
+    private static int hash(int textHash, int start, int end, int type, int pos) {
+        int h = 31 * textHash + start;
+        h = 31 * h + end;
+        h = 31 * h + type;
+        return 31 * h + pos;
+    }
+
+    /** @return the number of queued tokens with this hash */
+    private int count(int hash) {
+        final int slot = slot(hash);
+        return tableStamps[slot] == stamp ? tableCounts[slot] : 0;
+    }
+
+    private void count(int hash, int delta) {
+        int slot = slot(hash);
+        if (tableStamps[slot] != stamp) {
+            if (delta < 0)
+                return;
+            if ((tableUsed + 1) * 2 > tableHashes.length) {
+                rehash();
+                slot = slot(hash);
+            }
+            tableStamps[slot] = stamp;
+            tableHashes[slot] = hash;
+            tableCounts[slot] = 0;
+            tableUsed++;
+        }
+        tableCounts[slot] += delta;
+    }
+
+    private void uncount(int hash) {
+        count(hash, -1);
+    }
+
+    /** @return the slot of hash, or the empty slot where it would go */
+    private int slot(int hash) {
+        final int mask = tableHashes.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (tableStamps[slot] == stamp && tableHashes[slot] != hash)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /* doubles the table and counts the queued tokens again. the slots of removed tokens are dropped */
+    private void rehash() {
+        final int length = tableHashes.length * 2;
+        tableHashes = new int[length];
+        tableCounts = new int[length];
+        tableStamps = new int[length];
+        stamp = 1;
+        tableUsed = 0;
+        for (int at = head; at < tail; at++)
+            count(hashes[at], 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length)
+            return;
+        final int newCapacity = Math.max(starts.length * 2, capacity);
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        poss = Arrays.copyOf(poss, newCapacity);
+        textStarts = Arrays.copyOf(textStarts, newCapacity);
+        textLengths = Arrays.copyOf(textLengths, newCapacity);
+        multiTokens = Arrays.copyOf(multiTokens, newCapacity);
+        hashes = Arrays.copyOf(hashes, newCapacity);
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link CharScanner} comparing {@link #SPECIES} chars at once with the Vector API. 
+ * <p>
+ * Only in the Java 17 layer of the jar, see {@link CharScanner#INSTANCE}.
+ *
+ * @author Hélios Hildt
+ *
+ */
+final class VectorCharScanner extends CharScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final short NON_ASCII_BITS = (short) 0xFF80;
+
+    @Override
+    int indexOfAscii(final char[] text, final int from, final int to) {
+        int i = from;
+        final int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            final VectorMask<Short> ascii = ShortVector.fromCharArray(SPECIES, text, i).and(NON_ASCII_BITS).eq((short) 0);
+            if (ascii.anyTrue())
+                return i + ascii.firstTrue();
+        }
+        return super.indexOfAscii(text, i, to);
+    }
+
+    @Override
+    int indexOfAny(final char[] text, final int from, final int to, final char c1, final char c2, final char c3) {
+        int i = from;
+        final int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            final ShortVector chars = ShortVector.fromCharArray(SPECIES, text, i);
+            final VectorMask<Short> found = chars.eq((short) c1).or(chars.eq((short) c2)).or(chars.eq((short) c3));
+            if (found.anyTrue())
+                return i + found.firstTrue();
+        }
+        return super.indexOfAny(text, i, to, c1, c2, c3);
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link CharScanner#INSTANCE}, vectorized on Java 17 and later, finds the same chars as the scalar {@link CharScanner}.
+ */
+public class TestCharScanner
+{
+    static final CharScanner scalar = new CharScanner();
+
+    static char[] randomText(Random random, int length) {
+        // mostly Tibetan or mostly SLP, with some of each and a few dandas
+        final String chars = random.nextBoolean() ? "ཀཁགངཅ་།ྱa" : "aAkKgGrtT ..\n";
+        final char[] text = new char[length];
+        for (int i = 0; i < length; i++)
+            text[i] = chars.charAt(random.nextInt(chars.length()));
+        return text;
+    }
+
+    @Test
+    public void testSameAsScalar()
+    {
+        System.out.println("CharScanner: " + CharScanner.INSTANCE.getClass().getSimpleName());
+        final Random random = new Random(42);
+        for (int n = 0; n < 2000; n++) {
+            final char[] text = randomText(random, random.nextInt(300));
+            final int from = text.length == 0 ? 0 : random.nextInt(text.length);
+            final int to = from + random.nextInt(text.length - from + 1);
+            assertThat(CharScanner.INSTANCE.indexOfAscii(text, from, to), is(scalar.indexOfAscii(text, from, to)));
+            assertThat(CharScanner.INSTANCE.indexOfAny(text, from, to, '.', '\n', '\r'), is(scalar.indexOfAny(text, from, to, '.', '\n', '\r')));
+        }
+    }
+
+    @Test
+    public void testLongRuns()
+    {
+        final char[] text = new char[1000];
+        Arrays.fill(text, 'ཀ');
+        assertThat(CharScanner.INSTANCE.indexOfAscii(text, 0, text.length), is(text.length));
+        text[999] = 'a';
+        assertThat(CharScanner.INSTANCE.indexOfAscii(text, 0, text.length), is(999));
+        assertThat(CharScanner.INSTANCE.indexOfAscii(text, 0, 999), is(999));
+        text[17] = '.';
+        assertThat(CharScanner.INSTANCE.indexOfAny(text, 0, text.length, '.', '\n', '\r'), is(17));
+        assertThat(CharScanner.INSTANCE.indexOfAny(text, 18, text.length, '.', '\n', '\r'), is(text.length));
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link CmdCursorParser} gives exactly the same result as {@link CmdParser#parse}.
+ */
+public class TestCmdCursorParser
+{
+    static final CmdCursorParser cursorParser = new CmdCursorParser();
+    static final CmdCursorParser.Diffs diffs = new CmdCursorParser.Diffs();
+
+    static void assertSameParse(String inflected, String cmd) {
+        String expected;
+        try {
+            expected = new CmdParser().parse(inflected, cmd).toString();
+        } catch (RuntimeException e) {
+            expected = null;
+        }
+        diffs.clear();
+        try {
+            cursorParser.parse(inflected, cmd, diffs);
+        } catch (RuntimeException e) {
+            if (expected != null)
+                fail("cursor parser failed on " + inflected + "," + cmd + ": " + e);
+            return;
+        }
+        if (expected == null)
+            fail("CmdParser fails on " + inflected + "," + cmd + " but not the cursor parser");
+        diffs.sort();
+        assertEquals(inflected + "," + cmd, expected, new ParsedCmd(diffs).toString());
+    }
+
+    static int checkDictionary(File file) throws IOException {
+        int nbCmds = 0;
+        try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                final int sepIndex = line.indexOf(',');
+                if (sepIndex == -1)
+                    continue;
+                assertSameParse(line.substring(0, sepIndex), line.substring(sepIndex + 1));
+                nbCmds++;
+            }
+        }
+        return nbCmds;
+    }
+
+    @Test
+    public void testTestTries() throws IOException
+    {
+        int nbCmds = 0;
+        for (File file: new File("src/test/resources/tries").listFiles()) {
+            if (file.getName().endsWith(".txt"))
+                nbCmds += checkDictionary(file);
+        }
+        System.out.println("CmdCursorParser: " + nbCmds + " cmds of the test tries checked");
+        assertTrue(nbCmds > 0);
+    }
+
+    @Test
+    public void testFullDictionary() throws IOException
+    {
+        // only available when the sanskrit-stemming-data submodule is checked out
+        final File file = new File(BuildCompiledTrie.inputFile);
+        if (!file.exists()) {
+            System.out.println("CmdCursorParser: " + file + " not found, skipping the full dictionary");
+            return;
+        }
+        System.out.println("CmdCursorParser: " + checkDictionary(file) + " cmds of the dictionary checked");
+    }
+
+    @Test
+    public void testCornerCases()
+    {
+        // lone diff trimmed twice, several diffs trimmed once
+        assertSameParse("Darma", "$-0+n/=0£9#1|$/=0£9#1|r$-0+n;-0+/- r+f=1£1#1");
+        assertSameParse("Darma", "A:i$--1+a/=1£1#1|A:i$--1+a;--1+b/=1£1#1");
+        // trailing empty pieces
+        assertSameParse("Darma", "a:i:$-1+a;/=1#2|");
+        assertSameParse("Darma", "$-1+a/- +=3£6#1|$-0+/-+=5#1");
+        // idempotent group kept from the previous entry
+        assertSameParse("Darma", "$-0+/=1£4#1|$-1+/=2#3");
+        // type 9 uses the whole inflected form
+        assertSameParse("Darma", "$-0+/=9#1");
+        // initials and finals change together
+        assertSameParse("Darma", "a$-1+b;-2+/-c+d=8£4#1");
+        assertSameParse("Darma", "$/-c+d=2#1");
+        // malformed
+        assertSameParse("Darma", "$-0+/=1£4");
+        assertSameParse("Darma", "$-0+/=a#1");
+        assertSameParse("a", "$-0+/=3#1");
+        assertSameParse("Darma", "|");
+    }
+}
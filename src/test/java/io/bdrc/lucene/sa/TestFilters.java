@@ -14,8 +14,21 @@ import java.util.List;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
 import org.junit.Test;
 
 import io.bdrc.lucene.stemmer.Trie;
@@ -72,4 +85,94 @@ public class TestFilters {
         TokenStream merged = new PrepositionMergingFilter(words);
         assertTokenStream(merged, expected);
     }
+    
+    @Test
+    public void testLemmatizerFilter() throws IOException
+    {
+        System.out.println("test lemmatizer TokenFilter");
+        String input = "nAmasaM paramA gIti kkk";
+        Reader reader = new StringReader(input);
+        // the parts of the multi-token lemma of nAmasaM are stacked on it
+        List<String> expected = Arrays.asList("nAmasaM√", "nAman√", "sam√", "parama√", "gIti√", "kkk❌");
+        System.out.println("0 " + input);
+        Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/lattice_test.txt");
+        TokenStream words = tokenize(reader, new WhitespaceTokenizer());
+        assertTokenStream(new SkrtLemmatizerFilter(words, trie), expected);
+        // maho is only a sandhied form, so it stays a word
+        trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/aTa_test.txt");
+        words = tokenize(new StringReader("maho"), new WhitespaceTokenizer());
+        assertTokenStream(new SkrtLemmatizerFilter(words, trie), Arrays.asList("maho✓"));
+    }
+    
+    @Test
+    public void testLemmatizerFilterPositions() throws IOException
+    {
+        Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/lattice_test.txt");
+        TokenStream lemmas = new SkrtLemmatizerFilter(tokenize(new StringReader("gIti nAmasaM"), new WhitespaceTokenizer()), trie);
+        CharTermAttribute termAtt = lemmas.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offsetAtt = lemmas.addAttribute(OffsetAttribute.class);
+        PositionIncrementAttribute incrAtt = lemmas.addAttribute(PositionIncrementAttribute.class);
+        List<String> tokens = new ArrayList<String>();
+        while (lemmas.incrementToken()) {
+            tokens.add(termAtt.toString() + "[" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + "]+" 
+                    + incrAtt.getPositionIncrement());
+        }
+        List<String> expected = Arrays.asList("gIti[0-4]+1", "nAmasaM[5-12]+1", "nAman[5-9]+0", "sam[9-12]+0");
+        assertThat(tokens, is(expected));
+    }
+    
+    static List<String> shingles(TokenStream tokens) throws IOException {
+        CharTermAttribute termAtt = tokens.addAttribute(CharTermAttribute.class);
+        PositionIncrementAttribute incrAtt = tokens.addAttribute(PositionIncrementAttribute.class);
+        List<String> result = new ArrayList<String>();
+        while (tokens.incrementToken()) {
+            result.add(termAtt.toString() + "+" + incrAtt.getPositionIncrement());
+        }
+        System.out.println("2 " + String.join(" | ", result) + "\n");
+        return result;
+    }
+    
+    @Test
+    public void testSyllableShingleFilter() throws IOException
+    {
+        System.out.println("test syllable shingles");
+        TokenStream syllables = tokenize(new StringReader("nAma-saNgIti"), new SkrtSyllableTokenizer());
+        List<String> expected = Arrays.asList("nA+1", "nA ma+0", "nA ma sa+0", "ma+1", "ma sa+0", "ma sa NgI+0", 
+                "sa+1", "sa NgI+0", "sa NgI ti+0", "NgI+1", "NgI ti+0", "ti+1");
+        assertThat(shingles(new SyllableShingleFilter(syllables, false)), is(expected));
+        // the longest shingles only, at consecutive positions
+        syllables = tokenize(new StringReader("nAma-saNgIti"), new SkrtSyllableTokenizer());
+        expected = Arrays.asList("nA ma sa+1", "ma sa NgI+1", "sa NgI ti+1");
+        assertThat(shingles(new SyllableShingleFilter(syllables, true)), is(expected));
+        // shorter queries
+        syllables = tokenize(new StringReader("nAma gIti"), new SkrtSyllableTokenizer());
+        assertThat(shingles(new SyllableShingleFilter(syllables, true)), is(Arrays.asList("nA ma gI+1", "ma gI ti+1")));
+        syllables = tokenize(new StringReader("nAma"), new SkrtSyllableTokenizer());
+        assertThat(shingles(new SyllableShingleFilter(syllables, true)), is(Arrays.asList("nA ma+1")));
+        syllables = tokenize(new StringReader("ti"), new SkrtSyllableTokenizer());
+        assertThat(shingles(new SyllableShingleFilter(syllables, true)), is(Arrays.asList("ti+1")));
+    }
+    
+    @Test
+    public void testSyllableShinglePhraseQueries() throws Exception
+    {
+        Directory dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new SanskritAnalyzer("syl", "SLP", false, false, null, "index")))) {
+            for (String text: Arrays.asList("maYjuSrI nAma saNgIti", "boDisattvacaryAvatAra", "nAmasaNgIti")) {
+                Document doc = new Document();
+                doc.add(new TextField("text", text, Field.Store.YES));
+                writer.addDocument(doc);
+            }
+        }
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            QueryParser parser = new QueryParser("text", new SanskritAnalyzer("syl", "SLP", false, false, null, "query"));
+            assertThat(searcher.count(parser.parse("\"nAma saNgIti\"")), is(2));
+            assertThat(searcher.count(parser.parse("\"saNgIti\"")), is(2));
+            assertThat(searcher.count(parser.parse("\"maYjuSrI nAma\"")), is(1));
+            assertThat(searcher.count(parser.parse("\"caryA\"")), is(1));
+            assertThat(searcher.count(parser.parse("\"saNgIta\"")), is(0));
+            assertThat(searcher.count(parser.parse("\"nAma maYjuSrI\"")), is(0));
+        }
+    }
 }
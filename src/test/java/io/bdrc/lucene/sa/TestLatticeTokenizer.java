@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SkrtLatticeTokenizer}.
+ */
+public class TestLatticeTokenizer
+{
+    static SkrtLatticeTokenizer buildTokenizer(String trieName) throws IOException {
+        return new SkrtLatticeTokenizer(BuildCompiledTrie.buildTrie("src/test/resources/tries/" + trieName + ".txt"));
+    }
+
+    /**
+     * @return the tokens as {@code <term><type>[<start>-<end>]+<posInc>/<posLen>}
+     */
+    static List<String> tokenize(SkrtLatticeTokenizer tokenizer, String input) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final TypeAttribute typeAtt = tokenizer.addAttribute(TypeAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute incrAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+        final PositionLengthAttribute posLenAtt = tokenizer.addAttribute(PositionLengthAttribute.class);
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            final String type = typeAtt.type().equals("non-word") ? "❌" : typeAtt.type().equals("word") ? "✓" : "√";
+            tokens.add(termAtt.toString() + type + "[" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + "]+"
+                    + incrAtt.getPositionIncrement() + "/" + posLenAtt.getPositionLength());
+        }
+        tokenizer.end();
+        tokenizer.close();
+        System.out.println("0 " + input);
+        System.out.println("1 " + String.join(" ", tokens) + "\n");
+        return tokens;
+    }
+
+    static List<String> terms(List<String> tokens) {
+        final List<String> terms = new ArrayList<String>();
+        for (String token: tokens) {
+            terms.add(token.substring(0, token.indexOf('[')));
+        }
+        return terms;
+    }
+
+    @Test
+    public void testDemoWords() throws IOException
+    {
+        // same input as TestWordTokenizer.testDemoWords(), in SLP
+        final String input = "sattvasya paramArTa nAma boDicaryAvatAra boDisattvacaryAvatAra - SAntideva - "
+                + "maYjuSrI nAma saMgIti - maYjuSrIjYAnasattvasya paramArTa nAma saMgIti - nAmasaMgIti - boDicaryAvatAra";
+        final List<String> expected = Arrays.asList("sattva√", "parama√", "arTa√", "ArTa√", "nAman√", "boDi√", "boDin√",
+                "caryA√", "avatAra√", "boDisattva√", "caryA√", "avatAra√", "SAntideva√", "maYjuSrI√", "nAman√", "sam√",
+                "gIti√", "maYjuSrI√", "jYAna√", "sattva√", "parama√", "arTa√", "ArTa√", "nAman√", "sam√", "gIti√", "nAman√",
+                "sam√", "gIti√", "boDi√", "boDin√", "caryA√", "avatAra√");
+        assertThat(terms(tokenize(buildTokenizer("demo_test"), input)), is(expected));
+    }
+
+    @Test
+    public void testSandhiOffsets() throws IOException
+    {
+        // the initial vowel of arTa is merged in the final of paramA
+        final List<String> expected = Arrays.asList("parama√[0-6]+1/1", "arTa√[5-9]+1/1", "ArTa√[5-9]+0/1");
+        assertThat(tokenize(buildTokenizer("lattice_test"), "paramArTa"), is(expected));
+    }
+
+    @Test
+    public void testMultiTokenLemmas() throws IOException
+    {
+        // nAmasaM is either a word of its own or nAman + sam
+        final List<String> expected = Arrays.asList("nAmasaM√[0-7]+1/2", "nAman√[0-4]+0/1", "sam√[4-7]+1/1",
+                "gIti√[7-11]+1/1");
+        assertThat(tokenize(buildTokenizer("lattice_test"), "nAmasaMgIti"), is(expected));
+    }
+
+    @Test
+    public void testNonWords() throws IOException
+    {
+        // non-SLP characters separate the segments, unknown SLP characters make non-words
+        final List<String> expected = Arrays.asList("kkk❌[0-3]+1/1", "gIti√[4-8]+1/1", "kk❌[8-10]+1/1",
+                "gIti√[12-16]+1/1");
+        assertThat(tokenize(buildTokenizer("lattice_test"), "kkk gItikk. gIti"), is(expected));
+    }
+
+    @Test
+    public void testWithoutAlternatives() throws IOException
+    {
+        final SkrtLatticeTokenizer tokenizer = buildTokenizer("lattice_test");
+        tokenizer.setEmitAlternatives(false);
+        final List<String> expected = Arrays.asList("parama√[0-6]+1/1", "arTa√[5-9]+1/1");
+        assertThat(tokenize(tokenizer, "paramArTa"), is(expected));
+    }
+
+    @Test
+    public void testLongSegments() throws IOException
+    {
+        // long segments are cut at a space, so they are segmented the same way
+        final SkrtLatticeTokenizer tokenizer = buildTokenizer("demo_test");
+        final String input = "boDisattva SAntideva boDisattva SAntideva";
+        final List<String> expected = terms(tokenize(tokenizer, input));
+        tokenizer.setMaxSegmentLength(24);
+        assertThat(terms(tokenize(tokenizer, input)), is(expected));
+    }
+
+    @Test
+    public void testLongInput() throws IOException
+    {
+        // much longer than the window on the input, with long runs of non-SLP text
+        final SkrtLatticeTokenizer tokenizer = buildTokenizer("lattice_test");
+        final String unit = "paramArTa nAmasaMgIti། " + new String(new char[3000]).replace('\0', 'ཀ') + " ";
+        final List<String> unitTokens = tokenize(tokenizer, unit);
+        final StringBuilder input = new StringBuilder();
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            input.append(unit);
+            expected.addAll(terms(unitTokens));
+        }
+        final List<String> tokens = tokenize(tokenizer, input.toString());
+        assertThat(terms(tokens), is(expected));
+        // gIti, in the last unit
+        assertThat(tokens.get(tokens.size() - 1), is("gIti√[" + (9 * unit.length() + 17) + "-" + (9 * unit.length() + 21) + "]+1/1"));
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        tokenizer.setReader(new StringReader(input.toString()));
+        tokenizer.reset();
+        tokenizer.end();
+        assertThat(offsetAtt.endOffset(), is(input.length()));
+        tokenizer.close();
+    }
+
+    @Test
+    public void testScoringModel() throws IOException
+    {
+        // ArTa is much more frequent than arTa, so it becomes the best path and arTa the alternative
+        final SkrtLatticeTokenizer tokenizer = buildTokenizer("lattice_test");
+        tokenizer.setScoringModel(ScoringModel.build("src/test/resources/scoring/lattice_test.txt"));
+        final List<String> expected = Arrays.asList("parama√[0-6]+1/1", "ArTa√[5-9]+1/1", "arTa√[5-9]+0/1");
+        assertThat(tokenize(tokenizer, "paramArTa"), is(expected));
+    }
+
+    @Test
+    public void testBeamAndMaxReadings() throws IOException
+    {
+        final SkrtLatticeTokenizer tokenizer = buildTokenizer("lattice_test");
+        tokenizer.setScoringModel(ScoringModel.build("src/test/resources/scoring/lattice_test.txt"));
+        // arTa costs about 46 more than ArTa
+        tokenizer.setBeamWidth(30);
+        assertThat(tokenize(tokenizer, "paramArTa"), is(Arrays.asList("parama√[0-6]+1/1", "ArTa√[5-9]+1/1")));
+        tokenizer.setBeamWidth(SkrtLatticeTokenizer.NO_LIMIT);
+        tokenizer.setMaxReadings(1);
+        assertThat(tokenize(tokenizer, "paramArTa"), is(Arrays.asList("parama√[0-6]+1/1", "ArTa√[5-9]+1/1")));
+    }
+
+    @Test
+    public void testMaxCostsBound() throws IOException
+    {
+        assertThat(SkrtLatticeTokenizer.WORD_COST + ScoringModel.MAX_LEMMA_COST + ScoringModel.MAX_SANDHI_COST
+                + SkrtLatticeTokenizer.SANDHI_COST < SkrtLatticeTokenizer.NONWORD_COST, is(true));
+        // "A" read as "a" through a sandhi, at the highest costs, against "A" as a non-word followed by rTa
+        final File file = File.createTempFile("trie", ".txt");
+        try {
+            Files.write(file.toPath(), Arrays.asList("A,$-1+a/-+a=1£1#1", "arTa,$/=0£9#1", "rTa,$/=0£9#1"),
+                    StandardCharsets.UTF_8);
+            final SkrtLatticeTokenizer tokenizer = new SkrtLatticeTokenizer(BuildCompiledTrie.buildTrie(file.getPath()));
+            final int[] sandhiCosts = new int[2];
+            Arrays.fill(sandhiCosts, ScoringModel.MAX_SANDHI_COST);
+            tokenizer.setScoringModel(new ScoringModel(new HashMap<String, Integer>(), ScoringModel.MAX_LEMMA_COST, sandhiCosts));
+            tokenizer.setMaxReadings(1);
+            assertThat(terms(tokenize(tokenizer, "ArTa")), is(Arrays.asList("a√", "arTa√")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testStoredScoringModel() throws IOException
+    {
+        final ScoringModel model = ScoringModel.build("src/test/resources/scoring/lattice_test.txt");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.store(new DataOutputStream(bytes));
+        final ScoringModel loaded = ScoringModel.load(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(loaded.size(), is(model.size()));
+        for (String lemma: Arrays.asList("parama", "ArTa", "arTa", "unknown"))
+            assertThat(loaded.lemmaCost(lemma), is(model.lemmaCost(lemma)));
+        assertThat(loaded.sandhiCost(1), is(model.sandhiCost(1)));
+        assertThat(loaded.sandhiCost(7), is(model.sandhiCost(7)));
+    }
+
+    @Test
+    public void testCorruptedScoringModel() throws IOException
+    {
+        for (String line: Arrays.asList("=-1,10", "=x,10", "=100000,10", "arTa,-10", "arTa,x", "arTa")) {
+            final File file = File.createTempFile("scoring", ".txt");
+            try {
+                Files.write(file.toPath(), Arrays.asList("parama,1000", line), StandardCharsets.UTF_8);
+                ScoringModel.build(file.getPath());
+                fail("accepted " + line);
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), is("The scoring model is corrupted in line 2.\n" + line));
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Checks that {@link SkrtParallelWordTokenizer} gives the same tokens as {@link SkrtWordTokenizer}.
+ */
+public class TestParallelWordTokenizer
+{
+    static Trie trie;
+    static ForkJoinPool pool;
+
+    // same input as TestWordTokenizer.testDemoWords(), in SLP, cut in sentences
+    static final String sentences = "sattvasya paramArTa nAma boDicaryAvatAra . boDisattvacaryAvatAra - SAntideva ..\n"
+            + "maYjuSrI nAma saMgIti . maYjuSrIjYAnasattvasya paramArTa nAma saMgIti\n"
+            + "nAmasaMgIti - boDicaryAvatAra ..";
+
+    @BeforeClass
+    public static void init() throws IOException {
+        trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/demo_test.txt");
+        pool = new ForkJoinPool(3);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @return the tokens as {@code <term>|<type>|<start>-<end>+<posInc>/<posLen>}, then the final offset
+     */
+    static List<String> tokenize(Tokenizer tokenizer, String input) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final TypeAttribute typeAtt = tokenizer.addAttribute(TypeAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute incrAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+        final PositionLengthAttribute posLenAtt = tokenizer.addAttribute(PositionLengthAttribute.class);
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            tokens.add(termAtt.toString() + "|" + typeAtt.type() + "|" + offsetAtt.startOffset() + "-" 
+                    + offsetAtt.endOffset() + "+" + incrAtt.getPositionIncrement() + "/" + posLenAtt.getPositionLength());
+        }
+        tokenizer.end();
+        tokens.add("end " + offsetAtt.endOffset());
+        tokenizer.close();
+        return tokens;
+    }
+
+    @Test
+    public void testSameTokens() throws IOException
+    {
+        final List<String> expected = tokenize(new SkrtWordTokenizer(trie), sentences);
+        for (int minChunkSize: new int[] {1, 20, 60, SkrtParallelWordTokenizer.DEFAULT_MIN_CHUNK_SIZE}) {
+            final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+            tokenizer.setMinChunkSize(minChunkSize);
+            assertThat(tokenize(tokenizer, sentences), is(expected));
+        }
+    }
+
+    @Test
+    public void testLongDocument() throws IOException
+    {
+        final StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            document.append(sentences).append('\n');
+        }
+        final List<String> expected = tokenize(new SkrtWordTokenizer(trie), document.toString());
+        final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+        tokenizer.setMinChunkSize(100);
+        // the tokenizer and its workers are reused
+        assertThat(tokenize(tokenizer, document.toString()), is(expected));
+        assertThat(tokenize(tokenizer, document.toString()), is(expected));
+    }
+
+    @Test
+    public void testSegmentationCache() throws IOException
+    {
+        final StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            document.append(sentences).append('\n');
+        }
+        final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+        tokenizer.setMinChunkSize(1);
+        final List<String> expected = tokenize(tokenizer, document.toString());
+        final SegmentationCache cache = new SegmentationCache(trie, 100);
+        tokenizer.setMinChunkSize(300);
+        tokenizer.setSegmentationCache(cache);
+        assertThat(tokenize(tokenizer, document.toString()), is(expected));
+        // the five sentences are tokenized once
+        assertThat(cache.getCache().size(), is(5));
+        assertThat(cache.getCache().misses() <= 5 * pool.getParallelism(), is(true));
+        assertThat(tokenize(tokenizer, document.toString()), is(expected));
+        assertThat(cache.getCache().size(), is(5));
+    }
+
+    @Test
+    public void testSegmentationCacheOfWordTokenizer() throws IOException
+    {
+        final StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            document.append(sentences).append('\n');
+        }
+        final SkrtParallelWordTokenizer parallel = new SkrtParallelWordTokenizer(trie, pool);
+        parallel.setMinChunkSize(1);
+        final List<String> expected = tokenize(parallel, document.toString());
+        final SegmentationCache cache = new SegmentationCache(trie, 100);
+        final SkrtWordTokenizer tokenizer = new SkrtWordTokenizer(trie);
+        tokenizer.setSegmentationCache(cache);
+        assertThat(tokenize(tokenizer, document.toString()), is(expected));
+        assertThat(cache.getCache().size(), is(5));
+        assertThat(cache.getCache().misses(), is(5L));
+        // shared with the parallel tokenizer
+        parallel.setMinChunkSize(300);
+        parallel.setSegmentationCache(cache);
+        assertThat(tokenize(parallel, document.toString()), is(expected));
+        assertThat(cache.getCache().misses(), is(5L));
+        tokenizer.setSegmentationCache(null);
+        assertThat(tokenize(tokenizer, document.toString()), is(tokenize(new SkrtWordTokenizer(trie), document.toString())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCacheOfAnotherTrie() throws IOException
+    {
+        final Trie other = BuildCompiledTrie.buildTrie("src/test/resources/tries/DarmATa_test.txt");
+        new SkrtParallelWordTokenizer(trie, pool).setSegmentationCache(new SegmentationCache(other, 100));
+    }
+
+    @Test
+    public void testReuseBeforeTheEnd() throws IOException
+    {
+        final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+        tokenizer.setMinChunkSize(1);
+        tokenizer.setReader(new StringReader(sentences));
+        tokenizer.reset();
+        tokenizer.incrementToken();
+        tokenizer.close();
+        assertThat(tokenize(tokenizer, "boDi . SAntideva"), is(tokenize(new SkrtWordTokenizer(trie), "boDi . SAntideva")));
+    }
+
+    @Test
+    public void testWorkerSettings() throws IOException
+    {
+        final String input = sentences + "\nparamAkkkkkkkkkkkk .\n" + sentences;
+        final SkrtWordTokenizer single = new SkrtWordTokenizer(trie);
+        single.setGraphOutput(true);
+        single.setMaxVisitedChars(2);
+        final List<String> expected = tokenize(single, input);
+        final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+        tokenizer.setMinChunkSize(1);
+        tokenizer.setGraphOutput(true);
+        tokenizer.setMaxVisitedChars(2);
+        assertThat(tokenize(tokenizer, input), is(expected));
+        assertThat(single.getSyllableFallbacks() > 0, is(true));
+        assertThat(tokenizer.getSyllableFallbacks(), is(single.getSyllableFallbacks()));
+        // the cached sentences are those of the same settings
+        tokenizer.setSegmentationCache(new SegmentationCache(trie, 100));
+        assertThat(tokenize(tokenizer, input), is(expected));
+        tokenizer.setGraphOutput(false);
+        tokenizer.setMaxVisitedChars(0);
+        assertThat(tokenize(tokenizer, input), is(tokenize(new SkrtWordTokenizer(trie), input)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSegmentationListener() throws IOException
+    {
+        new SkrtParallelWordTokenizer(trie, pool).setSegmentationListener(new SegmentationTrace(System.out, false));
+    }
+
+    @Test
+    public void testReadAsTheChunksAreSubmitted() throws IOException
+    {
+        final StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            document.append(sentences).append('\n');
+        }
+        final int[] read = new int[1];
+        final Reader reader = new StringReader(document.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                final int n = super.read(cbuf, off, Math.min(len, 64));
+                if (n > 0)
+                    read[0] += n;
+                return n;
+            }
+        };
+        final SkrtParallelWordTokenizer tokenizer = new SkrtParallelWordTokenizer(trie, pool);
+        tokenizer.setMinChunkSize(100);
+        tokenizer.setReader(reader);
+        tokenizer.reset();
+        // the pending chunks only
+        assertThat(read[0] < document.length() / 2, is(true));
+        tokenizer.end();
+        assertThat(read[0], is(document.length()));
+        tokenizer.close();
+    }
+}
@@ -9,12 +9,15 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.util.graph.GraphTokenStreamFiniteStrings;
 import org.junit.Test;
 
 public class TestPositionIncrement {
@@ -57,4 +60,41 @@ public class TestPositionIncrement {
         TokenStream words = tokenize(reader, skrtWordTokenizer);
         assertTokenStream(words, expected);
     }
+
+    @Test
+    public void testGraphOutput() throws IOException
+    {
+        System.out.println("Graph output");
+        SkrtWordTokenizer skrtWordTokenizer = new SkrtWordTokenizer(BuildCompiledTrie.buildTrie("src/test/resources/tries/lattice_test.txt"));
+        skrtWordTokenizer.setGraphOutput(true);
+        // nAmasaM is either a word of its own or nAman + sam: it spans two positions
+        String input = "nAmasaMgIti paramArTa";
+        List<String> expected = Arrays.asList("nAmasaM_1/2", "nAman_0/1", "sam_1/1", "gIti_1/1", 
+                "parama_1/1", "ArTa_1/1", "arTa_0/1");
+        System.out.println("0 " + input);
+        List<String> termList = new ArrayList<String>();
+        TokenStream words = tokenize(new StringReader(input), skrtWordTokenizer);
+        CharTermAttribute charTermAttribute = words.addAttribute(CharTermAttribute.class);
+        PositionIncrementAttribute incrAttribute = words.addAttribute(PositionIncrementAttribute.class);
+        PositionLengthAttribute posLenAttribute = words.addAttribute(PositionLengthAttribute.class);
+        while (words.incrementToken()) {
+            termList.add(charTermAttribute.toString() + "_" +  incrAttribute.getPositionIncrement() + "/" 
+                    + posLenAttribute.getPositionLength());
+        }
+        System.out.println("1 " + String.join(" ", expected));
+        System.out.println("2 " + String.join(" ", termList) + "\n");
+        assertThat(termList, is(expected));
+        
+        // the paths of the graph, as seen by the query parsers
+        words.end();
+        words.close();
+        skrtWordTokenizer.setReader(new StringReader(input));
+        Iterator<TokenStream> paths = new GraphTokenStreamFiniteStrings(skrtWordTokenizer).getFiniteStrings();
+        int nbPaths = 0;
+        while (paths.hasNext()) {
+            paths.next();
+            nbPaths++;
+        }
+        assertThat(nbPaths, is(4));
+    }
 }
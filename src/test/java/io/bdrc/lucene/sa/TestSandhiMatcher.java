@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Buddhist Digital Resource Center (BDRC)
+ *
+ * If this file is a derivation of another work the license header will appear
+ * below; otherwise, this work is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package io.bdrc.lucene.sa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+
+import org.junit.Test;
+
+import io.bdrc.lucene.sa.CmdParser.DiffStruct;
+
+/**
+ * Checks that {@link SandhiMatcher} finds the same sandhied strings as 
+ * {@link SkrtWordTokenizer#containsSandhiedCombination(CharWindow, int, String, int)},
+ * and that the cmds {@link CmdClass} lets the tokenizer match otherwise have nothing else to find.
+ */
+public class TestSandhiMatcher
+{
+    static final Random random = new Random(0);
+    static final SandhiMatcher.Matches matches = new SandhiMatcher.Matches();
+
+    /* the sandhied string at the given start of the char following "kxkx", with spaces and hyphens */
+    static String context(String sandhied, int start) {
+        final StringBuilder sb = new StringBuilder("kxkxk");
+        sb.setLength(sb.length() + start);
+        for (int i = 0; i < sandhied.length(); i++) {
+            if (random.nextInt(4) == 0)
+                sb.append(random.nextBoolean() ? ' ' : '-');
+            sb.append(sandhied.charAt(i));
+        }
+        if (random.nextBoolean())
+            sb.append("aTa");
+        return sb.toString();
+    }
+
+    static void assertSameMatches(ParsedCmd parsed, String context) throws IOException {
+        final CharWindow ioBuffer = new CharWindow();
+        ioBuffer.reset(new StringReader(context));
+        matches.reset(parsed.matcher, ioBuffer, 4);
+        int key = 0;
+        for (Entry<String, SortedSet<DiffStruct>> entry: parsed.sandhis.entrySet()) {
+            for (DiffStruct diff: entry.getValue()) {
+                assertEquals(entry.getKey() + " in " + context, 
+                        SkrtWordTokenizer.containsSandhiedCombination(ioBuffer, 4, entry.getKey(), diff.sandhiType), 
+                        matches.contains(key, diff.sandhiType));
+            }
+            key++;
+        }
+    }
+
+    static int checkDictionary(File file) throws IOException {
+        int nbContexts = 0;
+        try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                final int sepIndex = line.indexOf(',');
+                if (sepIndex == -1)
+                    continue;
+                final ParsedCmd parsed;
+                try {
+                    parsed = CmdParser.parseCached(line.substring(0, sepIndex), line.substring(sepIndex + 1));
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                for (String sandhied: parsed.sandhis.keySet()) {
+                    for (int start: new int[] {0, -1, -4}) {
+                        assertSameMatches(parsed, context(sandhied, start));
+                        nbContexts++;
+                    }
+                }
+            }
+        }
+        return nbContexts;
+    }
+
+    @Test
+    public void testTestTries() throws IOException
+    {
+        int nbContexts = 0;
+        for (File file: new File("src/test/resources/tries").listFiles()) {
+            if (file.getName().endsWith(".txt"))
+                nbContexts += checkDictionary(file);
+        }
+        System.out.println("SandhiMatcher: " + nbContexts + " contexts checked");
+        assertTrue(nbContexts > 0);
+    }
+
+    @Test
+    public void testIdempotentInitials()
+    {
+        // the table of initials gives the same initials as getIdemSandhied()
+        for (int group = 1; group <= 9; group++) {
+            final Set<String> sandhied = new CmdParser().getIdemSandhied("Darma", group).keySet();
+            for (char c = 0; c < 128; c++) {
+                assertEquals(group + ": " + c, sandhied.contains("a" + c), 
+                        CmdParser.isIdempotentInitial(c, CmdParser.idempotentGroupBit(group)));
+            }
+        }
+        assertEquals(0, CmdParser.idempotentGroupBit(10));
+    }
+
+    @Test
+    public void testEndOfInput() throws IOException
+    {
+        final ParsedCmd parsed = CmdParser.parseCached("Darma", 
+                "$-0+n/=0£9#1|$/=0£9#1|r$-0+n;-0+/- r+f=1£1#1|cC$-0+n;-0+/- cC+C=8£4#1|A:i:I:u:U:f:e:E:o:O$-0+n;-0+/- +=1£1#1");
+        assertSameMatches(parsed, "kxkxa");
+        assertSameMatches(parsed, "kxkxa -");
+        assertSameMatches(parsed, "kxkxa c");
+        assertSameMatches(parsed, "kxkxa cC");
+    }
+
+    @Test
+    public void testCmdClasses()
+    {
+        assertEquals(CmdClass.IDENTITY, CmdClass.of(CmdParser.parseCached("aba", "$/=0#1")).kind);
+        assertEquals(CmdClass.IDENTITY, CmdClass.of(CmdParser.parseCached("ij", "$-0+/=0#1|$/=0£9#2")).kind);
+        final CmdClass identity = CmdClass.of(CmdParser.parseCached("kxkx", "$/=0#10|$-0+/=0#2|$/=0#1"));
+        // the lemmas are sorted as kxkx_1, kxkx_10, kxkx_2
+        assertEquals(1, identity.identityPos[0]);
+        assertEquals(10, identity.identityPos[1]);
+        assertEquals(2, identity.identityPos[2]);
+        
+        final CmdClass finals = CmdClass.of(CmdParser.parseCached("Anas", "$-4+an/=0£9#1|$-1+/=0£9#1"));
+        assertEquals(CmdClass.FINALS_ONLY, finals.kind);
+        assertEquals(2, finals.finalDiffs.length);
+        assertEquals(CmdClass.FINALS_ONLY, CmdClass.of(CmdParser.parseCached("boDis", "$/=0#1|$-1+/=0£9#1")).kind);
+        
+        // sandhis, initials and type 9 need the text following the word
+        assertEquals(CmdClass.NEEDS_CONTEXT, CmdClass.of(CmdParser.parseCached("attva", "$-4+d/-+a=1£1#3")).kind);
+        assertEquals(CmdClass.NEEDS_CONTEXT, CmdClass.of(CmdParser.parseCached("Darma", "a$-1+b/=0#1")).kind);
+        assertEquals(CmdClass.NEEDS_CONTEXT, CmdClass.of(CmdParser.parseCached("Darma", "$/-c+d=0#1")).kind);
+        assertEquals(CmdClass.NEEDS_CONTEXT, CmdClass.of(CmdParser.parseCached("punar", "$-0+/=9#1")).kind);
+    }
+}
@@ -23,7 +23,6 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.StringReader;
 
-import org.apache.lucene.analysis.util.RollingCharBuffer;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -47,7 +46,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVowelSandhiCombination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("mAstu")); // mA astu => mAstu
     	sandhied.get(0);
     	int sandhiStartIdx = 1;
@@ -59,7 +58,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVowelSandhiCombination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("naiti")); // na eti => naiti
     	sandhied.get(0);
     	int sandhiStartIdx = 1;
@@ -71,7 +70,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVowelSandhiCombination3() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("ta uvAca")); // te uvAca => ta uvAca
     	sandhied.get(0);
     	sandhied.get(0);
@@ -84,7 +83,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi1Combination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("vAk")); // vAc => vAk 
     	sandhied.get(0);
     	int sandhiStartIdx = 2;
@@ -96,7 +95,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi1Combination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("tallokaH")); // tat lokaH => tallokaH 
     	sandhied.get(0);
     	int sandhiStartIdx = 2;
@@ -108,7 +107,7 @@ public class TestSandhiedCombinations
     @Test
 	public void testConsonantSandhi1VowelsCombination1() throws IOException
 	{
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("vAgBaqa")); // vAk Baqa => vAgBaqa 
     	sandhied.get(0);
     	int sandhiStartIdx = 2;
@@ -120,7 +119,7 @@ public class TestSandhiedCombinations
     @Test
 	public void testConsonantSandhi1VowelsCombination2() throws IOException
 	{
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("atmannatman")); // atman atman => atmannatman 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -132,7 +131,7 @@ public class TestSandhiedCombinations
     @Test
 	public void testConsonantSandhi1VowelsCombination3() throws IOException
 	{
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("atmann atman")); // atman atman => atmann atman 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -144,7 +143,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi2Combination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("vANmayaH")); // vAk mayaH => vANmayaH
     	sandhied.get(0);
     	int sandhiStartIdx = 2;
@@ -156,7 +155,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi2Combination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("vAN mayaH")); // vAk mayaH => vANmayaH
     	sandhied.get(0);
     	int sandhiStartIdx = 2;
@@ -168,7 +167,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi2Combination3() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("asmiMzwIkA")); // asmin wIkA => asmiMzwIkA
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -180,7 +179,7 @@ public class TestSandhiedCombinations
     @Test
     public void testConsonantSandhi2Combination4() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("asmiM zwIkA")); // asmin wIkA => asmiMzwIkA
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -192,7 +191,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi1Combination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmastu")); // rAmaH tu => rAmastu 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -204,7 +203,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi1Combination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("devAeva")); // devAH eva => devAeva 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -216,7 +215,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi1Combination3() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("devA eva")); // devAH eva => devAeva 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -228,7 +227,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi1Combination4() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("munir vadati")); // muniH vadati => munir vadati 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -240,7 +239,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi2Combination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmogacCati")); // rAmaH gacCati => rAmogacCati 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -252,7 +251,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi2Combination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmo gacCati")); // rAmaH gacCati => rAmo gacCati 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -264,7 +263,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi2Combination3() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmorgacCati")); // rAmoH gacCati => rAmorgacCati 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -276,7 +275,7 @@ public class TestSandhiedCombinations
     @Test
     public void testVisargaSandhi2Combination4() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmor gacCati")); // rAmoH gacCati => rAmor gacCati 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -288,7 +287,7 @@ public class TestSandhiedCombinations
     @Test
     public void testAbsoluteFinalSandhiCombination() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("suhRt")); // suhRd => suhRt
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -300,7 +299,7 @@ public class TestSandhiedCombinations
     @Test
     public void testAbsoluteFinalConsonantClustersCombination() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("bhagavan")); // bhagavant => bhagavan
     	sandhied.get(0);
     	int sandhiStartIdx = 7;
@@ -312,7 +311,7 @@ public class TestSandhiedCombinations
     @Test
     public void testcCWordsCombination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmasyacCAtraH")); // rAmasya CAtraH => rAmasyacCAtraH
     	sandhied.get(0);
     	int sandhiStartIdx = 6;
@@ -324,7 +323,7 @@ public class TestSandhiedCombinations
     @Test
     public void testcCWordsCombination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("rAmasya cCAtraH")); // rAmasya CAtraH => rAmasya cCAtraH
     	sandhied.get(0);
     	int sandhiStartIdx = 6;
@@ -336,7 +335,7 @@ public class TestSandhiedCombinations
     @Test
     public void testPunarSandhiCombination1() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("punaHpunaH")); // punar punar => punaHpunaH 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
@@ -348,7 +347,7 @@ public class TestSandhiedCombinations
     @Test
     public void testPunarSandhiCombination2() throws IOException
     {
-    	RollingCharBuffer sandhied = new RollingCharBuffer();
+    	CharWindow sandhied = new CharWindow();
     	sandhied.reset(new StringReader("punaH punaH")); // punar punar => punaH punaH 
     	sandhied.get(0);
     	int sandhiStartIdx = 4;
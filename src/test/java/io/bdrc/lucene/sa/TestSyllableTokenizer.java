@@ -134,4 +134,38 @@ public class TestSyllableTokenizer {
         assertTokenStream(words, expected);
         sa.close();
     }
+
+    @Test
+    public void syllabifyLikeTokenizer() throws IOException
+    {
+        System.out.println("syllabify");
+        // trailing clusters before a vowel, a punctuation and the end, modifiers and non-SLP chars
+        String input = "boDisattvacaryAvatAra SAntidevas. a1gnim-ILe kArtsnyaM ཀ saMgIt";
+        List<String> expected = new ArrayList<String>();
+        SkrtSyllableTokenizer.Syllables bounds = new SkrtSyllableTokenizer.Syllables();
+        SkrtSyllableTokenizer.syllabify(input.toCharArray(), 0, input.length(), bounds);
+        for (int i = 0; i < bounds.size(); i++)
+            expected.add(input.substring(bounds.start(i), bounds.end(i)));
+        System.out.println("0 " + input);
+        TokenStream syllables = tokenize(new StringReader(input), new SkrtSyllableTokenizer());
+        assertTokenStream(syllables, expected);
+    }
+
+    @Test
+    public void slpCharClasses()
+    {
+        // the classes don't overlap, and only ASCII chars have one
+        final String[] classes = {SlpCharClass.VOWELS, SlpCharClass.SPECIAL_PHONEMES, SlpCharClass.CONSONANTS, SlpCharClass.MODIFIERS};
+        for (int i = 0; i < classes.length; i++)
+            for (int j = i + 1; j < classes.length; j++)
+                for (char c: classes[i].toCharArray())
+                    assertTrue(c + " in two classes", classes[j].indexOf(c) == -1);
+        assertTrue(SlpCharClass.isSLP('a') && SlpCharClass.isSLP('|') && SlpCharClass.isModifier('/'));
+        assertTrue(!SlpCharClass.isSLP(' ') && SlpCharClass.isValidWithinSandhi(' ') && SlpCharClass.is('.', SlpCharClass.PUNCT));
+        assertTrue(!SlpCharClass.isSLP(-1) && !SlpCharClass.isSLP('ཀ') && SlpCharClass.flagsOf(0x1F600) == 0);
+        assertThat(SkrtSyllableTokenizer.syllEndingCombinations('a', 'k'), is(SkrtSyllableTokenizer.VOWEL_N_CONSONANT));
+        assertThat(SkrtSyllableTokenizer.syllEndingCombinations('M', 'k'), is(SkrtSyllableTokenizer.SPECIALPHONEME_N_CONSONANT));
+        assertThat(SkrtSyllableTokenizer.syllEndingCombinations('k', ' '), is(SkrtSyllableTokenizer.SLP_N_NONSLP));
+        assertThat(SkrtSyllableTokenizer.syllEndingCombinations('k', 'a'), is(SkrtSyllableTokenizer.NOT_SYLL_END));
+    }
 }
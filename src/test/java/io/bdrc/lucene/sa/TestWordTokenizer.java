@@ -20,13 +20,20 @@
 package io.bdrc.lucene.sa;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,11 +41,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
-import org.apache.lucene.analysis.util.RollingCharBuffer;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -77,6 +87,8 @@ public class TestWordTokenizer
                     termList.add(charTermAttribute.toString()+"✓");
                 } else if (typeAttribute.type().equals("lemma")) {
                     termList.add(charTermAttribute.toString()+"√");
+                } else if (typeAttribute.type().equals("syllable")) {
+                    termList.add(charTermAttribute.toString()+"~");
                 }
                 System.out.println(charTermAttribute.toString() + ", tokenType: " + typeAttribute.type()+ ", POS: " + posAttribute.getPartOfSpeech());
 			}
@@ -116,11 +128,35 @@ public class TestWordTokenizer
     	assertTrue(res.toString().equals(expected));
     }
     
+    @Test
+    public void testCmdParserCache() throws IOException
+    {
+        System.out.println("CmdParser: cached parse of the cmd of Darma");
+        String input = "$-0+n/=0£9#1|$/=0£9#1|r$-0+n;-0+/- r+f=1£1#1|cC$-0+n;-0+/- cC+C=8£4#1|A:i:I:u:U:f:e:E:o:O$-0+n;-0+/- +=1£1#1";
+        CmdParser.setCacheSize(1024);
+        try {
+            String expected = new CmdParser().parse("Darma", input).toString();
+            assertThat(CmdParser.parseCached("Darma", input).toString(), is(expected));
+            // only the last character of the inflected form matters for this cmd
+            assertThat(CmdParser.parseCached("budDaDarma", input).toString(), is(expected));
+            assertThat(CmdParser.getCache().misses(), is(1L));
+            assertThat(CmdParser.getCache().hits(), is(1L));
+            // sandhi type 9 depends on the whole inflected form
+            String type9 = "$-0+/=9#1";
+            CmdParser.parseCached("Darma", type9);
+            CmdParser.parseCached("budDaDarma", type9);
+            assertThat(CmdParser.getCache().misses(), is(3L));
+            assertThat(CmdParser.getCache().size(), is(3));
+        } finally {
+            CmdParser.setCacheSize(CmdParser.DEFAULT_CACHE_SIZE);
+        }
+    }
+    
     @Test
     public void testContainsSandhiedCombination1NoSandhi() throws IOException
     {
     	System.out.println("containsSandhiedCombination() 1: no sandhi");
-    	RollingCharBuffer buffer = new RollingCharBuffer();
+    	CharWindow buffer = new CharWindow();
     	buffer.reset(new StringReader("budDaDarma"));
     	buffer.get(0);
     	int bufferIdx = 4;
@@ -133,7 +169,7 @@ public class TestWordTokenizer
     public void testContainsSandhiedCombination2VowelSandhi() throws IOException
     {
     	System.out.println("containsSandhiedCombination() 2: vowel sandhi");
-    	RollingCharBuffer buffer = new RollingCharBuffer();
+    	CharWindow buffer = new CharWindow();
     	buffer.reset(new StringReader("DarmATa"));
     	buffer.get(0);
     	int bufferIdx = 4;
@@ -146,7 +182,7 @@ public class TestWordTokenizer
     public void testContainsSandhiedCombinationAbsoluteFinals() throws IOException
     {
     	System.out.println("containsSandhiedCombination() 3: absolute finals");
-    	RollingCharBuffer buffer = new RollingCharBuffer();
+    	CharWindow buffer = new CharWindow();
     	buffer.reset(new StringReader("Darmaprsti"));
     	buffer.get(0);
     	int bufferIdx = 5;
@@ -304,6 +340,278 @@ public class TestWordTokenizer
 		assertTokenStream(syllables, expected);
 	}
     
+    @Test
+    public void testReadingPastEndOfInput() throws IOException
+    { 
+        // used to read past the end of the RollingCharBuffer
+        String input = "Darmar";
+        Reader reader = new StringReader(input);
+        List<String> expected = Arrays.asList("Darma√", "Darman√", "r❌");
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/DarmATa_test");
+        TokenStream syllables = tokenize(reader, skrtWordTokenizer);
+        assertTokenStream(syllables, expected);
+    }
+
+    @Test
+    public void testReadingFreedChars() throws IOException
+    {
+        CharWindow window = new CharWindow();
+        window.reset(new StringReader(new String(new char[10000]).replace('\0', 'a')));
+        window.get(4095);
+        window.freeBefore(4000);
+        window.get(9000);        // the chars before 4000 are discarded to make room
+        assertThat(window.get(4000), is((int) 'a'));
+        try {
+            window.get(10);
+            fail("a freed char was read");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("pos=10 was freed, the window starts at 4000"));
+        }
+    }
+
+    @Test
+    public void testReuseAfterNonWord() throws IOException
+    { 
+        // the potential tokens of the previous input used to be kept by reset()
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/DarmATa_test");
+        String input = "aTavp DarmAD\n";
+        System.out.println("0 " + input);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), 
+                Arrays.asList("aTa√", "vp❌", "Darma√", "Darman√"));
+        input = "yaTa aTa DarmADarmA .";
+        System.out.println("0 " + input);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), 
+                Arrays.asList("y❌", "aTa√", "aTa√", "Darma√", "Darman√", "Darma√", "Darman√", "a❌"));
+    }
+    
+    @Test
+    public void testSyllableFallback() throws IOException
+    { 
+        System.out.println("syllable fallback");
+        // the words of the Trie are never split, whatever their length
+        String input = "SAntideva kkkkkkkkkkkkkkkkkkkkk boDi";
+        List<String> expected = Arrays.asList("SAntideva√", "kkkkkkkkkkkkkkkkkkkkk❌", "boDi√", "boDin√");
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/demo_test");
+        skrtWordTokenizer.setMaxVisitedChars(8);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), expected);
+        assertEquals(0, skrtWordTokenizer.getSyllableFallbacks());
+        // retrying the initials of paramA exhausts the budget: parama is kept, the rest is split
+        // in syllables and the run without a vowel is a non-word
+        input = "paramAkkkkkkkkkkkk";
+        expected = Arrays.asList("parama√", "Ak~", "kkkkkkkkkkk❌");
+        System.out.println("0 " + input);
+        skrtWordTokenizer.setMaxVisitedChars(2);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), expected);
+        assertEquals(1, skrtWordTokenizer.getSyllableFallbacks());
+        // no budget
+        expected = Arrays.asList("parama√", "kkkkkkkkkkkk❌");
+        skrtWordTokenizer.setMaxVisitedChars(0);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), expected);
+        assertEquals(1, skrtWordTokenizer.getSyllableFallbacks());
+    }
+    
+    @Test
+    public void testSegmentationTrace() throws IOException
+    { 
+        System.out.println("segmentation trace");
+        String input = "aTavp DarmAD\n";
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/DarmATa_test");
+        SegmentationTrace trace = new SegmentationTrace();
+        skrtWordTokenizer.setSegmentationListener(trace);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), 
+                Arrays.asList("aTa√", "vp❌", "Darma√", "Darman√"));
+        System.out.println(trace);
+        List<String> tokens = new ArrayList<String>();
+        for (SegmentationTrace.Event event: trace.getEvents(SegmentationTrace.Kind.TOKEN)) {
+            tokens.add(event.toString());
+        }
+        assertThat(tokens, is(Arrays.asList("TOKEN 0-3 aTa lemma", "TOKEN 3-5 vp non-word", "TOKEN 6-11 Darma lemma", 
+                "TOKEN 6-11 Darman lemma")));
+        assertTrue(trace.getEvents(SegmentationTrace.Kind.CHAR).size() >= input.length());
+        assertTrue(!trace.getEvents(SegmentationTrace.Kind.MATCH).isEmpty());
+        assertTrue(!trace.getEvents(SegmentationTrace.Kind.INITIAL).isEmpty());
+        // back to no listener
+        trace.clear();
+        skrtWordTokenizer.setSegmentationListener(null);
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), 
+                Arrays.asList("aTa√", "vp❌", "Darma√", "Darman√"));
+        assertTrue(trace.getEvents().isEmpty());
+    }
+    
+    @Test
+    public void testSegmentationStats() throws Exception
+    { 
+        System.out.println("segmentation stats");
+        String input = "aTavp DarmAD\n";
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/DarmATa_test");
+        SegmentationStatsAttribute statsAttribute = skrtWordTokenizer.addAttribute(SegmentationStatsAttribute.class);
+        SegmentationMetrics metrics = SegmentationMetrics.get();
+        long documents = metrics.getDocuments();
+        long lemmas = metrics.getLemmas();
+        assertTokenStream(tokenize(new StringReader(input), skrtWordTokenizer), 
+                Arrays.asList("aTa√", "vp❌", "Darma√", "Darman√"));
+        skrtWordTokenizer.end();
+        SegmentationStats stats = statsAttribute.getStats();
+        System.out.println(stats);
+        assertThat(stats.getTokens(), is(4L));
+        assertThat(stats.getTokens(0), is(1L));
+        assertThat(stats.getTokens(2), is(3L));
+        assertTrue(stats.getVisitedChars() >= input.length());
+        assertTrue(stats.getInitialsTried() > 0);
+        // only counted once per input
+        skrtWordTokenizer.end();
+        assertThat(metrics.getDocuments() - documents, is(1L));
+        assertThat(metrics.getLemmas() - lemmas, is(3L));
+        // published through JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertThat(server.getAttribute(new ObjectName(SegmentationMetrics.OBJECT_NAME), "Documents"), 
+                is((Object) metrics.getDocuments()));
+        // the next input starts from 0
+        tokenize(new StringReader("aTa"), skrtWordTokenizer);
+        assertThat(skrtWordTokenizer.getSegmentationStats().getTokens(), is(0L));
+    }
+    
+    /* the metrics published by one tokenizer on the input: documents, non-words, words, lemmas, syllables, visited chars */
+    static private long[] metricDeltas(SkrtWordTokenizer tokenizer, String input) throws IOException {
+        SegmentationMetrics metrics = SegmentationMetrics.get();
+        long[] before = {metrics.getDocuments(), metrics.getNonWords(), metrics.getWords(), metrics.getLemmas(), 
+                metrics.getSyllables(), metrics.getVisitedChars()};
+        tokenizeWithCheckpoints(tokenizer, input, null, null);
+        long[] after = {metrics.getDocuments(), metrics.getNonWords(), metrics.getWords(), metrics.getLemmas(), 
+                metrics.getSyllables(), metrics.getVisitedChars()};
+        for (int i = 0; i < after.length; i++) {
+            after[i] -= before[i];
+        }
+        return after;
+    }
+    
+    @Test
+    public void testSegmentationStatsWithCache() throws Exception
+    { 
+        System.out.println("segmentation stats with a cache");
+        String input = "aTavp DarmAD . aTavp DarmAD . aTa";
+        Trie trie = BuildCompiledTrie.buildTrie("src/test/resources/tries/DarmATa_test.txt");
+        SkrtWordTokenizer skrtWordTokenizer = new SkrtWordTokenizer(trie);
+        long[] expected = metricDeltas(skrtWordTokenizer, input);
+        System.out.println("without cache " + Arrays.toString(expected));
+        skrtWordTokenizer.setSegmentationCache(new SegmentationCache(trie, 100));
+        long[] deltas = metricDeltas(skrtWordTokenizer, input);
+        System.out.println("with cache " + Arrays.toString(deltas));
+        // the same document and tokens, the work of the sentences missing from the cache
+        assertThat(Arrays.copyOf(deltas, 5), is(Arrays.copyOf(expected, 5)));
+        assertTrue(deltas[5] > 0);
+        assertThat(skrtWordTokenizer.getSegmentationStats().getTokens(), is(expected[1] + expected[2] + expected[3] + expected[4]));
+        // all the sentences are found in the cache: no work
+        deltas = metricDeltas(skrtWordTokenizer, input);
+        assertThat(Arrays.copyOf(deltas, 5), is(Arrays.copyOf(expected, 5)));
+        assertThat(deltas[5], is(0L));
+    }
+    
+    /* the tokens as term[start-end], the checkpoints are added to checkpoints and the number of tokens before them to counts */
+    static private List<String> tokenizeWithCheckpoints(SkrtWordTokenizer tokenizer, String input, 
+            List<SkrtWordTokenizer.Checkpoint> checkpoints, List<Integer> counts) throws IOException {
+        return tokenizeWithCheckpoints(tokenizer, new StringReader(input), checkpoints, counts);
+    }
+    
+    static private List<String> tokenizeWithCheckpoints(SkrtWordTokenizer tokenizer, Reader input, 
+            List<SkrtWordTokenizer.Checkpoint> checkpoints, List<Integer> counts) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        CharTermAttribute charTermAttribute = tokenizer.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offsetAttribute = tokenizer.addAttribute(OffsetAttribute.class);
+        tokenize(input, tokenizer);
+        while (tokenizer.incrementToken()) {
+            tokens.add(charTermAttribute.toString() + "[" + offsetAttribute.startOffset() + "-" + offsetAttribute.endOffset() + "]");
+            SkrtWordTokenizer.Checkpoint checkpoint = tokenizer.checkpoint();
+            if (checkpoint != null && checkpoints != null) {
+                checkpoints.add(checkpoint);
+                counts.add(tokens.size());
+            }
+        }
+        tokenizer.end();
+        tokens.add("end " + offsetAttribute.endOffset());
+        return tokens;
+    }
+    
+    @Test
+    public void testCheckpoint() throws Exception
+    { 
+        System.out.println("checkpoint");
+        String input = "maYjuSrI nAma saMgIti . boDisattva SAntideva .\nnAmasaMgIti boDi kkk .\nboDicaryAvatAra";
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/demo_test");
+        List<SkrtWordTokenizer.Checkpoint> checkpoints = new ArrayList<SkrtWordTokenizer.Checkpoint>();
+        List<Integer> counts = new ArrayList<Integer>();
+        List<String> expected = tokenizeWithCheckpoints(skrtWordTokenizer, input, checkpoints, counts);
+        System.out.println("1 " + String.join(" ", expected));
+        System.out.println("checkpoints: " + checkpoints);
+        assertThat(checkpoints.size(), is(3));
+        for (int i = 0; i < checkpoints.size(); i++) {
+            // as it would be stored to resume later
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(checkpoints.get(i));
+            }
+            SkrtWordTokenizer.Checkpoint checkpoint;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                checkpoint = (SkrtWordTokenizer.Checkpoint) in.readObject();
+            }
+            SkrtWordTokenizer resumed = buildTokenizer("src/test/resources/tries/demo_test");
+            resumed.resumeFrom(checkpoint);
+            List<String> tokens = tokenizeWithCheckpoints(resumed, input.substring(checkpoint.getOffset()), null, null);
+            System.out.println("2 " + String.join(" ", tokens));
+            assertThat(tokens, is(expected.subList(counts.get(i), expected.size())));
+        }
+        // back to the beginning
+        assertThat(tokenizeWithCheckpoints(skrtWordTokenizer, input, null, null), is(expected));
+    }
+    
+    @Test
+    public void testCheckpointWithCharFilter() throws Exception
+    { 
+        System.out.println("checkpoint with a CharFilter");
+        String input = "mañjuśrī nāma saṃgīti . bodhisattva śāntideva .\nnāmasaṃgīti bodhi kkk .\nbodhicaryāvatāra";
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/demo_test");
+        List<SkrtWordTokenizer.Checkpoint> checkpoints = new ArrayList<SkrtWordTokenizer.Checkpoint>();
+        List<Integer> counts = new ArrayList<Integer>();
+        List<String> expected = tokenizeWithCheckpoints(skrtWordTokenizer, new Roman2SlpFilter(new StringReader(input)), 
+                checkpoints, counts);
+        System.out.println("1 " + String.join(" ", expected));
+        assertThat(checkpoints.size(), is(3));
+        // "dh" became "D": the offsets in the SLP chars are behind those of the input
+        SkrtWordTokenizer.Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+        assertTrue(last.getOffset() < last.getCorrectedOffset());
+        for (int i = 0; i < checkpoints.size(); i++) {
+            SkrtWordTokenizer.Checkpoint checkpoint = checkpoints.get(i);
+            SkrtWordTokenizer resumed = buildTokenizer("src/test/resources/tries/demo_test");
+            resumed.resumeFrom(checkpoint);
+            // the original input, filtered again
+            Reader rest = new Roman2SlpFilter(new StringReader(input.substring(checkpoint.getCorrectedOffset())));
+            List<String> tokens = tokenizeWithCheckpoints(resumed, rest, null, null);
+            System.out.println("2 " + String.join(" ", tokens));
+            assertThat(tokens, is(expected.subList(counts.get(i), expected.size())));
+        }
+    }
+    
+    @Test
+    public void testNonSLPRuns() throws IOException
+    { 
+        System.out.println("non-SLP runs");
+        // Tibetan, supplementary chars and an XML tag between SLP words
+        String input = "boDisattva བྱང་ཆུབ་སེམས་དཔའ། SAntideva \uD83D\uDE00\uD83D\uDE00 nAmasaMgIti <0.5> boDi";
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/demo_test");
+        List<String> expected = Arrays.asList("boDisattva[0-10]", "SAntideva[29-38]", "nAman[44-48]", "sam[48-51]", 
+                "gIti[51-55]", "boDi[62-66]", "boDin[62-66]", "end 66");
+        List<String> tokens = tokenizeWithCheckpoints(skrtWordTokenizer, input, null, null);
+        System.out.println("1 " + String.join(" ", tokens));
+        assertThat(tokens, is(expected));
+    }
+    
     @Test
     public void testIndexBug() throws IOException
     { 
@@ -369,6 +677,51 @@ public class TestWordTokenizer
         assertTokenStream(syllables, expected);
     }
     
+    @Test
+    public void testCompiledMultiTokenLemma() throws IOException
+    {
+        System.out.println("compiled multi-token lemmas");
+        // atikramati: ati + kram, -7+ keeps "ati"
+        MultiTokenLemma multiToken = MultiTokenLemma.compile("4_1>3⟾kram3_4>10");
+        assertEquals(2, multiToken.size());
+        assertEquals("ati", multiToken.text(0, "ati4_1>3⟾kram3_4>10"));
+        assertEquals("kram", multiToken.text(1));
+        assertEquals(Arrays.asList(4, 0, 3), Arrays.asList(multiToken.pos(0), multiToken.start(0), multiToken.end(0)));
+        assertEquals(Arrays.asList(3, 3, 10), Arrays.asList(multiToken.pos(1), multiToken.start(1), multiToken.end(1)));
+        assertEquals(null, MultiTokenLemma.compile("a"));
+        
+        String input = "atikramati";
+        Reader reader = new StringReader(input);
+        List<String> expected = Arrays.asList("ati√", "kram√");
+        System.out.println("0 " + input);
+        SkrtWordTokenizer skrtWordTokenizer = buildTokenizer("src/test/resources/tries/atikramati_test");
+        TokenStream words = tokenize(reader, skrtWordTokenizer);
+        assertTokenStream(words, expected);
+    }
+    
+    @Test
+    public void testMalformedMultiTokenLemma() throws IOException
+    {
+        // the end of the first token is missing
+        try {
+            MultiTokenLemma.compile("4_1⟾kram3_4>10");
+            fail("a malformed multi-token lemma was compiled");
+        } catch (IllegalArgumentException e) {
+            assertEquals("malformed multi-token lemma: 4_1⟾kram3_4>10", e.getMessage());
+        }
+        // the tokenizer fails instead of emitting a lemma with a raw ⟾
+        Trie trie = new Trie(true);
+        trie.add("atikramati", "$-7+4_1⟾kram3_4>10/=0£9#-1");
+        SkrtWordTokenizer skrtWordTokenizer = new SkrtWordTokenizer(trie);
+        tokenize(new StringReader("atikramati"), skrtWordTokenizer);
+        try {
+            while (skrtWordTokenizer.incrementToken());
+            fail("a token with a malformed multi-token lemma was emitted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("malformed multi-token lemma: 4_1⟾kram3_4>10", e.getMessage());
+        }
+    }
+    
     @Test
 	public void bug1InWordTokenizer() throws IOException
 	{